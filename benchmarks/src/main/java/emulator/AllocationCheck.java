@@ -0,0 +1,50 @@
+package emulator;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures heap bytes allocated per million instructions once the CPU is warm, for every synthetic ROM and
+ * execution mode, and exits with status 1 when any of them allocates. Run with {@code mvn -P allocation-check verify}.
+ */
+public class AllocationCheck {
+    private static final long WARMUP_CYCLES = 5_000_000L;
+    private static final long MEASURED_CYCLES = 20_000_000L;
+    private static final int FRAME_CYCLES = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] roms = args.length > 0 ? args : new String[]{"alu", "draw", "mixed"};
+        boolean allocated = false;
+        for (String rom : roms) {
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                CPU cpu = new CPU(SyntheticRoms.load(rom), 0);
+                cpu.setExecutionMode(mode);
+                run(cpu, WARMUP_CYCLES);
+
+                long overhead = threads.getCurrentThreadAllocatedBytes();
+                long before = threads.getCurrentThreadAllocatedBytes();
+                overhead = before - overhead;
+                run(cpu, MEASURED_CYCLES);
+                long bytes = threads.getCurrentThreadAllocatedBytes() - before - overhead;
+
+                double perMillion = bytes * 1_000_000.0 / MEASURED_CYCLES;
+                System.out.println(String.format("%-8s %-12s %10.1f bytes per million instructions", rom, mode, perMillion));
+                allocated |= bytes > 0;
+            }
+        }
+        if (allocated) {
+            System.out.println("The CPU allocates in steady state");
+            System.exit(1);
+        }
+    }
+
+    private static void run(CPU cpu, long cycles) {
+        for (long done = 0; done < cycles; done += FRAME_CYCLES) {
+            cpu.runCycles(FRAME_CYCLES);
+            cpu.getFrameBuffer().takeDirtyRows();
+        }
+    }
+}
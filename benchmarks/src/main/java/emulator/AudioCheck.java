@@ -0,0 +1,228 @@
+package emulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Renders random sound timer programs through a {@link Beeper} into a WAV and a raw {@link FileAudioSink}, and
+ * checks the files against the sound timer of a second CPU stepped one cycle at a time. Programs only set the
+ * timer while it is zero, to beeps that run out, tones cut short, and blips set and cleared back to back, so a
+ * frame should sound exactly when the timer rose during it or is still running at its end. Checks the WAV
+ * header, that the raw file holds the same samples, the number of samples per frame, that silent frames are
+ * zero and tone frames a square wave at one level, allowing for the ramps at each edge. Exits with status 1 on
+ * any difference. Run with {@code mvn -P checks verify}.
+ */
+public class AudioCheck {
+    private static final int PROGRAMS = 100;
+    private static final int FRAMES = 300;
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int SAMPLES_PER_FRAME = Beeper.SAMPLE_RATE / Scheduler.FRAME_RATE;
+    /**
+     * Samples at the start of a frame that may still be ramping after the tone starts or stops.
+     */
+    private static final int RAMP = Beeper.SAMPLE_RATE / 250;
+
+    public static void main(String[] args) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        Random random = new Random(seed);
+        boolean failed = false;
+        int toneFrames = 0;
+        int blips = 0;
+        Path wav = Files.createTempFile("audio-check", ".wav");
+        Path raw = Files.createTempFile("audio-check", ".pcm");
+        try {
+            for (int program = 0; program < programs; program++) {
+                List<Integer> opcodes = new ArrayList<>();
+                blips += sounds(random, opcodes);
+                byte[] rom = rom(opcodes);
+                int instructionsPerSecond = CPU.TIMER_FREQUENCY + random.nextInt(3000);
+                ExecutionMode mode = ExecutionMode.values()[random.nextInt(ExecutionMode.values().length)];
+
+                CPU cpu = new CPU(rom, 0);
+                cpu.setExecutionMode(mode);
+                Scheduler scheduler = new Scheduler(cpu, instructionsPerSecond);
+                FileAudioSink wavSink = FileAudioSink.wav(wav);
+                Beeper beeper = new Beeper(wavSink);
+                scheduler.setBeeper(beeper);
+                CPU stepped = new CPU(rom, 0);
+                stepped.setInstructionsPerSecond(instructionsPerSecond);
+                boolean[] on = new boolean[FRAMES];
+                String error = null;
+                for (int frame = 0; frame < FRAMES && error == null; frame++) {
+                    scheduler.runFrame();
+                    if (beeper.getSamplesWritten() != (long) (frame + 1) * SAMPLES_PER_FRAME) {
+                        error = "frame " + frame + " ends after " + beeper.getSamplesWritten() + " samples";
+                    }
+                    boolean rose = false;
+                    while (stepped.getCycleNumber() < cpu.getCycleNumber()) {
+                        int before = stepped.getST();
+                        stepped.runCycles(1);
+                        rose |= stepped.getST() > before;
+                    }
+                    on[frame] = rose || stepped.getST() != 0;
+                    if (on[frame]) {
+                        toneFrames++;
+                    }
+                }
+                wavSink.close();
+                try (FileAudioSink rawSink = FileAudioSink.raw(raw)) {
+                    Beeper rawBeeper = new Beeper(rawSink);
+                    CPU rawCpu = new CPU(rom, 0);
+                    Scheduler rawScheduler = new Scheduler(rawCpu, instructionsPerSecond);
+                    rawScheduler.setBeeper(rawBeeper);
+                    for (int frame = 0; frame < FRAMES; frame++) {
+                        rawScheduler.runFrame();
+                    }
+                }
+
+                byte[] file = Files.readAllBytes(wav);
+                if (error == null) {
+                    error = header(file, (long) FRAMES * SAMPLES_PER_FRAME * Beeper.BYTES_PER_SAMPLE);
+                }
+                if (error == null && !Arrays.equals(file, WAV_HEADER_SIZE, file.length, Files.readAllBytes(raw), 0,
+                        (int) Files.size(raw))) {
+                    error = "raw file holds different samples than the WAV file";
+                }
+                if (error == null) {
+                    error = samples(file, on);
+                }
+                if (error != null) {
+                    System.out.println(String.format("Program %d, %s at %d instructions per second: %s", program,
+                            mode, instructionsPerSecond, error));
+                    failed = true;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(wav);
+            Files.deleteIfExists(raw);
+        }
+        System.out.println(String.format("%d programs, %d frames with tone, %d blips", programs, toneFrames, blips));
+        if (failed) {
+            System.out.println("Audio output does not follow the sound timer");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Appends segments that each set the sound timer from zero and leave it at zero: a beep that runs out, a
+     * tone cut short by clearing the timer, a blip cleared by the next instruction, or silence. Each segment
+     * then waits on the delay timer for a number of frames. Returns the number of blips.
+     */
+    private static int sounds(Random random, List<Integer> opcodes) {
+        opcodes.add(0x6300);
+        int blips = 0;
+        for (int segment = 1 + random.nextInt(8); segment > 0; segment--) {
+            int length = 1 + random.nextInt(20);
+            opcodes.add(0x6000 | length);
+            switch (random.nextInt(4)) {
+                case 0:
+                    opcodes.add(0xF018);
+                    delay(opcodes, length + 1 + random.nextInt(10));
+                    break;
+                case 1:
+                    opcodes.add(0xF018);
+                    delay(opcodes, random.nextInt(length));
+                    opcodes.add(0xF318);
+                    delay(opcodes, random.nextInt(10));
+                    break;
+                case 2:
+                    opcodes.add(0xF018);
+                    opcodes.add(0xF318);
+                    delay(opcodes, random.nextInt(10));
+                    blips++;
+                    break;
+                default:
+                    delay(opcodes, random.nextInt(10));
+            }
+        }
+        opcodes.add(0x1000 | 0x200 + 2 * opcodes.size());
+        return blips;
+    }
+
+    private static void delay(List<Integer> opcodes, int frames) {
+        opcodes.add(0x6100 | frames);
+        opcodes.add(0xF115);
+        int loop = 0x200 + 2 * opcodes.size();
+        opcodes.add(0xF207);
+        opcodes.add(0x3200);
+        opcodes.add(0x1000 | loop);
+    }
+
+    private static byte[] rom(List<Integer> opcodes) {
+        byte[] rom = new byte[opcodes.size() * 2];
+        for (int i = 0; i < opcodes.size(); i++) {
+            rom[i * 2] = (byte) (opcodes.get(i) >> 8);
+            rom[i * 2 + 1] = (byte) (int) opcodes.get(i);
+        }
+        return rom;
+    }
+
+    /**
+     * Checks the 44-byte header of a 16-bit mono PCM WAV file at {@link Beeper#SAMPLE_RATE}.
+     */
+    private static String header(byte[] file, long dataBytes) {
+        if (file.length != WAV_HEADER_SIZE + dataBytes) {
+            return "file is " + file.length + " bytes, expected " + (WAV_HEADER_SIZE + dataBytes);
+        }
+        ByteBuffer header = ByteBuffer.wrap(file, 0, WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int[] expected = {0x46464952, (int) (WAV_HEADER_SIZE - 8 + dataBytes), 0x45564157, 0x20746D66, 16,
+                1 | 1 << 16, Beeper.SAMPLE_RATE, Beeper.SAMPLE_RATE * Beeper.BYTES_PER_SAMPLE,
+                Beeper.BYTES_PER_SAMPLE | 16 << 16, 0x61746164, (int) dataBytes};
+        for (int field = 0; field < expected.length; field++) {
+            int actual = header.getInt();
+            if (actual != expected[field]) {
+                return String.format("header word %d is %08x, expected %08x", field, actual, expected[field]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks each frame's samples against whether the frame should sound: silent frames are zero, tone frames
+     * hold one level and cross zero at the rate of a 440 Hz square wave, and only the first {@link #RAMP}
+     * samples of a frame where the tone starts or stops may lie in between.
+     */
+    private static String samples(byte[] file, boolean[] on) {
+        ByteBuffer data = ByteBuffer.wrap(file, WAV_HEADER_SIZE, file.length - WAV_HEADER_SIZE)
+                .slice().order(ByteOrder.LITTLE_ENDIAN);
+        int level = 0;
+        for (int sample = 0; sample < data.capacity() / 2; sample++) {
+            level = Math.max(level, Math.abs(data.getShort(sample * 2)));
+        }
+        boolean previous = false;
+        boolean sounds = false;
+        for (int frame = 0; frame < on.length; frame++) {
+            int start = frame * SAMPLES_PER_FRAME;
+            int settled = on[frame] == previous ? 0 : RAMP;
+            int crossings = 0;
+            for (int i = 0; i < SAMPLES_PER_FRAME; i++) {
+                int sample = data.getShort((start + i) * 2);
+                if (i >= settled && Math.abs(sample) != (on[frame] ? level : 0)) {
+                    return "frame " + frame + (on[frame] ? " should sound" : " should be silent") + " but sample "
+                            + i + " is " + sample;
+                }
+                if (i > 0 && (sample < 0) != (data.getShort((start + i - 1) * 2) < 0)) {
+                    crossings++;
+                }
+            }
+            int expected = 2 * 440 * SAMPLES_PER_FRAME / Beeper.SAMPLE_RATE;
+            if (on[frame] && previous && (crossings < expected - 1 || crossings > expected + 1)) {
+                return "frame " + frame + " crosses zero " + crossings + " times, expected about " + expected;
+            }
+            previous = on[frame];
+            sounds |= on[frame];
+        }
+        if (sounds && level == 0) {
+            return "no frame sounds";
+        }
+        return null;
+    }
+}
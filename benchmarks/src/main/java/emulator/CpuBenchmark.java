@@ -0,0 +1,58 @@
+package emulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instruction throughput of the CPU. Pass real ROMs with {@code -p rom=<path>}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuBenchmark {
+    private static final int CYCLES = 10_000;
+
+    @Param({"alu", "draw", "mixed"})
+    public String rom;
+
+    @Param({"INTERPRETER", "BLOCK_CACHE", "COMPILED"})
+    public ExecutionMode mode;
+
+    private CPU cpu;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cpu = new CPU(SyntheticRoms.load(rom));
+        cpu.setExecutionMode(mode);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long runCycles() {
+        cpu.runCycles(CYCLES);
+        return cpu.getCycleNumber();
+    }
+
+    @Benchmark
+    public short executeCycle() {
+        cpu.executeCycle();
+        return cpu.getPC();
+    }
+}
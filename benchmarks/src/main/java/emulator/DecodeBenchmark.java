@@ -0,0 +1,73 @@
+package emulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.CpuUtil;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final int OPCODES = 1024;
+
+    private final short[] opcodes = new short[OPCODES];
+    private final byte[] bytes = new byte[OPCODES * 2];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < OPCODES; i++) {
+            opcodes[i] = (short) random.nextInt(0x10000);
+            bytes[i * 2] = (byte) (opcodes[i] >> 8);
+            bytes[i * 2 + 1] = (byte) opcodes[i];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPCODES)
+    public int shortFromBytes() {
+        int sum = 0;
+        for (int i = 0; i < OPCODES; i++) {
+            sum += CpuUtil.shortFromBytes(bytes[i * 2], bytes[i * 2 + 1]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPCODES)
+    public int nibbleDecode() {
+        int sum = 0;
+        for (short opcode : opcodes) {
+            byte[] nibbles = CpuUtil.nibblesFromShort(opcode);
+            sum += nibbles[0] + CpuUtil.byteFromNibbles(nibbles[2], nibbles[3]) +
+                    CpuUtil.addressFromNibbles(nibbles[1], nibbles[2], nibbles[3]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPCODES)
+    public int tableDecode() {
+        int sum = 0;
+        for (short opcode : opcodes) {
+            int entry = Decoder.decode(opcode);
+            sum += Decoder.handler(entry) + Decoder.nn(entry) + Decoder.nnn(entry);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,54 @@
+package emulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBenchmark {
+
+    @Param({"1", "5", "15"})
+    public int height;
+
+    @Param({"false", "true"})
+    public boolean wrap;
+
+    private final FrameBuffer frameBuffer = new FrameBuffer();
+    private final byte[] sprite = new byte[16];
+    private int x;
+    private int y;
+
+    @Setup
+    public void setUp() {
+        new Random(8).nextBytes(sprite);
+        x = wrap ? FrameBuffer.WIDTH - 3 : 10;
+        y = wrap ? FrameBuffer.HEIGHT - 2 : 10;
+    }
+
+    @Benchmark
+    public boolean draw() {
+        return frameBuffer.draw(x, y, sprite, 0, height);
+    }
+
+    @Benchmark
+    public long clear() {
+        frameBuffer.clear();
+        return frameBuffer.takeDirtyRows();
+    }
+}
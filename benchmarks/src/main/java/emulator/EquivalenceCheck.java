@@ -0,0 +1,92 @@
+package emulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs random programs and wait loops with random key input in every execution mode of every profile, and
+ * exits with status 1 when a block mode ends a slice of the run in a different state or failure than the
+ * interpreter. Slices have random lengths, so block boundaries, compiled prefixes and skipped wait loops are
+ * all cut at arbitrary points. Run with {@code mvn -P checks verify}.
+ */
+public class EquivalenceCheck {
+    private static final int PROGRAMS = 300;
+    private static final int MAX_SLICE = 700;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        boolean failed = false;
+        for (Profile profile : Profile.values()) {
+            Random random = new Random(seed);
+            int crashes = 0;
+            for (int program = 0; program < programs; program++) {
+                byte[] rom = RandomPrograms.program(random, profile);
+                int instructionsPerSecond = CPU.TIMER_FREQUENCY + random.nextInt(random.nextBoolean() ? 200 : 3000);
+                long cycles = 1_000 + random.nextInt(100_000);
+                InputScript keys = RandomPrograms.keys(random, cycles);
+                long slices = random.nextLong();
+
+                Run reference = run(rom, profile, ExecutionMode.INTERPRETER, instructionsPerSecond, keys, cycles, slices);
+                if (reference.failure != null) {
+                    crashes++;
+                }
+                for (ExecutionMode mode : ExecutionMode.values()) {
+                    if (mode == ExecutionMode.INTERPRETER) {
+                        continue;
+                    }
+                    String difference = reference.compare(run(rom, profile, mode, instructionsPerSecond, keys, cycles, slices));
+                    if (difference != null) {
+                        System.out.println(String.format("%s program %d, %s: %s", profile, program, mode, difference));
+                        failed = true;
+                    }
+                }
+            }
+            System.out.println(String.format("%-8s %d programs, %d ending in a failure", profile, programs, crashes));
+        }
+        if (failed) {
+            System.out.println("Execution modes disagree");
+            System.exit(1);
+        }
+    }
+
+    private static Run run(byte[] rom, Profile profile, ExecutionMode mode, int instructionsPerSecond,
+                           InputScript keys, long cycles, long slices) {
+        CPU cpu = new CPU(rom, 0, profile);
+        cpu.setExecutionMode(mode);
+        cpu.setInstructionsPerSecond(instructionsPerSecond);
+        Random random = new Random(slices);
+        Run run = new Run();
+        try {
+            while (cpu.getCycleNumber() < cycles) {
+                keys.run(cpu, Math.min(cycles, cpu.getCycleNumber() + 1 + random.nextInt(MAX_SLICE)));
+                run.states.add(RandomPrograms.state(cpu));
+            }
+        } catch (RuntimeException e) {
+            run.failure = RandomPrograms.failure(e);
+            run.states.add(RandomPrograms.state(cpu));
+        }
+        return run;
+    }
+
+    private static final class Run {
+        private final List<byte[]> states = new ArrayList<>();
+        private String failure;
+
+        String compare(Run other) {
+            int slices = Math.min(states.size(), other.states.size());
+            for (int slice = 0; slice < slices; slice++) {
+                if (!Arrays.equals(states.get(slice), other.states.get(slice))) {
+                    return "slice " + slice + ": " + RandomPrograms.describe(states.get(slice), other.states.get(slice));
+                }
+            }
+            if (states.size() != other.states.size() || !String.valueOf(failure).equals(String.valueOf(other.failure))) {
+                return "ended after " + other.states.size() + " slices with " + other.failure + ", expected "
+                        + states.size() + " slices with " + failure;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package emulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless conversion of the packed display into ARGB pixels, as done by the renderer and frame exporters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBufferBenchmark {
+    private final FrameBuffer frameBuffer = new FrameBuffer();
+    private final int[] pixels = new int[FrameBuffer.WIDTH * FrameBuffer.HEIGHT];
+    private final long[] rows = new long[FrameBuffer.STATE_WORDS];
+
+    @Setup
+    public void setUp() {
+        byte[] sprites = new byte[FrameBuffer.HEIGHT];
+        new Random(5).nextBytes(sprites);
+        for (int x = 0; x < FrameBuffer.WIDTH; x += 8) {
+            frameBuffer.draw(x, 0, sprites, 0, FrameBuffer.HEIGHT);
+        }
+    }
+
+    @Benchmark
+    public int[] toPixels() {
+        frameBuffer.toPixels(pixels, 0xFFFFFFFF, 0xFF000000);
+        return pixels;
+    }
+
+    @Benchmark
+    public long[] copyRows() {
+        frameBuffer.copyRows(rows);
+        return rows;
+    }
+}
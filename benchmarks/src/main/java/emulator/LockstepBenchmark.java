@@ -0,0 +1,53 @@
+package emulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-instance instruction throughput of the lockstep engine, comparable with {@link CpuBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LockstepBenchmark {
+    private static final int CYCLES = 1_000;
+    private static final int INSTANCES = 256;
+
+    @Param({"alu", "draw", "mixed"})
+    public String rom;
+
+    private LockstepEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        long[] seeds = new long[INSTANCES];
+        for (int lane = 0; lane < INSTANCES; lane++) {
+            seeds[lane] = lane;
+        }
+        engine = new LockstepEngine(SyntheticRoms.load(rom), seeds);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES * INSTANCES)
+    public long runCycles() {
+        engine.runCycles(CYCLES);
+        return engine.getCycleNumber();
+    }
+}
@@ -0,0 +1,93 @@
+package emulator;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Runs random CHIP-8 programs in a {@link LockstepEngine} with a different seed and key script per lane, and
+ * compares every lane with a {@link CPU} running the same seed and script on its own. Lanes diverge through
+ * random numbers, key polls, key waits and self-modifying code, so groups split and merge throughout; wide
+ * runs have groups both above and below the size where the engine switches to vector operations. Exits
+ * with status 1 when a lane's PC, I, timers, registers, display or halt state differs.
+ * Run with {@code mvn -P checks verify}.
+ */
+public class LockstepCheck {
+    private static final int PROGRAMS = 400;
+    private static final int MAX_LANES = 40;
+    private static final int MAX_WIDE_LANES = 300;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        Random random = new Random(seed);
+        int diverged = 0;
+        int mismatches = 0;
+        for (int program = 0; program < programs; program++) {
+            byte[] rom = RandomPrograms.instructions(random, Profile.CHIP8, 4 + random.nextInt(60));
+            int lanes = 1 + random.nextInt(random.nextInt(4) == 0 ? MAX_WIDE_LANES : MAX_LANES);
+            long cycles = 100 + random.nextInt(20_000);
+            long[] seeds = new long[lanes];
+            InputScript[] scripts = new InputScript[lanes];
+            for (int lane = 0; lane < lanes; lane++) {
+                boolean shared = lane > 0 && random.nextInt(3) == 0;
+                seeds[lane] = shared ? seeds[0] : random.nextLong();
+                scripts[lane] = shared ? scripts[0] : RandomPrograms.keys(random, cycles);
+            }
+
+            LockstepEngine engine = new LockstepEngine(rom, seeds);
+            engine.run(scripts, cycles);
+            Set<String> outcomes = new HashSet<>();
+            for (int lane = 0; lane < lanes; lane++) {
+                CPU cpu = new CPU(rom, seeds[lane]);
+                boolean halted = false;
+                try {
+                    scripts[lane].run(cpu, cycles);
+                } catch (RuntimeException e) {
+                    halted = true;
+                }
+                String expected = state(cpu, halted);
+                String actual = state(engine, lane);
+                outcomes.add(expected);
+                if (!expected.equals(actual)) {
+                    System.out.println(String.format("Program %d lane %d: expected %s, got %s (%s)", program, lane,
+                            expected, actual, engine.getError(lane)));
+                    mismatches++;
+                }
+            }
+            if (outcomes.size() > 1) {
+                diverged++;
+            }
+        }
+        System.out.println(String.format("%d programs, %d with lanes ending in different states, %d lane mismatches",
+                programs, diverged, mismatches));
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String state(CPU cpu, boolean halted) {
+        StringBuilder state = new StringBuilder();
+        state.append(cpu.getPC()).append(' ').append(cpu.getI()).append(' ').append(cpu.getDT()).append(' ').append(cpu.getST());
+        for (int register = 0; register < 16; register++) {
+            state.append(' ').append(cpu.getRegister(register));
+        }
+        for (int y = 0; y < FrameBuffer.HEIGHT; y++) {
+            state.append(' ').append(Long.toHexString(cpu.getFrameBuffer().getRow(y)));
+        }
+        return state.append(halted ? " halted" : "").toString();
+    }
+
+    private static String state(LockstepEngine engine, int lane) {
+        StringBuilder state = new StringBuilder();
+        state.append(engine.getPC(lane)).append(' ').append(engine.getI(lane)).append(' ').append(engine.getDT(lane))
+                .append(' ').append(engine.getST(lane));
+        for (int register = 0; register < 16; register++) {
+            state.append(' ').append(engine.getRegister(lane, register));
+        }
+        for (int y = 0; y < FrameBuffer.HEIGHT; y++) {
+            state.append(' ').append(Long.toHexString(engine.getFrameBuffer(lane).getRow(y)));
+        }
+        return state.append(engine.isHalted(lane) ? " halted" : "").toString();
+    }
+}
@@ -0,0 +1,104 @@
+package emulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Runs random CHIP-8 programs in the block modes, where {@link RomAnalysis} lets proven blocks skip their
+ * stack and memory checks, and compares the final state and failure with the interpreter, which always
+ * checks. Half of the programs have their calls and returns replaced by register loads so that more of them
+ * are proven from the start. Also restores a snapshot taken partway through, which re-evaluates the proof
+ * against the restored state, and checks that the run continues like the interpreter. Exits with status 1 on
+ * any difference, or when no run was proven at all. Run with {@code mvn -P checks verify}.
+ */
+public class ProofCheck {
+    private static final int PROGRAMS = 1_000;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        Random random = new Random(seed);
+        boolean failed = false;
+        int provenAtStart = 0;
+        int provenAtEnd = 0;
+        int crashes = 0;
+        for (int program = 0; program < programs; program++) {
+            byte[] rom = RandomPrograms.instructions(random, Profile.CHIP8, 4 + random.nextInt(60));
+            if (random.nextBoolean()) {
+                withoutCalls(rom);
+            }
+            long runSeed = random.nextLong();
+            long cycles = 1_000 + random.nextInt(50_000);
+            long snapshotAt = random.nextInt((int) cycles);
+            ExecutionMode mode = random.nextBoolean() ? ExecutionMode.BLOCK_CACHE : ExecutionMode.COMPILED;
+
+            CPU reference = new CPU(rom, runSeed);
+            String referenceFailure = run(reference, cycles);
+            if (!referenceFailure.isEmpty()) {
+                crashes++;
+            }
+            String expected = outcome(reference, referenceFailure);
+            CPU cpu = new CPU(rom, runSeed);
+            cpu.setExecutionMode(mode);
+            if (cpu.isProven()) {
+                provenAtStart++;
+            }
+            String actual = outcome(cpu, run(cpu, cycles));
+            if (cpu.isProven()) {
+                provenAtEnd++;
+            }
+            String error = expected.equals(actual) ? null : "run ended differently";
+
+            CPU restored = new CPU(rom, runSeed);
+            restored.setExecutionMode(mode);
+            if (error == null && run(restored, snapshotAt).isEmpty()) {
+                Snapshot snapshot = restored.snapshot();
+                run(restored, 1 + random.nextInt(1_000));
+                restored.restore(snapshot);
+                if (!expected.equals(outcome(restored, run(restored, cycles - snapshotAt)))) {
+                    error = "run restored at cycle " + snapshotAt + " ended differently";
+                }
+            }
+            if (error != null) {
+                System.out.println(String.format("Program %d, %s: %s", program, mode, error));
+                failed = true;
+            }
+        }
+        System.out.println(String.format("%d programs, %d proven at the start, %d at the end, %d ending in a failure",
+                programs, provenAtStart, provenAtEnd, crashes));
+        if (provenAtStart == 0) {
+            System.out.println("No program ran in the verified tier");
+            failed = true;
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Replaces every CALL and RET with a register load, leaving the other instructions in place.
+     */
+    private static void withoutCalls(byte[] rom) {
+        for (int i = 0; i + 1 < rom.length; i += 2) {
+            if ((rom[i] & 0xF0) == 0x20 || rom[i] == 0 && rom[i + 1] == (byte) 0xEE) {
+                rom[i] = 0x60;
+            }
+        }
+    }
+
+    /**
+     * Runs the CPU and returns its failure, or an empty string when it ran every cycle.
+     */
+    private static String run(CPU cpu, long cycles) {
+        try {
+            cpu.runCycles(cycles);
+        } catch (RuntimeException e) {
+            return RandomPrograms.failure(e);
+        }
+        return "";
+    }
+
+    private static String outcome(CPU cpu, String failure) {
+        return Arrays.toString(RandomPrograms.state(cpu)) + failure;
+    }
+}
@@ -0,0 +1,250 @@
+package emulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random programs, key scripts and state comparison shared by the checks. Programs mix every instruction
+ * group, with jump, call and skip targets inside the program, so runs loop, branch, write their own code and
+ * fail the way real programs do.
+ */
+final class RandomPrograms {
+
+    private RandomPrograms() {
+    }
+
+    /**
+     * A random program for the profile, in one of two shapes: straight random instructions, or a chain of
+     * wait loops (timer polls, key polls and key waits) separated by random instructions.
+     */
+    static byte[] program(Random random, Profile profile) {
+        return random.nextInt(3) == 0 ? waitLoops(random) : instructions(random, profile, 4 + random.nextInt(60));
+    }
+
+    static byte[] instructions(Random random, Profile profile, int length) {
+        byte[] rom = new byte[length * 2 + 64];
+        for (int i = 0; i < length; i++) {
+            int opcode = profile == Profile.CHIP8 ? chip8(random, length) : extended(random, length);
+            rom[i * 2] = (byte) (opcode >> 8);
+            rom[i * 2 + 1] = (byte) opcode;
+        }
+        for (int i = length * 2; i < rom.length; i++) {
+            rom[i] = (byte) random.nextInt(256);
+        }
+        return rom;
+    }
+
+    private static int chip8(Random random, int length) {
+        int x = random.nextInt(16);
+        int y = random.nextInt(16);
+        int target = 0x200 + 2 * random.nextInt(length);
+        switch (random.nextInt(26)) {
+            case 0:
+                return 0x1000 | target;
+            case 1:
+                return 0x3000 | x << 8 | random.nextInt(4);
+            case 2:
+                return 0x4000 | x << 8 | random.nextInt(4);
+            case 3:
+                return 0x6000 | x << 8 | random.nextInt(256);
+            case 4:
+            case 5:
+                return 0x7000 | x << 8 | random.nextInt(256);
+            case 6:
+                return 0x8000 | x << 8 | y << 4 | new int[]{0, 2, 4, 5}[random.nextInt(4)];
+            case 7:
+                return 0x9000 | x << 8 | y << 4;
+            case 8:
+                return 0xA000 | 0x300 + random.nextInt(0x600);
+            case 9:
+                return 0xD000 | x << 8 | y << 4 | random.nextInt(16);
+            case 10:
+                return 0xF007 | x << 8;
+            case 11:
+                return 0xF015 | x << 8;
+            case 12:
+                return 0xF018 | x << 8;
+            case 13:
+                return 0xF01E | x << 8;
+            case 14:
+                return 0xF029 | x << 8;
+            case 15:
+                return 0xF033 | x << 8;
+            case 16:
+                return 0xF065 | x << 8;
+            case 17:
+                return 0x00E0;
+            case 18:
+                return 0x2000 | target;
+            case 19:
+                return 0xF055 | x << 8;
+            case 20:
+                return 0xE09E | x << 8;
+            case 21:
+                return 0xE0A1 | x << 8;
+            case 22:
+                return 0xF00A | x << 8;
+            case 23:
+                return 0xC000 | x << 8 | random.nextInt(128);
+            default:
+                return 0x00EE;
+        }
+    }
+
+    private static int extended(Random random, int length) {
+        int x = random.nextInt(16);
+        int y = random.nextInt(16);
+        int target = 0x200 + 2 * random.nextInt(length);
+        switch (random.nextInt(33)) {
+            case 0:
+                return 0x1000 | target;
+            case 1:
+                return 0x3000 | x << 8 | random.nextInt(4);
+            case 2:
+                return 0x5000 | x << 8 | y << 4 | random.nextInt(4);
+            case 3:
+                return 0x6000 | x << 8 | random.nextInt(256);
+            case 4:
+                return 0x7000 | x << 8 | random.nextInt(256);
+            case 5:
+                return 0x8000 | x << 8 | y << 4 | random.nextInt(8);
+            case 6:
+                return 0x800E | x << 8 | y << 4;
+            case 7:
+                return 0x9000 | x << 8 | y << 4;
+            case 8:
+                return 0xA000 | 0x300 + random.nextInt(0x600);
+            case 9:
+            case 10:
+                return 0xD000 | x << 8 | y << 4 | random.nextInt(16);
+            case 11:
+                return 0x00C0 | random.nextInt(16);
+            case 12:
+                return 0x00D0 | random.nextInt(16);
+            case 13:
+                return 0x00FB + random.nextInt(2);
+            case 14:
+                return 0x00FE + random.nextInt(2);
+            case 15:
+                return 0xF001 | random.nextInt(4) << 8;
+            case 16:
+                return 0xF030 | x << 8;
+            case 17:
+                return 0xF075 | x << 8;
+            case 18:
+                return 0xF085 | x << 8;
+            case 19:
+                return 0xF033 | x << 8;
+            case 20:
+                return 0xF055 | x << 8;
+            case 21:
+                return 0xF065 | x << 8;
+            case 22:
+                return 0x00E0;
+            case 23:
+                return 0x2000 | target;
+            case 24:
+                return 0xB000 | 0x200 + random.nextInt(0x100);
+            case 25:
+                return 0xF01E | x << 8;
+            case 26:
+                return 0xF000;
+            case 27:
+                return 0x5002 | x << 8 | y << 4 | random.nextInt(2);
+            case 28:
+                return 0xF029 | x << 8;
+            case 29:
+                return 0xE09E | x << 8;
+            case 30:
+                return 0xE0A1 | x << 8;
+            case 31:
+                return 0xC000 | x << 8 | random.nextInt(256);
+            default:
+                return 0x00EE;
+        }
+    }
+
+    /**
+     * Segments that set a timer and then spin in a delay timer poll, a key poll or a key wait, ending in a
+     * jump back to the start or to itself. The opcodes mean the same in every profile.
+     */
+    static byte[] waitLoops(Random random) {
+        int[] values = {0, 1, 2, 5, 60, 127, 128, 129, 200, 255, random.nextInt(256)};
+        List<Integer> opcodes = new ArrayList<>();
+        for (int segment = 1 + random.nextInt(5); segment > 0; segment--) {
+            int x = random.nextInt(15);
+            opcodes.add(0x6000 | x << 8 | values[random.nextInt(values.length)]);
+            opcodes.add(0xF015 | x << 8);
+            if (random.nextBoolean()) {
+                opcodes.add(0x6E00 | values[random.nextInt(values.length)]);
+                opcodes.add(0xFE18);
+            }
+            for (int filler = random.nextInt(3); filler > 0; filler--) {
+                opcodes.add(0x7000 | random.nextInt(15) << 8 | random.nextInt(256));
+            }
+            int loop = 0x200 + 2 * opcodes.size();
+            int z = random.nextInt(16);
+            switch (random.nextInt(3)) {
+                case 0:
+                    opcodes.add(0xF007 | z << 8);
+                    int compare = random.nextInt(3) == 0 ? values[random.nextInt(values.length)] : random.nextInt(3);
+                    opcodes.add((random.nextInt(4) == 0 ? 0x4000 : 0x3000) | z << 8 | compare);
+                    opcodes.add(0x1000 | loop);
+                    break;
+                case 1:
+                    opcodes.add(0x6000 | z << 8 | random.nextInt(random.nextInt(8) == 0 ? 256 : 16));
+                    opcodes.add((random.nextBoolean() ? 0xE09E : 0xE0A1) | z << 8);
+                    opcodes.add(0x1000 | loop + 2);
+                    break;
+                default:
+                    opcodes.add(0xF00A | z << 8);
+            }
+        }
+        opcodes.add(random.nextBoolean() ? 0x1000 | 0x200 + 2 * opcodes.size() : 0x1200);
+        byte[] rom = new byte[opcodes.size() * 2];
+        for (int i = 0; i < opcodes.size(); i++) {
+            rom[i * 2] = (byte) (opcodes.get(i) >> 8);
+            rom[i * 2 + 1] = (byte) (int) opcodes.get(i);
+        }
+        return rom;
+    }
+
+    /**
+     * Random presses and releases up to the given cycle, some of them held long enough to end a key poll.
+     */
+    static InputScript keys(Random random, long cycles) {
+        InputScript.Builder builder = InputScript.builder();
+        long cycle = 0;
+        for (int press = random.nextInt(20); press > 0; press--) {
+            cycle += 1 + random.nextInt((int) Math.max(1, cycles / 10));
+            int key = random.nextInt(16);
+            builder.press(cycle, key);
+            builder.release(cycle + 1 + random.nextInt(3000), key);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The CPU's whole state image: cycle count, generator, registers, timers, stack, keys, display and memory.
+     */
+    static byte[] state(CPU cpu) {
+        byte[] image = new byte[cpu.getStateSize()];
+        cpu.saveState(image);
+        return image;
+    }
+
+    /**
+     * Describes a failure by its type, plus the message for the CPU's own RuntimeExceptions. JVM messages of
+     * other exceptions may name different operands depending on where the check happened.
+     */
+    static String failure(RuntimeException e) {
+        return e.getClass() == RuntimeException.class ? e.getMessage() : e.getClass().getName();
+    }
+
+    static String describe(byte[] expected, byte[] actual) {
+        int offset = Arrays.mismatch(expected, actual);
+        return offset < 0 ? "same state" : "state differs from byte " + offset;
+    }
+}
@@ -0,0 +1,113 @@
+package emulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Plays random programs of every profile frame by frame, pressing and releasing keys through an
+ * {@link InputRecorder} between frames and now and then rewinding a frame the way the emulation thread does,
+ * then replays the serialized log from reset with a {@link Replayer} and checks that it reaches the state the
+ * recording ended in. Also seeks to random earlier and later cycles and compares each with a replay run
+ * straight from reset to that cycle. Exits with status 1 on any difference.
+ * Run with {@code mvn -P checks verify}.
+ */
+public class ReplayCheck {
+    private static final int PROGRAMS = 200;
+    private static final int FRAMES = 300;
+    private static final int SEEKS = 5;
+
+    public static void main(String[] args) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        boolean failed = false;
+        for (Profile profile : Profile.values()) {
+            Random random = new Random(seed);
+            int rewinds = 0;
+            int events = 0;
+            for (int program = 0; program < programs; program++) {
+                byte[] rom = RandomPrograms.program(random, profile);
+                CPU cpu = new CPU(rom, random.nextLong(), profile);
+                ExecutionMode mode = ExecutionMode.values()[random.nextInt(ExecutionMode.values().length)];
+                cpu.setExecutionMode(mode);
+                Scheduler scheduler = new Scheduler(cpu, CPU.TIMER_FREQUENCY + random.nextInt(3000));
+                scheduler.setRewindBuffer(new RewindBuffer(1 + random.nextInt(60), 1 << 22, 1 + random.nextInt(30)));
+                InputRecorder recorder = new InputRecorder(cpu);
+                boolean halted = false;
+                try {
+                    for (int frame = 0; frame < FRAMES; frame++) {
+                        for (int event = random.nextInt(4) == 0 ? random.nextInt(3) : 0; event > 0; event--) {
+                            if (random.nextBoolean()) {
+                                recorder.keyPressed(random.nextInt(16));
+                            } else {
+                                recorder.keyReleased(random.nextInt(16));
+                            }
+                            events++;
+                        }
+                        if (random.nextInt(8) == 0 && scheduler.getRewindBuffer().rewind(cpu, 1)) {
+                            recorder.truncate(cpu.getCycleNumber());
+                            rewinds++;
+                        } else {
+                            scheduler.runFrame();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    halted = true;
+                }
+                long end = cpu.getCycleNumber();
+                byte[] expected = RandomPrograms.state(cpu);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                recorder.toLog().write(bytes);
+                InputLog log = InputLog.read(new ByteArrayInputStream(bytes.toByteArray()));
+                ExecutionMode replayMode = ExecutionMode.values()[random.nextInt(ExecutionMode.values().length)];
+                String error = null;
+                Replayer replayer = new Replayer(rom, log, 1 + random.nextInt(2_000), replayMode, profile);
+                String replayed = seek(replayer, end);
+                if (!halted && !Arrays.equals(expected, RandomPrograms.state(replayer.getCpu()))) {
+                    error = "replay to cycle " + end + ": "
+                            + RandomPrograms.describe(expected, RandomPrograms.state(replayer.getCpu()));
+                } else if (!halted && !replayed.isEmpty()) {
+                    error = "replay to cycle " + end + " failed with " + replayed;
+                }
+                // A halted run stops at its failing instruction, so only seek to cycles before it.
+                int seekable = (int) (halted ? end : end + 1);
+                for (int repeat = 0; repeat < SEEKS && seekable > 0 && error == null; repeat++) {
+                    long cycle = random.nextInt(seekable);
+                    String failure = seek(replayer, cycle);
+                    Replayer fresh = new Replayer(rom, log, Long.MAX_VALUE, replayMode, profile);
+                    String freshFailure = seek(fresh, cycle);
+                    byte[] actual = RandomPrograms.state(replayer.getCpu());
+                    byte[] reference = RandomPrograms.state(fresh.getCpu());
+                    if (!failure.equals(freshFailure)) {
+                        error = "seek to cycle " + cycle + " failed with " + failure + ", expected " + freshFailure;
+                    } else if (!Arrays.equals(reference, actual)) {
+                        error = "seek to cycle " + cycle + ": " + RandomPrograms.describe(reference, actual);
+                    }
+                }
+                if (error != null) {
+                    System.out.println(String.format("%s program %d, %s replayed in %s: %s", profile, program, mode,
+                            replayMode, error));
+                    failed = true;
+                }
+            }
+            System.out.println(String.format("%-8s %d programs, %d key events, %d rewinds", profile, programs, events,
+                    rewinds));
+        }
+        if (failed) {
+            System.out.println("Replays do not reproduce the recorded run");
+            System.exit(1);
+        }
+    }
+
+    private static String seek(Replayer replayer, long cycle) {
+        try {
+            replayer.seek(cycle);
+        } catch (RuntimeException e) {
+            return RandomPrograms.failure(e);
+        }
+        return "";
+    }
+}
@@ -0,0 +1,104 @@
+package emulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Captures every frame of random programs of every profile into a {@link RewindBuffer} with random limits,
+ * rewinds to random earlier frames and checks that each rewind restores exactly the state image recorded for
+ * that frame, and that the buffer never holds more frames or bytes than allowed. Half of the XO-CHIP programs
+ * keep storing registers near the top of their 64 KB memory, so deltas span the whole state image.
+ * Exits with status 1 on any difference. Run with {@code mvn -P checks verify}.
+ */
+public class RewindCheck {
+    private static final int PROGRAMS = 200;
+    private static final int FRAMES = 400;
+    private static final int RECORD_HEADER = 5;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        boolean failed = false;
+        for (Profile profile : Profile.values()) {
+            Random random = new Random(seed);
+            int rewinds = 0;
+            long bytes = 0;
+            long frames = 0;
+            for (int program = 0; program < programs; program++) {
+                byte[] rom = profile == Profile.XO_CHIP && random.nextBoolean() ? highStores(random)
+                        : RandomPrograms.instructions(random, profile, 4 + random.nextInt(60));
+                CPU cpu = new CPU(rom, random.nextLong(), profile);
+                cpu.setExecutionMode(ExecutionMode.values()[random.nextInt(ExecutionMode.values().length)]);
+                int maxFrames = 1 + random.nextInt(200);
+                int minimum = 2 * (RECORD_HEADER + CPU.stateSize(profile));
+                RewindBuffer buffer = new RewindBuffer(maxFrames, minimum + random.nextInt(20 * minimum), 1 + random.nextInt(70));
+                List<byte[]> recorded = new ArrayList<>();
+                String error = null;
+                try {
+                    for (int frame = 0; frame < FRAMES && error == null; frame++) {
+                        if (random.nextInt(10) == 0 && buffer.getFrameCount() > 0) {
+                            int count = random.nextInt(buffer.getFrameCount());
+                            if (!buffer.rewind(cpu, count)) {
+                                error = "refused to rewind " + count + " of " + buffer.getFrameCount() + " frames";
+                                break;
+                            }
+                            recorded.subList(recorded.size() - count, recorded.size()).clear();
+                            byte[] expected = recorded.get(recorded.size() - 1);
+                            byte[] actual = RandomPrograms.state(cpu);
+                            if (!Arrays.equals(expected, actual)) {
+                                error = "rewind by " + count + " at frame " + frame + ": "
+                                        + RandomPrograms.describe(expected, actual);
+                            }
+                            rewinds++;
+                        }
+                        cpu.runCycles(1 + random.nextInt(30));
+                        buffer.capture(cpu);
+                        recorded.add(RandomPrograms.state(cpu));
+                        if (buffer.getFrameCount() > maxFrames || buffer.getUsedBytes() > buffer.getCapacityBytes()) {
+                            error = "holds " + buffer.getFrameCount() + " frames in " + buffer.getUsedBytes() + " bytes";
+                        }
+                        while (recorded.size() > buffer.getFrameCount()) {
+                            recorded.remove(0);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // The program failed; everything up to the failure was checked.
+                }
+                if (error != null) {
+                    System.out.println(String.format("%s program %d: %s", profile, program, error));
+                    failed = true;
+                }
+                bytes += buffer.getUsedBytes();
+                frames += buffer.getFrameCount();
+            }
+            System.out.println(String.format("%-8s %d rewinds, %d bytes per frame held", profile, rewinds,
+                    frames == 0 ? 0 : bytes / frames));
+        }
+        if (failed) {
+            System.out.println("Rewinding does not restore the captured state");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A loop that changes registers and stores them with LD I, NNNN into the last 512 bytes of memory, so each
+     * frame's delta has to reach from the display to the end of the state image.
+     */
+    private static byte[] highStores(Random random) {
+        int x = random.nextInt(16);
+        int[] opcodes = {
+                0x7000 | random.nextInt(16) << 8 | 1 + random.nextInt(255),
+                0x7000 | x << 8 | 1 + random.nextInt(255),
+                0xF000, 0xFE00 + random.nextInt(0x1F0),
+                0xF055 | x << 8,
+                0x1200};
+        byte[] rom = new byte[opcodes.length * 2];
+        for (int i = 0; i < opcodes.length; i++) {
+            rom[i * 2] = (byte) (opcodes[i] >> 8);
+            rom[i * 2 + 1] = (byte) opcodes[i];
+        }
+        return rom;
+    }
+}
@@ -0,0 +1,85 @@
+package emulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.RomUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RomLoadBenchmark {
+
+    @Param({"246", "3584"})
+    public int size;
+
+    private Path rom;
+    private Path packFile;
+    private RomPack pack;
+    private RomEntry packEntry;
+    private RomCatalog catalog;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] data = new byte[size];
+        new Random(3).nextBytes(data);
+        rom = Files.createTempFile("chip8-bench", ".ch8");
+        Files.write(rom, data);
+        packFile = Files.createTempFile("chip8-bench", ".c8pk");
+        RomPack.write(packFile, Collections.singletonList(rom));
+        pack = RomPack.open(packFile);
+        packEntry = pack.getEntries().get(0);
+        catalog = new RomCatalog();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(rom);
+        Files.deleteIfExists(packFile);
+    }
+
+    @Benchmark
+    public byte[] loadRom() throws IOException {
+        return RomUtil.LoadRom(rom.toString());
+    }
+
+    @Benchmark
+    public CPU loadAndCreateCpu() throws IOException {
+        return new CPU(RomUtil.LoadRom(rom.toString()));
+    }
+
+    @Benchmark
+    public ByteBuffer sliceFromPack() {
+        return pack.data(packEntry);
+    }
+
+    @Benchmark
+    public CPU createCpuFromPack() {
+        return new CPU(pack.data(packEntry), 0);
+    }
+
+    @Benchmark
+    public ByteBuffer loadThroughCatalog() throws IOException {
+        return catalog.load(rom.toString());
+    }
+}
@@ -0,0 +1,91 @@
+package emulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Takes a snapshot partway through random programs of every profile and checks that restoring it, restoring
+ * it after another snapshot was taken on top, and restoring a serialized copy into a fresh CPU in another
+ * execution mode all continue exactly like the original run. Exits with status 1 on any difference.
+ * Run with {@code mvn -P checks verify}.
+ */
+public class SnapshotCheck {
+    private static final int PROGRAMS = 300;
+    private static final int REPEATS = 3;
+
+    public static void main(String[] args) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        boolean failed = false;
+        for (Profile profile : Profile.values()) {
+            Random random = new Random(seed);
+            int checked = 0;
+            for (int program = 0; program < programs; program++) {
+                byte[] rom = RandomPrograms.program(random, profile);
+                long runSeed = random.nextLong();
+                ExecutionMode mode = ExecutionMode.values()[random.nextInt(ExecutionMode.values().length)];
+                long before = random.nextInt(5_000);
+                long after = 1 + random.nextInt(5_000);
+                CPU cpu = new CPU(rom, runSeed, profile);
+                cpu.setExecutionMode(mode);
+                try {
+                    cpu.runCycles(before);
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                Snapshot snapshot = cpu.snapshot();
+                String expected = run(cpu, after);
+                String error = null;
+
+                for (int repeat = 0; repeat < REPEATS && error == null; repeat++) {
+                    cpu.restore(snapshot);
+                    if (!expected.equals(run(cpu, after))) {
+                        error = "restore " + repeat + " continued differently";
+                    }
+                }
+                if (error == null) {
+                    cpu.restore(snapshot);
+                    run(cpu, Math.min(after, 1 + random.nextInt(100)));
+                    cpu.snapshot();
+                    cpu.restore(snapshot);
+                    if (!expected.equals(run(cpu, after))) {
+                        error = "restore after a newer snapshot continued differently";
+                    }
+                }
+                if (error == null) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    snapshot.write(bytes);
+                    CPU fresh = new CPU(new byte[0], 0, profile);
+                    fresh.setExecutionMode(ExecutionMode.values()[random.nextInt(ExecutionMode.values().length)]);
+                    fresh.restore(Snapshot.read(new ByteArrayInputStream(bytes.toByteArray())));
+                    if (!expected.equals(run(fresh, after))) {
+                        error = "serialized snapshot continued differently";
+                    }
+                }
+                if (error != null) {
+                    System.out.println(String.format("%s program %d, %s: %s", profile, program, mode, error));
+                    failed = true;
+                }
+                checked++;
+            }
+            System.out.println(String.format("%-8s %d snapshots restored", profile, checked));
+        }
+        if (failed) {
+            System.out.println("Snapshots do not restore the state they captured");
+            System.exit(1);
+        }
+    }
+
+    private static String run(CPU cpu, long cycles) {
+        String failure = "";
+        try {
+            cpu.runCycles(cycles);
+        } catch (RuntimeException e) {
+            failure = RandomPrograms.failure(e);
+        }
+        return Arrays.toString(RandomPrograms.state(cpu)) + failure;
+    }
+}
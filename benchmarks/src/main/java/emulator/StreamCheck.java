@@ -0,0 +1,151 @@
+package emulator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback test of frame streaming: runs a ROM headlessly behind a {@link StreamServer}, connects a number of
+ * {@link StreamClient} viewers, some of them deliberately slow, and checks every frame a viewer rebuilds
+ * against the fingerprint of the emulator's display for that frame, in increasing frame order. The ROM may
+ * also name one of the {@link SyntheticRoms}. Exits with status 1 on any mismatch or viewer failure.
+ * Run with {@code mvn -P checks verify}.
+ */
+public class StreamCheck {
+    private static final int SLOW_RECEIVE_BUFFER = 4096;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: StreamCheck <rom> [--viewers=N] [--slow=N] [--frames=N] [--keyframes=N] [--budget=bytes] [--profile=chip8|schip|xo_chip]");
+            System.exit(2);
+        }
+        String romPath = args[0];
+        int viewerCount = 8;
+        int slowCount = 2;
+        long frames = 3000;
+        int keyframeInterval = StreamServer.DEFAULT_KEYFRAME_INTERVAL;
+        int budget = 16 * 1024;
+        Profile profile = Profile.forFileName(romPath);
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--viewers=")) {
+                viewerCount = Integer.parseInt(args[i].substring("--viewers=".length()));
+            } else if (args[i].startsWith("--slow=")) {
+                slowCount = Integer.parseInt(args[i].substring("--slow=".length()));
+            } else if (args[i].startsWith("--frames=")) {
+                frames = Long.parseLong(args[i].substring("--frames=".length()));
+            } else if (args[i].startsWith("--keyframes=")) {
+                keyframeInterval = Integer.parseInt(args[i].substring("--keyframes=".length()));
+            } else if (args[i].startsWith("--budget=")) {
+                budget = Integer.parseInt(args[i].substring("--budget=".length()));
+            } else if (args[i].startsWith("--profile=")) {
+                profile = Profile.parse(args[i].substring("--profile=".length()));
+            }
+        }
+
+        CPU cpu = new CPU(SyntheticRoms.load(romPath), 0, profile);
+        Scheduler scheduler = new Scheduler(cpu, CPU.DEFAULT_INSTRUCTIONS_PER_SECOND);
+        scheduler.setThrottled(false);
+        Map<Long, Long> expected = new ConcurrentHashMap<>();
+        StreamServer server = new StreamServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                keyframeInterval, budget);
+        scheduler.setFrameSink((frameNumber, frameBuffer) -> {
+            expected.put(frameNumber, FrameHasher.hash(frameBuffer));
+            server.frameCompleted(frameNumber, frameBuffer);
+        });
+
+        Viewer[] viewers = new Viewer[viewerCount];
+        for (int i = 0; i < viewerCount; i++) {
+            boolean slow = i < slowCount;
+            StreamClient client = new StreamClient(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(),
+                    slow ? SLOW_RECEIVE_BUFFER : 0);
+            viewers[i] = new Viewer(client, expected, slow);
+            viewers[i].thread.start();
+        }
+        while (server.getViewerCount() < viewerCount) {
+            Thread.sleep(1);
+        }
+
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            while (scheduler.getFrameNumber() < frames) {
+                scheduler.runFrame();
+            }
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        long lastCount = -1;
+        for (int wait = 0; wait < 50; wait++) {
+            long count = 0;
+            for (Viewer viewer : viewers) {
+                count += viewer.verified.get();
+            }
+            if (count == lastCount) {
+                break;
+            }
+            lastCount = count;
+            Thread.sleep(100);
+        }
+        server.close();
+
+        boolean failed = false;
+        for (int i = 0; i < viewerCount; i++) {
+            Viewer viewer = viewers[i];
+            viewer.thread.join();
+            System.out.printf("Viewer %d%s: %d frames verified (%d keyframes), %d mismatches, %d bytes%s%n", i,
+                    viewer.slow ? " (slow)" : "", viewer.verified.get(), viewer.client.getKeyframeCount(),
+                    viewer.mismatches.get(), viewer.client.getBytesReceived(),
+                    viewer.failure != null ? ", failed: " + viewer.failure : "");
+            failed |= viewer.mismatches.get() != 0 || viewer.failure != null;
+        }
+        System.out.printf("Ran %d frames in %.3f s%s; sent %d messages, %d bytes, %d resyncs%n",
+                scheduler.getFrameNumber(), seconds, error != null ? " (halted: " + error + ")" : "",
+                server.getFramesSent(), server.getBytesSent(), server.getResyncCount());
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static final class Viewer implements Runnable {
+        private final StreamClient client;
+        private final Map<Long, Long> expected;
+        private final boolean slow;
+        private final Thread thread;
+        private final AtomicLong verified = new AtomicLong();
+        private final AtomicLong mismatches = new AtomicLong();
+        private volatile String failure;
+
+        Viewer(StreamClient client, Map<Long, Long> expected, boolean slow) {
+            this.client = client;
+            this.expected = expected;
+            this.slow = slow;
+            this.thread = new Thread(this, "stream-viewer");
+        }
+
+        @Override
+        public void run() {
+            try (StreamClient viewer = client) {
+                long last = -1;
+                while (viewer.next()) {
+                    Long hash = expected.get(viewer.getFrameNumber());
+                    // Frames may be skipped after a resync but never repeated or reordered.
+                    if (hash == null || hash != FrameHasher.hash(viewer.getRows()) || viewer.getFrameNumber() <= last) {
+                        mismatches.incrementAndGet();
+                    } else {
+                        verified.incrementAndGet();
+                    }
+                    last = viewer.getFrameNumber();
+                    if (slow) {
+                        Thread.sleep(5);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e.toString();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
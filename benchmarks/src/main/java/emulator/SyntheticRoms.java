@@ -0,0 +1,58 @@
+package emulator;
+
+import util.RomUtil;
+
+import java.io.IOException;
+
+final class SyntheticRoms {
+
+    private SyntheticRoms() {
+    }
+
+    static byte[] load(String name) throws IOException {
+        switch (name) {
+            case "alu":
+                return alu();
+            case "draw":
+                return draw();
+            case "mixed":
+                return mixed();
+            default:
+                return RomUtil.LoadRom(name);
+        }
+    }
+
+    // Register arithmetic in a tight loop: the best case for the block cache and compiler.
+    static byte[] alu() {
+        return words(
+                0x6000, 0x6101, 0x6203,
+                0x7001, 0x8014, 0x8125, 0x8202, 0x8310, 0xA300, 0xF11E, 0x7205,
+                0x1206);
+    }
+
+    // Sprite drawing across the whole screen, including wrapped positions.
+    static byte[] draw() {
+        return words(
+                0x6000, 0x6100, 0x6205,
+                0xF229, 0xD015, 0x7007, 0x7103, 0x7201, 0x630F, 0x8232, 0x00E0,
+                0x1206);
+    }
+
+    // A game-like mix: timer polling, memory writes, skips and subroutine calls.
+    static byte[] mixed() {
+        return words(
+                0x6002, 0xF015,
+                0xF107, 0x3100, 0x1204,
+                0x2216, 0x7201, 0xA300, 0xF233, 0xF265, 0x1202,
+                0xF229, 0xD345, 0x7302, 0x00EE);
+    }
+
+    private static byte[] words(int... opcodes) {
+        byte[] rom = new byte[opcodes.length * 2];
+        for (int i = 0; i < opcodes.length; i++) {
+            rom[i * 2] = (byte) (opcodes[i] >> 8);
+            rom[i * 2 + 1] = (byte) opcodes[i];
+        }
+        return rom;
+    }
+}
@@ -0,0 +1,132 @@
+package emulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Records random programs of every profile with a {@link FrameRecorder}, half of them loops that keep drawing,
+ * scrolling and switching display modes, and reads the recording back with a {@link FrameReader}, checking that
+ * it holds exactly the frames whose display changed, with the frame number and display state of each, mode
+ * word included. Also round-trips a single fresh display, which must read
+ * back in the default mode. Exits with status 1 on any difference. Run with {@code mvn -P checks verify}.
+ */
+public class VideoCheck {
+    private static final int PROGRAMS = 200;
+    private static final int FRAMES = 120;
+
+    public static void main(String[] args) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int programs = args.length > 1 ? Integer.parseInt(args[1]) : PROGRAMS;
+        boolean failed = false;
+
+        ByteArrayOutputStream fresh = new ByteArrayOutputStream();
+        try (FrameRecorder recorder = new FrameRecorder(fresh)) {
+            recorder.frameCompleted(0, new FrameBuffer());
+        }
+        try (FrameReader reader = new FrameReader(new ByteArrayInputStream(fresh.toByteArray()))) {
+            if (!reader.next() || reader.getRows()[FrameBuffer.MODE_WORD] != FrameBuffer.DEFAULT_MODE) {
+                System.out.println("A fresh display didn't read back in the default mode");
+                failed = true;
+            }
+        }
+
+        for (Profile profile : Profile.values()) {
+            Random random = new Random(seed);
+            int recorded = 0;
+            for (int program = 0; program < programs; program++) {
+                byte[] rom = random.nextBoolean() ? drawing(random, profile) : RandomPrograms.program(random, profile);
+                CPU cpu = new CPU(rom, random.nextLong(), profile);
+                Scheduler scheduler = new Scheduler(cpu, CPU.TIMER_FREQUENCY + random.nextInt(3000));
+                List<Long> numbers = new ArrayList<>();
+                List<long[]> states = new ArrayList<>();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (FrameRecorder recorder = new FrameRecorder(bytes)) {
+                    scheduler.setFrameSink((frameNumber, frameBuffer) -> {
+                        long[] state = new long[FrameBuffer.STATE_WORDS];
+                        frameBuffer.copyRows(state);
+                        if (states.isEmpty() || !Arrays.equals(state, states.get(states.size() - 1))) {
+                            numbers.add(frameNumber);
+                            states.add(state);
+                        }
+                        recorder.frameCompleted(frameNumber, frameBuffer);
+                    });
+                    for (int frame = 0; frame < FRAMES; frame++) {
+                        scheduler.runFrame();
+                    }
+                } catch (RuntimeException e) {
+                    // The frames up to the failing instruction are still recorded.
+                }
+
+                String error = null;
+                int frame = 0;
+                try (FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+                    for (; error == null && reader.next(); frame++) {
+                        if (frame >= states.size()) {
+                            error = "extra frame " + reader.getFrameNumber();
+                        } else if (reader.getFrameNumber() != numbers.get(frame)) {
+                            error = "frame " + numbers.get(frame) + " read back as " + reader.getFrameNumber();
+                        } else if (!Arrays.equals(reader.getRows(), states.get(frame))) {
+                            error = "frame " + numbers.get(frame) + " read back with a different display";
+                        }
+                    }
+                }
+                if (error == null && frame != states.size()) {
+                    error = "read " + frame + " of " + states.size() + " frames";
+                }
+                if (error != null) {
+                    System.out.println(String.format("%s program %d: %s", profile, program, error));
+                    failed = true;
+                }
+                recorded += states.size();
+            }
+            System.out.println(String.format("%-8s %d programs, %d frames recorded", profile, programs, recorded));
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A loop of sprite draws at random positions mixed with clears, and for the extended profiles resolution
+     * switches, scrolls and plane selections.
+     */
+    private static byte[] drawing(Random random, Profile profile) {
+        List<Integer> opcodes = new ArrayList<>();
+        for (int length = 8 + random.nextInt(24); length > 0; length--) {
+            int x = random.nextInt(4);
+            switch (random.nextInt(profile == Profile.CHIP8 ? 4 : 6)) {
+                case 0:
+                    opcodes.add(0x6000 | x << 8 | random.nextInt(256));
+                    break;
+                case 1:
+                    opcodes.add(0xA000 | random.nextInt(0x200));
+                    break;
+                case 2:
+                    opcodes.add(0xD000 | x << 8 | random.nextInt(4) << 4 | random.nextInt(16));
+                    break;
+                case 3:
+                    opcodes.add(random.nextInt(8) == 0 ? 0x00E0 : 0x7000 | x << 8 | random.nextInt(256));
+                    break;
+                case 4:
+                    opcodes.add(random.nextBoolean() ? 0x00FF : 0x00FE);
+                    break;
+                default:
+                    int[] extras = {0x00C0 | 1 + random.nextInt(15), 0x00FB, 0x00FC, 0x00D0 | 1 + random.nextInt(15),
+                            0xF001 | random.nextInt(4) << 8};
+                    opcodes.add(extras[random.nextInt(profile == Profile.XO_CHIP ? extras.length : 3)]);
+            }
+        }
+        opcodes.add(0x1200);
+        byte[] rom = new byte[opcodes.size() * 2];
+        for (int i = 0; i < opcodes.size(); i++) {
+            rom[i * 2] = (byte) (opcodes.get(i) >> 8);
+            rom[i * 2 + 1] = (byte) (int) opcodes.get(i);
+        }
+        return rom;
+    }
+}
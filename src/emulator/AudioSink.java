@@ -0,0 +1,11 @@
+package emulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for the PCM produced by {@link Beeper}: signed 16-bit little-endian mono at {@link Beeper#SAMPLE_RATE}.
+ */
+public interface AudioSink extends Closeable {
+    void write(byte[] buffer, int length) throws IOException;
+}
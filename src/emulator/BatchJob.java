@@ -0,0 +1,85 @@
+package emulator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One independent run: a ROM, the input to feed it and how many cycles to execute.
+ * The ROM is held as a read-only buffer, so one array or pack slice can back any number of jobs.
+ */
+public final class BatchJob {
+    private final String name;
+    private final ByteBuffer rom;
+    private final InputScript input;
+    private final long cycleBudget;
+    private final int instructionsPerSecond;
+    private final ExecutionMode executionMode;
+    private final long seed;
+    private final Profile profile;
+
+    public BatchJob(String name, byte[] rom, InputScript input, long cycleBudget) {
+        this(name, ByteBuffer.wrap(rom), input, cycleBudget);
+    }
+
+    public BatchJob(String name, ByteBuffer rom, InputScript input, long cycleBudget) {
+        this(name, rom, input, cycleBudget, CPU.DEFAULT_INSTRUCTIONS_PER_SECOND, ExecutionMode.COMPILED, 0);
+    }
+
+    public BatchJob(String name, byte[] rom, InputScript input, long cycleBudget, int instructionsPerSecond,
+                    ExecutionMode executionMode) {
+        this(name, ByteBuffer.wrap(rom), input, cycleBudget, instructionsPerSecond, executionMode, 0);
+    }
+
+    public BatchJob(String name, ByteBuffer rom, InputScript input, long cycleBudget, int instructionsPerSecond,
+                    ExecutionMode executionMode, long seed) {
+        this(name, rom, input, cycleBudget, instructionsPerSecond, executionMode, seed, Profile.CHIP8);
+    }
+
+    public BatchJob(String name, ByteBuffer rom, InputScript input, long cycleBudget, int instructionsPerSecond,
+                    ExecutionMode executionMode, long seed, Profile profile) {
+        this.name = name;
+        this.rom = rom.asReadOnlyBuffer();
+        this.input = input;
+        this.cycleBudget = cycleBudget;
+        this.instructionsPerSecond = instructionsPerSecond;
+        this.executionMode = executionMode;
+        this.seed = seed;
+        this.profile = profile;
+    }
+
+    public static BatchJob replay(String name, byte[] rom, InputLog log, long cycleBudget) {
+        return new BatchJob(name, ByteBuffer.wrap(rom), log.getScript(), cycleBudget, log.getInstructionsPerSecond(),
+                ExecutionMode.COMPILED, log.getSeed());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ByteBuffer getRom() {
+        return rom.duplicate();
+    }
+
+    public InputScript getInput() {
+        return input;
+    }
+
+    public long getCycleBudget() {
+        return cycleBudget;
+    }
+
+    public int getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+}
@@ -0,0 +1,81 @@
+package emulator;
+
+/**
+ * Final machine state of a {@link BatchJob}. If the run halted, the state is the one at the failing cycle
+ * and {@link #getError()} holds the reason.
+ */
+public final class BatchResult {
+    private final BatchJob job;
+    private final long cycles;
+    private final short PC;
+    private final short I;
+    private final byte DT;
+    private final byte ST;
+    private final byte[] registers;
+    private final byte[] memory;
+    private final long[] frame;
+    private final String error;
+
+    BatchResult(BatchJob job, CPU cpu, String error) {
+        this.job = job;
+        this.cycles = cpu.getCycleNumber();
+        this.PC = cpu.getPC();
+        this.I = cpu.getI();
+        this.DT = cpu.getDT();
+        this.ST = cpu.getST();
+        this.registers = new byte[16];
+        cpu.copyRegisters(registers);
+        this.memory = new byte[cpu.getMemorySize()];
+        cpu.copyMemory(memory);
+        this.frame = new long[FrameBuffer.STATE_WORDS];
+        cpu.getFrameBuffer().copyRows(frame);
+        this.error = error;
+    }
+
+    public BatchJob getJob() {
+        return job;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    public short getPC() {
+        return PC;
+    }
+
+    public short getI() {
+        return I;
+    }
+
+    public byte getDT() {
+        return DT;
+    }
+
+    public byte getST() {
+        return ST;
+    }
+
+    public byte[] getRegisters() {
+        return registers.clone();
+    }
+
+    public byte[] getMemory() {
+        return memory.clone();
+    }
+
+    /**
+     * Final display in the layout of {@link FrameBuffer#copyRows(long[])}.
+     */
+    public long[] getFrame() {
+        return frame.clone();
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,123 @@
+package emulator;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Runs many independent CPU instances on a work-stealing pool, one task per job.
+ */
+public class BatchRunner implements AutoCloseable {
+    private final ForkJoinPool pool;
+
+    public BatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    public static BatchResult run(BatchJob job) {
+        CPU cpu = new CPU(job.getRom(), job.getSeed(), job.getProfile());
+        cpu.setInstructionsPerSecond(job.getInstructionsPerSecond());
+        cpu.setExecutionMode(job.getExecutionMode());
+        String error = null;
+        try {
+            job.getInput().run(cpu, job.getCycleBudget());
+        } catch (RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        return new BatchResult(job, cpu, error);
+    }
+
+    public List<BatchResult> runAll(List<BatchJob> jobs) throws InterruptedException {
+        return runAll(jobs, BatchRunner::run);
+    }
+
+    /**
+     * Applies the task to every job on the pool and returns the results in job order.
+     */
+    public <T> List<T> runAll(List<BatchJob> jobs, Function<BatchJob, T> task) throws InterruptedException {
+        List<Callable<T>> tasks = new ArrayList<>(jobs.size());
+        for (BatchJob job : jobs) {
+            tasks.add(() -> task.apply(job));
+        }
+        List<T> results = new ArrayList<>(jobs.size());
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch job failed outside the emulator", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: BatchRunner <rom>... [--pack=<file>] [--runs=N] [--cycles=N] [--threads=N] [--seed=N]");
+            System.exit(2);
+        }
+        int runs = 1000;
+        long cycles = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 0;
+        List<String> roms = new ArrayList<>();
+        RomCatalog catalog = new RomCatalog();
+        for (String arg : args) {
+            if (arg.startsWith("--pack=")) {
+                RomPack pack = RomPack.open(Paths.get(arg.substring("--pack=".length())));
+                catalog.addPack(pack);
+                for (RomEntry entry : pack.getEntries()) {
+                    roms.add(entry.getName());
+                }
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring("--runs=".length()));
+            } else if (arg.startsWith("--cycles=")) {
+                cycles = Long.parseLong(arg.substring("--cycles=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else {
+                roms.add(arg);
+            }
+        }
+
+        // Job i runs with seed + i, so repeated runs of a ROM see different random numbers.
+        List<BatchJob> jobs = new ArrayList<>();
+        for (String rom : roms) {
+            ByteBuffer romData = catalog.load(rom);
+            for (int i = 0; i < runs; i++) {
+                jobs.add(new BatchJob(rom, romData, InputScript.EMPTY, cycles, CPU.DEFAULT_INSTRUCTIONS_PER_SECOND,
+                        ExecutionMode.COMPILED, seed + jobs.size(), Profile.forFileName(rom)));
+            }
+        }
+
+        long start = System.nanoTime();
+        List<BatchResult> results;
+        try (BatchRunner runner = new BatchRunner(threads)) {
+            results = runner.runAll(jobs);
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        long failed = results.stream().filter(BatchResult::isFailed).count();
+        long totalCycles = results.stream().mapToLong(BatchResult::getCycles).sum();
+        System.out.println("Completed " + results.size() + " runs (" + failed + " failed) on " + threads +
+                " threads in " + String.format("%.3f", seconds) + " s");
+        System.out.println(String.format("%.0f", results.size() / seconds) + " runs/s, " +
+                String.format("%.0f", totalCycles / seconds) + " instructions/s");
+    }
+}
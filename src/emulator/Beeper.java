@@ -0,0 +1,93 @@
+package emulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Synthesizes the sound timer as PCM, one 60 Hz frame at a time, into a preallocated buffer. The tone is a
+ * 1-bit pattern played at a configurable bit rate, which covers the plain beeper and leaves room for
+ * XO-CHIP pattern audio. The oscillator phase runs on across frames and the level ramps over a couple of
+ * milliseconds, so tones start and stop without clicks.
+ */
+public class Beeper {
+    public static final int SAMPLE_RATE = 44100;
+    public static final int BYTES_PER_SAMPLE = 2;
+    private static final int PATTERN_BITS = 128;
+    private static final int AMPLITUDE = 8000;
+    private static final int RAMP_SAMPLES = SAMPLE_RATE / 500;
+    private static final byte[] SQUARE_PATTERN = {
+            (byte) 0xFF, 0x00, (byte) 0xFF, 0x00, (byte) 0xFF, 0x00, (byte) 0xFF, 0x00,
+            (byte) 0xFF, 0x00, (byte) 0xFF, 0x00, (byte) 0xFF, 0x00, (byte) 0xFF, 0x00
+    };
+    private static final int SQUARE_BIT_RATE = 16 * 440;
+
+    private final AudioSink sink;
+    private final byte[] buffer = new byte[(SAMPLE_RATE / Scheduler.FRAME_RATE + 1) * BYTES_PER_SAMPLE];
+    private final byte[] pattern = new byte[PATTERN_BITS / 8];
+    private long phaseStep;
+    private long phase;
+    private int level;
+    private int sampleRemainder;
+    private long samplesWritten;
+
+    public Beeper(AudioSink sink) {
+        this.sink = sink;
+        setPattern(SQUARE_PATTERN, SQUARE_BIT_RATE);
+    }
+
+    /**
+     * Sets the 128-bit pattern and the rate in bits per second at which it is played.
+     */
+    public void setPattern(byte[] bits, int bitRate) {
+        System.arraycopy(bits, 0, pattern, 0, pattern.length);
+        phaseStep = ((long) bitRate << 32) / SAMPLE_RATE;
+    }
+
+    /**
+     * Renders one frame: a tone when the sound timer is running at the end of the frame or was started
+     * during it, silence otherwise.
+     */
+    public void renderFrame(CPU cpu) {
+        if (cpu.takeAudioChanged()) {
+            setPattern(cpu.getAudioPattern(), cpu.getAudioBitRate());
+        }
+        boolean on = cpu.getST() != 0 | cpu.takeSoundTriggered();
+        int samples = SAMPLE_RATE / Scheduler.FRAME_RATE;
+        sampleRemainder += SAMPLE_RATE % Scheduler.FRAME_RATE;
+        if (sampleRemainder >= Scheduler.FRAME_RATE) {
+            sampleRemainder -= Scheduler.FRAME_RATE;
+            samples++;
+        }
+        int target = on ? AMPLITUDE : 0;
+        int rampStep = AMPLITUDE / RAMP_SAMPLES;
+        for (int i = 0; i < samples; i++) {
+            if (level < target) {
+                level = Math.min(target, level + rampStep);
+            } else if (level > target) {
+                level = Math.max(target, level - rampStep);
+            }
+            int sample = 0;
+            if (level != 0) {
+                int bit = (int) (phase >>> 32) & (PATTERN_BITS - 1);
+                sample = (pattern[bit >> 3] << (bit & 7) & 0x80) != 0 ? level : -level;
+                phase += phaseStep;
+            }
+            buffer[i * 2] = (byte) sample;
+            buffer[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        samplesWritten += samples;
+        try {
+            sink.write(buffer, samples * BYTES_PER_SAMPLE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write audio", e);
+        }
+    }
+
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    public AudioSink getSink() {
+        return sink;
+    }
+}
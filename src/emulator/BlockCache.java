@@ -0,0 +1,140 @@
+package emulator;
+
+import util.CpuUtil;
+
+/**
+ * Caches straight-line basic blocks decoded from memory, keyed by their start address.
+ * A block runs until the first instruction that may change control flow or write memory,
+ * so every decoded entry after the first is known to execute once the block is entered.
+ * A block is verified when the ROM analysis proved every instruction in it.
+ */
+final class BlockCache {
+    static final int MAX_BLOCK_LENGTH = 32;
+
+    private final byte[] mem;
+    private final int[] decodeTable;
+    private final RomAnalysis analysis;
+    private final Block[] blocks;
+    private final short[] coverage;
+
+    BlockCache(byte[] mem, int[] decodeTable, RomAnalysis analysis) {
+        this.mem = mem;
+        this.decodeTable = decodeTable;
+        this.analysis = analysis;
+        this.blocks = new Block[mem.length];
+        this.coverage = new short[mem.length];
+    }
+
+    Block lookup(int pc) {
+        Block block = blocks[pc];
+        if (block == null) {
+            block = build(pc);
+            if (block != null) {
+                blocks[pc] = block;
+                cover(block, 1);
+            }
+        }
+        return block;
+    }
+
+    void invalidate(int address) {
+        if (coverage[address] == 0) {
+            return;
+        }
+        int from = Math.max(0, address - MAX_BLOCK_LENGTH * 2 + 1);
+        for (int start = from; start <= address; start++) {
+            Block block = blocks[start];
+            if (block != null && block.coverEnd > address) {
+                blocks[start] = null;
+                cover(block, -1);
+            }
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = null;
+            coverage[i] = 0;
+        }
+    }
+
+    private Block build(int pc) {
+        int[] ops = new int[MAX_BLOCK_LENGTH];
+        int length = 0;
+        int address = pc;
+        boolean verified = true;
+        while (length < MAX_BLOCK_LENGTH && address + 1 < mem.length) {
+            int op = decodeTable[CpuUtil.shortFromBytes(mem[address], mem[address + 1]) & 0xFFFF];
+            ops[length++] = op;
+            verified &= analysis != null && analysis.isProven(address);
+            address += 2;
+            if (endsBlock(Decoder.handler(op))) {
+                break;
+            }
+        }
+        if (length == 0) {
+            return null;
+        }
+        int[] trimmed = new int[length];
+        System.arraycopy(ops, 0, trimmed, 0, length);
+        int idleLoop = IdleLoop.detect(mem, pc, decodeTable);
+        return new Block(pc, address, trimmed, idleLoop, Math.max(address, pc + IdleLoop.length(idleLoop)), verified);
+    }
+
+    private void cover(Block block, int delta) {
+        for (int address = block.start; address < block.coverEnd; address++) {
+            coverage[address] += delta;
+        }
+    }
+
+    private static boolean endsBlock(int handler) {
+        switch (handler) {
+            case Decoder.RET:
+            case Decoder.JMP:
+            case Decoder.CALL:
+            case Decoder.SE_N:
+            case Decoder.SNE_N:
+            case Decoder.SNE_R:
+            case Decoder.SKP:
+            case Decoder.SKNP:
+            case Decoder.LDK:
+            case Decoder.LDB:
+            case Decoder.STR:
+            case Decoder.UNKNOWN:
+            case Decoder.EXIT:
+            case Decoder.SE_R:
+            case Decoder.SAVE_RANGE:
+            case Decoder.SNE_RR:
+            case Decoder.JMP_V:
+            case Decoder.SKP_M:
+            case Decoder.SKNP_M:
+            case Decoder.LDB_U:
+            case Decoder.STR_M:
+            case Decoder.LDI_LONG:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static final class Block {
+        final int start;
+        final int end;
+        final int[] ops;
+        final int idleLoop;
+        final int coverEnd;
+        final boolean verified;
+        int hits;
+        CompiledBlock compiled;
+        int compiledLength;
+
+        Block(int start, int end, int[] ops, int idleLoop, int coverEnd, boolean verified) {
+            this.start = start;
+            this.end = end;
+            this.ops = ops;
+            this.idleLoop = idleLoop;
+            this.coverEnd = coverEnd;
+            this.verified = verified;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Translates the register-only prefix of a hot block into a hidden class implementing {@link CompiledBlock}.
+ * V0-VF live in JVM locals for the duration of the block and are read from and written back to the
+ * register array only at entry and exit, so HotSpot can compile the whole block as straight-line code.
+ * Instructions touching timers, memory, the display, input or control flow are left to the interpreter.
+ * Generated classes hold no state, so identical blocks share one class across all CPU instances.
+ */
+final class BlockCompiler {
+    static final int HOTNESS_THRESHOLD = 1000;
+
+    private static final int I_LOCAL = 2;
+    private static final int FIRST_REG_LOCAL = 3;
+
+    private static final int ALOAD_0 = 0x2A;
+    private static final int ALOAD_1 = 0x2B;
+    private static final int ICONST_1 = 0x04;
+    private static final int ICONST_5 = 0x08;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ILOAD = 0x15;
+    private static final int ISTORE = 0x36;
+    private static final int BALOAD = 0x33;
+    private static final int BASTORE = 0x54;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IREM = 0x70;
+    private static final int IUSHR = 0x7C;
+    private static final int IAND = 0x7E;
+    private static final int IXOR = 0x82;
+    private static final int I2B = 0x91;
+    private static final int I2S = 0x93;
+    private static final int IRETURN = 0xAC;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKESPECIAL = 0xB7;
+
+    private static final int MAX_SHARED_BLOCKS = 4096;
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final ConcurrentHashMap<Key, CompiledBlock> shared = new ConcurrentHashMap<>();
+
+    private BlockCompiler() {
+    }
+
+    static void compile(BlockCache.Block block) {
+        int length = compilablePrefix(block.ops);
+        if (length == 0) {
+            return;
+        }
+        Key key = new Key(Arrays.copyOf(block.ops, length));
+        CompiledBlock compiled = shared.get(key);
+        if (compiled == null) {
+            compiled = define(key.ops);
+            if (compiled == null) {
+                return;
+            }
+            if (shared.size() < MAX_SHARED_BLOCKS) {
+                CompiledBlock existing = shared.putIfAbsent(key, compiled);
+                if (existing != null) {
+                    compiled = existing;
+                }
+            }
+        }
+        block.compiled = compiled;
+        block.compiledLength = length;
+    }
+
+    /**
+     * Defines the hidden class for a block, or returns null when the runtime refuses to define or construct it,
+     * which leaves the block to the interpreter. A class file the JVM rejects is a bug in this compiler, so
+     * those errors propagate.
+     */
+    private static CompiledBlock define(int[] ops) {
+        try {
+            Class<?> hidden = lookup.defineHiddenClass(classFile(ops, ops.length), true).lookupClass();
+            return (CompiledBlock) hidden.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write class file", e);
+        }
+    }
+
+    static int compilablePrefix(int[] ops) {
+        int length = 0;
+        while (length < ops.length && isCompilable(Decoder.handler(ops[length]))) {
+            length++;
+        }
+        return length;
+    }
+
+    private static boolean isCompilable(int handler) {
+        switch (handler) {
+            case Decoder.LD_N:
+            case Decoder.ADD_N:
+            case Decoder.LD_R:
+            case Decoder.AND:
+            case Decoder.ADD:
+            case Decoder.SUB_R:
+            case Decoder.LDI:
+            case Decoder.ADD_I:
+            case Decoder.LDF:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static byte[] classFile(int[] ops, int length) throws IOException {
+        boolean[] used = new boolean[16];
+        boolean[] written = new boolean[16];
+        Code run = new Code();
+        for (int i = 0; i < length; i++) {
+            emit(run, ops[i], used, written);
+        }
+
+        Code body = new Code();
+        for (int r = 0; r < 16; r++) {
+            if (used[r]) {
+                body.op(ALOAD_1).op(BIPUSH).u1(r).op(BALOAD).op(ISTORE).u1(FIRST_REG_LOCAL + r);
+            }
+        }
+        body.append(run);
+        for (int r = 0; r < 16; r++) {
+            if (written[r]) {
+                body.op(ALOAD_1).op(BIPUSH).u1(r).op(ILOAD).u1(FIRST_REG_LOCAL + r).op(BASTORE);
+            }
+        }
+        body.op(ILOAD).u1(I_LOCAL).op(IRETURN);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+
+        out.writeShort(14);
+        utf8(out, "emulator/CompiledBlock$Impl"); // 1
+        classRef(out, 1);                        // 2
+        utf8(out, "java/lang/Object");           // 3
+        classRef(out, 3);                        // 4
+        utf8(out, "emulator/CompiledBlock");     // 5
+        classRef(out, 5);                        // 6
+        utf8(out, "<init>");                     // 7
+        utf8(out, "()V");                        // 8
+        out.writeByte(12);                       // 9: NameAndType <init>()V
+        out.writeShort(7);
+        out.writeShort(8);
+        out.writeByte(10);                       // 10: Methodref Object.<init>
+        out.writeShort(4);
+        out.writeShort(9);
+        utf8(out, "run");                        // 11
+        utf8(out, "([BI)I");                     // 12
+        utf8(out, "Code");                       // 13
+
+        out.writeShort(0x0030);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(1);
+        out.writeShort(6);
+        out.writeShort(0);
+
+        out.writeShort(2);
+        Code init = new Code().op(ALOAD_0).op(INVOKESPECIAL).u2(10).op(RETURN);
+        method(out, 7, 8, 1, 1, init);
+        method(out, 11, 12, 4, FIRST_REG_LOCAL + 16, body);
+
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void emit(Code code, int op, boolean[] used, boolean[] written) {
+        int x = FIRST_REG_LOCAL + Decoder.x(op);
+        int y = FIRST_REG_LOCAL + Decoder.y(op);
+        int vf = FIRST_REG_LOCAL + 0xF;
+        switch (Decoder.handler(op)) {
+            //6XNN
+            case Decoder.LD_N:
+                code.op(BIPUSH).u1(Decoder.nn(op)).op(ISTORE).u1(x);
+                written[Decoder.x(op)] = true;
+                break;
+            //7XNN
+            case Decoder.ADD_N:
+                code.op(ILOAD).u1(x).op(BIPUSH).u1(Decoder.nn(op)).op(IADD)
+                        .op(SIPUSH).u2(256).op(IREM).op(I2B).op(ISTORE).u1(x);
+                used[Decoder.x(op)] = true;
+                written[Decoder.x(op)] = true;
+                break;
+            //8XY0
+            case Decoder.LD_R:
+                code.op(ILOAD).u1(y).op(ISTORE).u1(x);
+                used[Decoder.y(op)] = true;
+                written[Decoder.x(op)] = true;
+                break;
+            //8XY2
+            case Decoder.AND:
+                code.op(ILOAD).u1(x).op(ILOAD).u1(y).op(IAND).op(I2B).op(ISTORE).u1(x);
+                used[Decoder.x(op)] = true;
+                used[Decoder.y(op)] = true;
+                written[Decoder.x(op)] = true;
+                break;
+            //8XY4: VF = (VX + VY > 255) ? 1 : 0, computed as the sign bit of 255 - (VX + VY)
+            case Decoder.ADD:
+                code.op(SIPUSH).u2(255).op(ILOAD).u1(x).op(ILOAD).u1(y).op(IADD).op(ISUB)
+                        .op(BIPUSH).u1(31).op(IUSHR).op(ISTORE).u1(vf);
+                code.op(ILOAD).u1(x).op(ILOAD).u1(y).op(SIPUSH).u2(255).op(IREM).op(IADD).op(I2B).op(ISTORE).u1(x);
+                used[Decoder.x(op)] = true;
+                used[Decoder.y(op)] = true;
+                written[Decoder.x(op)] = true;
+                written[0xF] = true;
+                break;
+            //8XY5: VF = (VX < VY) ? 0 : 1, computed as the inverted sign bit of VX - VY
+            case Decoder.SUB_R:
+                code.op(ILOAD).u1(x).op(ILOAD).u1(y).op(ISUB).op(BIPUSH).u1(31).op(IUSHR)
+                        .op(ICONST_1).op(IXOR).op(ISTORE).u1(vf);
+                code.op(ILOAD).u1(x).op(ILOAD).u1(y).op(ISUB).op(I2B).op(ISTORE).u1(x);
+                used[Decoder.x(op)] = true;
+                used[Decoder.y(op)] = true;
+                written[Decoder.x(op)] = true;
+                written[0xF] = true;
+                break;
+            //ANNN
+            case Decoder.LDI:
+                code.op(SIPUSH).u2(Decoder.nnn(op)).op(ISTORE).u1(I_LOCAL);
+                break;
+            //FX1E
+            case Decoder.ADD_I:
+                code.op(ILOAD).u1(I_LOCAL).op(ILOAD).u1(x).op(IADD).op(I2S).op(ISTORE).u1(I_LOCAL);
+                used[Decoder.x(op)] = true;
+                break;
+            //FX29
+            case Decoder.LDF:
+                code.op(ILOAD).u1(x).op(ICONST_5).op(IMUL).op(I2S).op(ISTORE).u1(I_LOCAL);
+                used[Decoder.x(op)] = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Opcode " + String.format("%04X", Decoder.opcode(op)) + " is not compilable");
+        }
+    }
+
+    private static void method(DataOutputStream out, int name, int descriptor, int maxStack, int maxLocals,
+                               Code code) throws IOException {
+        out.writeShort(0x0001);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(13);
+        out.writeInt(12 + code.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.size());
+        code.writeTo(out);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void classRef(DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(7);
+        out.writeShort(nameIndex);
+    }
+
+    private static final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Code append(Code other) {
+            byte[] content = other.bytes.toByteArray();
+            bytes.write(content, 0, content.length);
+            return this;
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            bytes.writeTo(out);
+        }
+    }
+
+    private static final class Key {
+        private final int[] ops;
+        private final int hash;
+
+        Key(int[] ops) {
+            this.ops = ops;
+            this.hash = Arrays.hashCode(ops);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(ops, ((Key) other).ops);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
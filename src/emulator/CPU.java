@@ -1,209 +1,557 @@
 package emulator;
 
-
-import javafx.scene.input.KeyCode;
 import util.CpuUtil;
 
-import java.util.HashMap;
-import java.util.Random;
-import java.util.Stack;
-import java.util.stream.IntStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+public class CPU implements Keypad {
+    public static final int TIMER_FREQUENCY = 60;
+    public static final int DEFAULT_INSTRUCTIONS_PER_SECOND = 600;
+    private static final byte DEFAULT_PITCH = 64;
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    static final int STACK_DEPTH = 16;
+    static final int BIG_FONT_ADDRESS = 0x50;
+    private static final int STATE_HEADER_SIZE = 8 + 8 + 2 + 2 + 1 + 1 + 4 + 4 + 1 + 1 + 2 + 1 + STACK_DEPTH * 2 + 16
+            + FrameBuffer.STATE_WORDS * 8 + 16 + 16 + 1;
 
-public class CPU {
     private long cycleNumber;
     private short PC;
-    private final Stack<Short> STACK;
+    private final short[] stack = new short[STACK_DEPTH];
+    private int sp;
     private short I;
     private byte DT = 0x0;
     private byte ST = 0x0;
-    private final double timerRefreshRate = 1000000000.0 / 60;
-    private long timerTickTime = 0;
+    private int instructionsPerSecond = DEFAULT_INSTRUCTIONS_PER_SECOND;
+    private int timerPhase = 0;
     private final byte[] reg = new byte[16];
-    private final byte[] mem = new byte[4096];
-    private int[][] vMem = new int[64][32];
+    private final Profile profile;
+    private final int[] decodeTable;
+    private final byte[] mem;
+    private final byte[] flags = new byte[16];
+    private final byte[] audioPattern = new byte[16];
+    private byte pitch = DEFAULT_PITCH;
+    private boolean audioChanged;
+    private final long[] stateRows = new long[FrameBuffer.STATE_WORDS];
+    private final byte[][] pages;
+    private final long[] dirtyPages;
+    private final FrameBuffer frameBuffer = new FrameBuffer();
     private boolean drawFlag;
-    private final Random random = new Random();
-    private HashMap<KeyCode, Integer> buttonMap;
+    private boolean soundTriggered;
+    private final long seed;
+    private final SeededRandom random;
     private boolean[] buttonStatus;
     private boolean waitingForKey;
     private byte waitingForKeyReg;
+    private TraceRecorder traceRecorder;
+    private Metrics metrics;
+    private Coverage coverage;
+    private ExecutionMode executionMode = ExecutionMode.INTERPRETER;
+    private BlockCache blockCache;
+    private RomAnalysis analysis;
+    private boolean proven;
 
     public CPU(byte[] romData) {
-        System.arraycopy(romData, 0, mem, 0x200, romData.length);
+        this(romData, ThreadLocalRandom.current().nextLong());
+    }
+
+    public CPU(byte[] romData, long seed) {
+        this(ByteBuffer.wrap(romData), seed);
+    }
+
+    public CPU(byte[] romData, long seed, Profile profile) {
+        this(ByteBuffer.wrap(romData), seed, profile);
+    }
+
+    public CPU(ByteBuffer romData, long seed) {
+        this(romData, seed, Profile.CHIP8);
+    }
+
+    public CPU(ByteBuffer romData, long seed, Profile profile) {
+        this.seed = seed;
+        this.random = new SeededRandom(seed);
+        this.profile = profile;
+        this.decodeTable = Decoder.table(profile);
+        this.mem = new byte[profile.getMemorySize()];
+        this.pages = new byte[mem.length / PAGE_SIZE][];
+        this.dirtyPages = new long[(pages.length + 63) / 64];
+        if (romData.remaining() > mem.length - 0x200) {
+            throw new IllegalArgumentException("ROM of " + romData.remaining() + " bytes does not fit in "
+                    + mem.length + " bytes of memory");
+        }
+        romData.get(romData.position(), mem, 0x200, romData.remaining());
         initializeFont();
         PC = 0x200;
         I = 0;
-        STACK = new Stack<>();
         cycleNumber = 0;
         drawFlag = false;
         initializeButtons();
+        Arrays.fill(dirtyPages, -1L);
     }
 
     private void initializeButtons() {
-        buttonMap = new HashMap<>();
-        buttonMap.put(KeyCode.DIGIT1, 0x1);
-        buttonMap.put(KeyCode.DIGIT2, 0x2);
-        buttonMap.put(KeyCode.DIGIT3, 0x3);
-        buttonMap.put(KeyCode.DIGIT4, 0xC);
-        buttonMap.put(KeyCode.Q, 0x4);
-        buttonMap.put(KeyCode.W, 0x5);
-        buttonMap.put(KeyCode.E, 0x6);
-        buttonMap.put(KeyCode.R, 0xD);
-        buttonMap.put(KeyCode.A, 0x7);
-        buttonMap.put(KeyCode.S, 0x8);
-        buttonMap.put(KeyCode.D, 0x9);
-        buttonMap.put(KeyCode.F, 0xE);
-        buttonMap.put(KeyCode.Z, 0xA);
-        buttonMap.put(KeyCode.X, 0x0);
-        buttonMap.put(KeyCode.C, 0xB);
-        buttonMap.put(KeyCode.V, 0xF);
-        buttonStatus = new boolean[buttonMap.size()];
+        buttonStatus = new boolean[KEY_COUNT];
         waitingForKey = false;
         waitingForKeyReg = 0x0;
     }
 
-    void executeCycle() throws RuntimeException {
-        cycleNumber++;
-        if (System.nanoTime() > timerTickTime + timerRefreshRate) {
-            DT = (byte) (Math.max(0, --DT));
-            ST = (byte) (Math.max(0, --ST));
-            timerTickTime = System.nanoTime();
+    public long runCycles(long cycles) throws RuntimeException {
+        long remaining = cycles;
+        while (remaining > 0) {
+            remaining -= step(remaining);
+        }
+        return cycles;
+    }
+
+    public long runUntil(Predicate<CPU> condition) throws RuntimeException {
+        long executed = 0;
+        while (!condition.test(this)) {
+            executeCycle();
+            executed++;
+        }
+        return executed;
+    }
+
+    private long step(long budget) {
+        if (waitingForKey && blockCache != null && traceRecorder == null) {
+            return idle(budget);
+        }
+        if (blockCache == null || waitingForKey || traceRecorder != null || PC < 0 || PC + 1 >= mem.length) {
+            executeCycle();
+            return 1;
+        }
+        BlockCache.Block block = blockCache.lookup(PC);
+        if (block == null) {
+            executeCycle();
+            return 1;
+        }
+        if (coverage != null) {
+            coverage.enter(PC, (int) Math.min(block.ops.length, budget));
+        }
+        if (block.idleLoop != IdleLoop.NONE) {
+            long skipped = skipIdleLoop(block, budget);
+            if (skipped > 0) {
+                return skipped;
+            }
+        }
+        int[] ops = block.ops;
+        int count = (int) Math.min(ops.length, budget);
+        int first = 0;
+        if (metrics != null) {
+            metrics.countBlock(ops, PC, count);
+        }
+        if (block.compiled != null && block.compiledLength <= count) {
+            I = (short) block.compiled.run(reg, I);
+            first = block.compiledLength;
+            cycleNumber += first;
+            PC += 2 * first;
+            advanceTimers(first);
+        } else if (executionMode == ExecutionMode.COMPILED && ++block.hits == BlockCompiler.HOTNESS_THRESHOLD) {
+            BlockCompiler.compile(block);
+        }
+        if (proven && block.verified) {
+            for (int i = first; i < count; i++) {
+                cycleNumber++;
+                updateTimers();
+                executeVerified(ops[i]);
+            }
+        } else {
+            for (int i = first; i < count; i++) {
+                cycleNumber++;
+                updateTimers();
+                execute(ops[i]);
+            }
         }
+        return count;
+    }
+
+    public void executeCycle() throws RuntimeException {
+        cycleNumber++;
+        updateTimers();
         if (waitingForKey) {
             return;
         }
         if (PC + 1 >= mem.length) {
             throw new RuntimeException("PC outside memory range");
         }
-        short opcodeShort = CpuUtil.shortFromBytes(mem[PC], mem[PC + 1]);
-        System.out.println("Current opcode is " + String.format("%04X", opcodeShort) + " (cycle " + cycleNumber + ")");
-        byte[] opcodeNibbles = CpuUtil.nibblesFromShort(opcodeShort);
-
-        switch (opcodeNibbles[0]) {
-            case 0x0:
-                switch (CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3])) {
-                    case (byte) 0xE0:
-                        CLS();
-                        break;
-                    case (byte) 0xEE:
-                        RET();
-                        break;
-                    default:
-                        unknownOpcode(opcodeShort);
+        int op = decodeTable[CpuUtil.shortFromBytes(mem[PC], mem[PC + 1]) & 0xFFFF];
+        if (metrics != null) {
+            metrics.count(op, PC);
+        }
+        if (coverage != null) {
+            coverage.enter(PC, 1);
+        }
+        if (traceRecorder != null) {
+            executeTraced(op);
+        } else {
+            execute(op);
+        }
+    }
+
+    private void executeTraced(int op) {
+        short pc = PC;
+        byte x = Decoder.x(op);
+        try {
+            execute(op);
+        } catch (RuntimeException e) {
+            traceRecorder.record(cycleNumber, pc, Decoder.opcode(op), x, reg[x], reg[0xF], TraceRecorder.FAULT);
+            throw e;
+        }
+        traceRecorder.record(cycleNumber, pc, Decoder.opcode(op), x, reg[x], reg[0xF], (byte) 0);
+    }
+
+    /**
+     * Fast-forwards over whole iterations of a detected wait loop, leaving the same state as running them would.
+     * Returns 0 if the loop would exit within its next iteration.
+     */
+    private long skipIdleLoop(BlockCache.Block block, long budget) {
+        int first = block.ops[0];
+        switch (block.idleLoop) {
+            case IdleLoop.SELF_JUMP:
+                return idle(budget);
+            case IdleLoop.KEY_WAIT: {
+                int handler = Decoder.handler(first);
+                int key = reg[Decoder.x(first)];
+                if (handler == Decoder.SKP_M || handler == Decoder.SKNP_M) {
+                    key &= 0xF;
                 }
-                break;
-            case 0x1:
-                JMP(CpuUtil.addressFromNibbles(opcodeNibbles[1], opcodeNibbles[2], opcodeNibbles[3]));
-                break;
-            case 0x2:
-                CALL(CpuUtil.addressFromNibbles(opcodeNibbles[1], opcodeNibbles[2], opcodeNibbles[3]));
-                break;
-            case 0x3:
-                SE_N(opcodeNibbles[1], CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3]));
-                break;
-            case 0x4:
-                SNE_N(opcodeNibbles[1], CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3]));
-                break;
-            case 0x6:
-                LD_N(opcodeNibbles[1], CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3]));
-                break;
-            case 0x7:
-                ADD_N(opcodeNibbles[1], CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3]));
-                break;
-            case 0x8:
-                switch (opcodeNibbles[3]) {
-                    case 0x0:
-                        LD_R(opcodeNibbles[1], opcodeNibbles[2]);
-                        break;
-                    case 0x2:
-                        AND(opcodeNibbles[1], opcodeNibbles[2]);
-                        break;
-                    case 0x4:
-                        ADD(opcodeNibbles[1], opcodeNibbles[2]);
-                        break;
-                    case 0x5:
-                        SUB_R(opcodeNibbles[1], opcodeNibbles[2]);
-                        break;
-                    default:
-                        unknownOpcode(opcodeShort);
+                if (key < 0 || key >= KEY_COUNT || buttonStatus[key] == IdleLoop.skipsIfPressed(handler)) {
+                    return 0;
                 }
+                return budget >= 2 ? idle(budget - budget % 2) : 0;
+            }
+            case IdleLoop.TIMER_WAIT:
+                return skipTimerWait(Decoder.x(first), IdleLoop.opAt(mem, PC + 2, decodeTable), budget);
+            default:
+                return 0;
+        }
+    }
+
+    private long idle(long cycles) {
+        cycleNumber += cycles;
+        advanceTimers(cycles);
+        if (metrics != null) {
+            metrics.idleSkipped(cycles);
+        }
+        return cycles;
+    }
+
+    /**
+     * Skips iterations of FX07 / 3XNN or 4XNN / 1NNN. The delay timer only changes on ticks, so the first tick
+     * whose value would end the loop bounds how many iterations can be skipped; everything else follows from
+     * the timer phase in closed form.
+     */
+    private long skipTimerWait(byte x, int compare, long budget) {
+        byte nn = Decoder.nn(compare);
+        boolean exitIfEqual = Decoder.handler(compare) == Decoder.SE_N;
+        long phase = timerPhase;
+        long iterations = budget / 3;
+        long maxTicks = (phase + TIMER_FREQUENCY * budget) / instructionsPerSecond;
+        for (long k = 0; k <= maxTicks; k++) {
+            byte value = tick(DT, k);
+            if ((value == nn) == exitIfEqual) {
+                long before = k * instructionsPerSecond - phase - TIMER_FREQUENCY;
+                iterations = Math.min(iterations, before <= 0 ? 0 : (before + 3 * TIMER_FREQUENCY - 1) / (3 * TIMER_FREQUENCY));
                 break;
-            case 0x9:
-                SNE_R(opcodeNibbles[1], opcodeNibbles[2]);
+            }
+            if (value == 0) {
                 break;
-            case 0xA:
-                LDI(CpuUtil.addressFromNibbles(opcodeNibbles[1], opcodeNibbles[2], opcodeNibbles[3]));
+            }
+        }
+        if (iterations == 0) {
+            return 0;
+        }
+        long cycles = 3 * iterations;
+        long lastRead = (phase + TIMER_FREQUENCY * (cycles - 2)) / instructionsPerSecond;
+        long ticks = (phase + TIMER_FREQUENCY * cycles) / instructionsPerSecond;
+        reg[x] = tick(DT, lastRead);
+        DT = tick(DT, ticks);
+        ST = tick(ST, ticks);
+        timerPhase = (int) ((phase + TIMER_FREQUENCY * cycles) % instructionsPerSecond);
+        cycleNumber += cycles;
+        if (metrics != null) {
+            metrics.idleSkipped(cycles);
+        }
+        return cycles;
+    }
+
+    /**
+     * Value of a timer after the given number of ticks, matching repeated calls to tickTimers().
+     */
+    private static byte tick(byte timer, long ticks) {
+        if (ticks == 0 || timer == 0) {
+            return timer;
+        }
+        if (timer < 0) {
+            timer = timer == Byte.MIN_VALUE ? Byte.MAX_VALUE : 0;
+            ticks--;
+        }
+        return (byte) Math.max(0, timer - ticks);
+    }
+
+    private void updateTimers() {
+        timerPhase += TIMER_FREQUENCY;
+        if (timerPhase >= instructionsPerSecond) {
+            timerPhase -= instructionsPerSecond;
+            tickTimers();
+        }
+    }
+
+    private void advanceTimers(long cycles) {
+        long phase = timerPhase + TIMER_FREQUENCY * cycles;
+        long ticks = phase / instructionsPerSecond;
+        timerPhase = (int) (phase % instructionsPerSecond);
+        for (long i = 0; i < ticks && (DT != 0 || ST != 0); i++) {
+            tickTimers();
+        }
+    }
+
+    private void tickTimers() {
+        DT = (byte) (Math.max(0, --DT));
+        ST = (byte) (Math.max(0, --ST));
+    }
+
+    private void execute(int op) {
+        switch (Decoder.handler(op)) {
+            case Decoder.CLS:
+                CLS();
                 break;
-            case 0xC:
-                RND(opcodeNibbles[1], CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3]));
+            case Decoder.RET:
+                RET();
                 break;
-            case 0xD:
-                DRW(opcodeNibbles[1], opcodeNibbles[2], opcodeNibbles[3]);
+            case Decoder.JMP:
+                JMP(Decoder.nnn(op));
                 break;
-            case 0xE:
-                switch (CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3])) {
-                    case (byte) 0x9E:
-                        SKP(opcodeNibbles[1]);
-                        break;
-                    case (byte) 0xA1:
-                        SKNP(opcodeNibbles[1]);
-                        break;
-                    default:
-                        unknownOpcode(opcodeShort);
-                }
+            case Decoder.CALL:
+                CALL(Decoder.nnn(op));
                 break;
-            case 0xF:
-                switch (CpuUtil.byteFromNibbles(opcodeNibbles[2], opcodeNibbles[3])) {
-                    case 0x07:
-                        LDRDT(opcodeNibbles[1]);
-                        break;
-                    case 0x0A:
-                        LDK(opcodeNibbles[1]);
-                        break;
-                    case 0x15:
-                        LDDT(opcodeNibbles[1]);
-                        break;
-                    case 0x18:
-                        LDST(opcodeNibbles[1]);
-                        break;
-                    case 0x1E:
-                        ADD_I(opcodeNibbles[1]);
-                        break;
-                    case 0x29:
-                        LDF(opcodeNibbles[1]);
-                        break;
-                    case 0x33:
-                        LDB(opcodeNibbles[1]);
-                        break;
-                    case 0x65:
-                        LDR(opcodeNibbles[1]);
-                        break;
-                    default:
-                        unknownOpcode(opcodeShort);
-                }
+            case Decoder.SE_N:
+                SE_N(Decoder.x(op), Decoder.nn(op));
+                break;
+            case Decoder.SNE_N:
+                SNE_N(Decoder.x(op), Decoder.nn(op));
+                break;
+            case Decoder.LD_N:
+                LD_N(Decoder.x(op), Decoder.nn(op));
+                break;
+            case Decoder.ADD_N:
+                ADD_N(Decoder.x(op), Decoder.nn(op));
+                break;
+            case Decoder.LD_R:
+                LD_R(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.AND:
+                AND(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.ADD:
+                ADD(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SUB_R:
+                SUB_R(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SNE_R:
+                SNE_R(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.LDI:
+                LDI(Decoder.nnn(op));
+                break;
+            case Decoder.RND:
+                RND(Decoder.x(op), Decoder.nn(op));
+                break;
+            case Decoder.DRW:
+                DRW(Decoder.x(op), Decoder.y(op), Decoder.n(op));
+                break;
+            case Decoder.SKP:
+                SKP(Decoder.x(op));
+                break;
+            case Decoder.SKNP:
+                SKNP(Decoder.x(op));
+                break;
+            case Decoder.LDRDT:
+                LDRDT(Decoder.x(op));
+                break;
+            case Decoder.LDK:
+                LDK(Decoder.x(op));
+                break;
+            case Decoder.LDDT:
+                LDDT(Decoder.x(op));
+                break;
+            case Decoder.LDST:
+                LDST(Decoder.x(op));
+                break;
+            case Decoder.ADD_I:
+                ADD_I(Decoder.x(op));
+                break;
+            case Decoder.LDF:
+                LDF(Decoder.x(op));
+                break;
+            case Decoder.LDB:
+                LDB(Decoder.x(op));
+                break;
+            case Decoder.LDR:
+                LDR(Decoder.x(op));
+                break;
+            case Decoder.STR:
+                STR(Decoder.x(op));
+                break;
+            case Decoder.SCD:
+                SCD(Decoder.n(op));
+                break;
+            case Decoder.SCU:
+                SCU(Decoder.n(op));
+                break;
+            case Decoder.SCR:
+                SCR();
+                break;
+            case Decoder.SCL:
+                SCL();
+                break;
+            case Decoder.EXIT:
+                EXIT();
+                break;
+            case Decoder.LOW:
+                LOW();
+                break;
+            case Decoder.HIGH:
+                HIGH();
+                break;
+            case Decoder.SE_R:
+                SE_R(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SAVE_RANGE:
+                SAVE_RANGE(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.LOAD_RANGE:
+                LOAD_RANGE(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.OR:
+                OR(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.XOR:
+                XOR(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.ADD_C:
+                ADD_C(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SUB_C:
+                SUB_C(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SHR:
+                SHR(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SUBN:
+                SUBN(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SHL:
+                SHL(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.SNE_RR:
+                SNE_RR(Decoder.x(op), Decoder.y(op));
+                break;
+            case Decoder.JMP_V:
+                JMP_V(Decoder.x(op), Decoder.nnn(op));
+                break;
+            case Decoder.RND_M:
+                RND_M(Decoder.x(op), Decoder.nn(op));
+                break;
+            case Decoder.DRW_M:
+                DRW_M(Decoder.x(op), Decoder.y(op), Decoder.n(op));
+                break;
+            case Decoder.SKP_M:
+                SKP_M(Decoder.x(op));
+                break;
+            case Decoder.SKNP_M:
+                SKNP_M(Decoder.x(op));
+                break;
+            case Decoder.ADD_IU:
+                ADD_IU(Decoder.x(op));
+                break;
+            case Decoder.LDF_M:
+                LDF_M(Decoder.x(op));
+                break;
+            case Decoder.LDHF:
+                LDHF(Decoder.x(op));
+                break;
+            case Decoder.LDB_U:
+                LDB_U(Decoder.x(op));
+                break;
+            case Decoder.STR_M:
+                STR_M(Decoder.x(op));
+                break;
+            case Decoder.LDR_M:
+                LDR_M(Decoder.x(op));
+                break;
+            case Decoder.SAVEF:
+                SAVEF(Decoder.x(op));
+                break;
+            case Decoder.LOADF:
+                LOADF(Decoder.x(op));
+                break;
+            case Decoder.LDI_LONG:
+                LDI_LONG();
+                break;
+            case Decoder.PLANE:
+                PLANE(Decoder.x(op));
+                break;
+            case Decoder.AUDIO:
+                AUDIO();
+                break;
+            case Decoder.PITCH:
+                PITCH(Decoder.x(op));
                 break;
             default:
-                unknownOpcode(opcodeShort);
+                unknownOpcode(Decoder.opcode(op));
         }
 
         PC += 2;
     }
 
+    /**
+     * Runs an instruction from a block the ROM analysis has verified, skipping checks it proved cannot fail.
+     */
+    private void executeVerified(int op) {
+        switch (Decoder.handler(op)) {
+            case Decoder.RET:
+                PC = (short) (stack[--sp] - 2);
+                break;
+            case Decoder.CALL:
+                stack[sp++] = (short) (PC + 2);
+                PC = (short) (Decoder.nnn(op) - 2);
+                break;
+            case Decoder.LDB:
+                storeDigits(Decoder.x(op));
+                break;
+            case Decoder.LDR:
+                loadRegisters(Decoder.x(op));
+                break;
+            case Decoder.STR:
+                storeRegisters(Decoder.x(op));
+                break;
+            default:
+                execute(op);
+                return;
+        }
+        PC += 2;
+    }
+
     private void unknownOpcode(short opcodeShort) {
         throw new RuntimeException("Unknown opcode " + String.format("%04X", opcodeShort));
     }
 
     //00E0
     private void CLS() {
-        vMem = new int[64][32];
+        frameBuffer.clear();
     }
 
     //00EE
     private void RET() {
-        if (STACK.empty()) {
+        if (sp == 0) {
             throw new RuntimeException("Stack underflow");
         }
-        PC = STACK.pop();
+        PC = stack[--sp];
         PC -= 2;
         if (PC < 0) {
             throw new RuntimeException("PC is negative");
@@ -218,7 +566,10 @@ public class CPU {
 
     //2NNN
     private void CALL(short address) {
-        STACK.push((short) (PC + 2));
+        if (sp == STACK_DEPTH) {
+            throw new RuntimeException("Stack overflow");
+        }
+        stack[sp++] = (short) (PC + 2);
         PC = address;
         PC -= 2;
     }
@@ -226,14 +577,14 @@ public class CPU {
     //3XNN
     private void SE_N(byte sourceRegister, byte value) {
         if (reg[sourceRegister] == value) {
-            PC += 2;
+            skip();
         }
     }
 
     //4XNN
     private void SNE_N(byte sourceRegister, byte value) {
         if (reg[sourceRegister] != value) {
-            PC += 2;
+            skip();
         }
     }
 
@@ -272,7 +623,7 @@ public class CPU {
     //9XY0
     private void SNE_R(byte regX, byte regY) {
         if (mem[regX] != mem[regY]) {
-            PC += 2;
+            skip();
         }
     }
 
@@ -288,40 +639,26 @@ public class CPU {
 
     //DXYN
     private void DRW(byte xSource, byte ySource, byte n) {
-        byte x = reg[xSource];
-        byte y = reg[ySource];
-        byte collisionFlag = 0x00;
-        for (int j = 0; j < n; j++) {
-            int screenYPos = (j + y) % 32;
-            while (screenYPos < 0) {
-                screenYPos += 32;
-            }
-            for (int i = 0; i < 8; i++) {
-                int screenXPos = (x + i) % 64;
-                while (screenXPos < 0) {
-                    screenXPos += 64;
-                }
-                if (vMem[screenXPos][screenYPos] == 1 && ((mem[I + j] >> (7 - i)) & 0b00000001) == 1) {
-                    collisionFlag = 0x01;
-                }
-                vMem[screenXPos][screenYPos] = vMem[screenXPos][screenYPos] ^ (mem[I + j] >> (7 - i) & 1);
-            }
-        }
-        reg[0xF] = collisionFlag;
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean collision = frameBuffer.draw(reg[xSource], reg[ySource], mem, I, n);
+        reg[0xF] = (byte) (collision ? 0x01 : 0x00);
         drawFlag = true;
+        if (metrics != null) {
+            metrics.drawCompleted(I, n, collision, System.nanoTime() - start);
+        }
     }
 
     //EXA1
     private void SKNP(byte keyButton) {
         if (!buttonStatus[reg[keyButton]]) {
-            PC += 2;
+            skip();
         }
     }
 
     //EX9E
     private void SKP(byte keyButton) {
         if (buttonStatus[reg[keyButton]]) {
-            PC += 2;
+            skip();
         }
     }
 
@@ -344,6 +681,7 @@ public class CPU {
     //FX18
     private void LDST(byte sourceRegister) {
         ST = reg[sourceRegister];
+        soundTriggered |= ST != 0;
     }
 
     //FX1E
@@ -361,9 +699,13 @@ public class CPU {
         if (I + 2 >= mem.length) {
             segfault();
         }
-        mem[I] = (byte) (reg[sourceRegister] / 100);
-        mem[I + 1] = (byte) ((reg[sourceRegister] % 100) / 10);
-        mem[I + 2] = (byte) (reg[sourceRegister] % 10);
+        storeDigits(sourceRegister);
+    }
+
+    private void storeDigits(byte sourceRegister) {
+        writeMemory(I, (byte) (reg[sourceRegister] / 100));
+        writeMemory(I + 1, (byte) ((reg[sourceRegister] % 100) / 10));
+        writeMemory(I + 2, (byte) (reg[sourceRegister] % 10));
     }
 
     //FX65
@@ -371,10 +713,297 @@ public class CPU {
         if (I + targetRegister >= mem.length) {
             segfault();
         }
-        IntStream.rangeClosed(0, targetRegister).forEach(index -> reg[index] = mem[I + index]);
+        loadRegisters(targetRegister);
+    }
+
+    private void loadRegisters(byte targetRegister) {
+        for (int index = 0; index <= targetRegister; index++) {
+            reg[index] = mem[I + index];
+        }
         I = (short) (I + targetRegister + 1);
     }
 
+    //FX55
+    private void STR(byte sourceRegister) {
+        if (I + sourceRegister >= mem.length) {
+            segfault();
+        }
+        storeRegisters(sourceRegister);
+    }
+
+    private void storeRegisters(byte sourceRegister) {
+        for (int index = 0; index <= sourceRegister; index++) {
+            writeMemory(I + index, reg[index]);
+        }
+        I = (short) (I + sourceRegister + 1);
+    }
+
+    private void writeMemory(int address, byte value) {
+        mem[address] = value;
+        dirtyPages[address >> PAGE_SHIFT >> 6] |= 1L << (address >> PAGE_SHIFT);
+        if (blockCache != null) {
+            blockCache.invalidate(address);
+        }
+        if (proven && analysis.isCode(address)) {
+            proven = false;
+        }
+    }
+
+    /**
+     * Re-enables the verified tier if the current state is one the ROM analysis covers.
+     */
+    private void checkProof() {
+        proven = analysis != null && analysis.admits(PC, I, reg, stack, sp, waitingForKey ? waitingForKeyReg : -1, mem);
+    }
+
+    /**
+     * Steps over the next instruction, which on XO-CHIP may be the four-byte F000 NNNN.
+     */
+    private void skip() {
+        PC += profile.isXo() && PC + 3 < mem.length && mem[PC + 2] == (byte) 0xF0 && mem[PC + 3] == 0 ? 4 : 2;
+    }
+
+    //00CN
+    private void SCD(byte lines) {
+        frameBuffer.scrollDown(lines);
+        drawFlag = true;
+    }
+
+    //00DN
+    private void SCU(byte lines) {
+        frameBuffer.scrollUp(lines);
+        drawFlag = true;
+    }
+
+    //00FB
+    private void SCR() {
+        frameBuffer.scrollRight(4);
+        drawFlag = true;
+    }
+
+    //00FC
+    private void SCL() {
+        frameBuffer.scrollLeft(4);
+        drawFlag = true;
+    }
+
+    //00FD
+    private void EXIT() {
+        throw new RuntimeException("Program exited");
+    }
+
+    //00FE
+    private void LOW() {
+        frameBuffer.setHighResolution(false);
+        drawFlag = true;
+    }
+
+    //00FF
+    private void HIGH() {
+        frameBuffer.setHighResolution(true);
+        drawFlag = true;
+    }
+
+    //5XY0
+    private void SE_R(byte regX, byte regY) {
+        if (reg[regX] == reg[regY]) {
+            skip();
+        }
+    }
+
+    //5XY2
+    private void SAVE_RANGE(byte regX, byte regY) {
+        int step = regX <= regY ? 1 : -1;
+        for (int index = regX, offset = 0; ; index += step, offset++) {
+            writeMemory((I + offset) & (mem.length - 1), reg[index]);
+            if (index == regY) {
+                break;
+            }
+        }
+    }
+
+    //5XY3
+    private void LOAD_RANGE(byte regX, byte regY) {
+        int step = regX <= regY ? 1 : -1;
+        for (int index = regX, offset = 0; ; index += step, offset++) {
+            reg[index] = mem[(I + offset) & (mem.length - 1)];
+            if (index == regY) {
+                break;
+            }
+        }
+    }
+
+    //8XY1
+    private void OR(byte regX, byte regY) {
+        reg[regX] |= reg[regY];
+    }
+
+    //8XY3
+    private void XOR(byte regX, byte regY) {
+        reg[regX] ^= reg[regY];
+    }
+
+    //8XY4 with an unsigned carry
+    private void ADD_C(byte regX, byte regY) {
+        int sum = (reg[regX] & 0xFF) + (reg[regY] & 0xFF);
+        reg[regX] = (byte) sum;
+        reg[0xF] = (byte) (sum >> 8);
+    }
+
+    //8XY5 with an unsigned borrow
+    private void SUB_C(byte regX, byte regY) {
+        int x = reg[regX] & 0xFF;
+        int y = reg[regY] & 0xFF;
+        reg[regX] = (byte) (x - y);
+        reg[0xF] = (byte) (x >= y ? 0x01 : 0x00);
+    }
+
+    //8XY6
+    private void SHR(byte regX, byte regY) {
+        int value = reg[profile.shiftsInPlace() ? regX : regY] & 0xFF;
+        reg[regX] = (byte) (value >>> 1);
+        reg[0xF] = (byte) (value & 0x01);
+    }
+
+    //8XY7
+    private void SUBN(byte regX, byte regY) {
+        int x = reg[regX] & 0xFF;
+        int y = reg[regY] & 0xFF;
+        reg[regX] = (byte) (y - x);
+        reg[0xF] = (byte) (y >= x ? 0x01 : 0x00);
+    }
+
+    //8XYE
+    private void SHL(byte regX, byte regY) {
+        int value = reg[profile.shiftsInPlace() ? regX : regY] & 0xFF;
+        reg[regX] = (byte) (value << 1);
+        reg[0xF] = (byte) (value >>> 7);
+    }
+
+    //9XY0 comparing registers
+    private void SNE_RR(byte regX, byte regY) {
+        if (reg[regX] != reg[regY]) {
+            skip();
+        }
+    }
+
+    //BNNN, or BXNN on SUPER-CHIP
+    private void JMP_V(byte regX, short address) {
+        PC = (short) (address + (reg[profile.jumpsWithVX() ? regX : 0] & 0xFF));
+        PC -= 2;
+    }
+
+    //CXNN masking a random byte
+    private void RND_M(byte targetRegister, byte value) {
+        reg[targetRegister] = (byte) (random.nextInt(256) & value);
+    }
+
+    //DXYN, with DXY0 drawing a 16x16 sprite
+    private void DRW_M(byte xSource, byte ySource, byte n) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean collision = n == 0
+                ? frameBuffer.drawPlanes(reg[xSource] & 0xFF, reg[ySource] & 0xFF, mem, I & 0xFFFF, 16, 2, profile.clipsSprites())
+                : frameBuffer.drawPlanes(reg[xSource] & 0xFF, reg[ySource] & 0xFF, mem, I & 0xFFFF, n, 1, profile.clipsSprites());
+        reg[0xF] = (byte) (collision ? 0x01 : 0x00);
+        drawFlag = true;
+        if (metrics != null) {
+            metrics.drawCompleted(I, n, collision, System.nanoTime() - start);
+        }
+    }
+
+    //EX9E with the key number masked
+    private void SKP_M(byte keyButton) {
+        if (buttonStatus[reg[keyButton] & 0xF]) {
+            skip();
+        }
+    }
+
+    //EXA1 with the key number masked
+    private void SKNP_M(byte keyButton) {
+        if (!buttonStatus[reg[keyButton] & 0xF]) {
+            skip();
+        }
+    }
+
+    //FX1E adding VX unsigned
+    private void ADD_IU(byte regX) {
+        I = (short) (I + (reg[regX] & 0xFF));
+    }
+
+    //FX29 for the low digit of VX
+    private void LDF_M(byte sourceRegister) {
+        I = (short) ((reg[sourceRegister] & 0xF) * 5);
+    }
+
+    //FX30
+    private void LDHF(byte sourceRegister) {
+        I = (short) (BIG_FONT_ADDRESS + (reg[sourceRegister] & 0xF) * 10);
+    }
+
+    //FX33 of VX unsigned
+    private void LDB_U(byte sourceRegister) {
+        int value = reg[sourceRegister] & 0xFF;
+        int mask = mem.length - 1;
+        writeMemory(I & mask, (byte) (value / 100));
+        writeMemory((I + 1) & mask, (byte) (value / 10 % 10));
+        writeMemory((I + 2) & mask, (byte) (value % 10));
+    }
+
+    //FX55, leaving I unchanged on SUPER-CHIP
+    private void STR_M(byte sourceRegister) {
+        for (int index = 0; index <= sourceRegister; index++) {
+            writeMemory((I + index) & (mem.length - 1), reg[index]);
+        }
+        if (!profile.keepsI()) {
+            I = (short) (I + sourceRegister + 1);
+        }
+    }
+
+    //FX65, leaving I unchanged on SUPER-CHIP
+    private void LDR_M(byte targetRegister) {
+        for (int index = 0; index <= targetRegister; index++) {
+            reg[index] = mem[(I + index) & (mem.length - 1)];
+        }
+        if (!profile.keepsI()) {
+            I = (short) (I + targetRegister + 1);
+        }
+    }
+
+    //FX75
+    private void SAVEF(byte sourceRegister) {
+        System.arraycopy(reg, 0, flags, 0, sourceRegister + 1);
+    }
+
+    //FX85
+    private void LOADF(byte targetRegister) {
+        System.arraycopy(flags, 0, reg, 0, targetRegister + 1);
+    }
+
+    //F000 NNNN
+    private void LDI_LONG() {
+        I = CpuUtil.shortFromBytes(mem[(PC + 2) & (mem.length - 1)], mem[(PC + 3) & (mem.length - 1)]);
+        PC += 2;
+    }
+
+    //FN01
+    private void PLANE(byte mask) {
+        frameBuffer.selectPlanes(mask);
+    }
+
+    //F002
+    private void AUDIO() {
+        for (int index = 0; index < audioPattern.length; index++) {
+            audioPattern[index] = mem[(I + index) & (mem.length - 1)];
+        }
+        audioChanged = true;
+    }
+
+    //FX3A
+    private void PITCH(byte sourceRegister) {
+        pitch = reg[sourceRegister];
+        audioChanged = true;
+    }
+
     private void segfault() {
         throw new RuntimeException("Segmentation fault! I: " + String.format("%04X", I) + " Memory length: " + mem.length);
     }
@@ -399,22 +1028,314 @@ public class CPU {
                 (byte) 0xF0, (byte) 0x80, (byte) 0xF0, (byte) 0x80, (byte) 0x80  //F
         };
         System.arraycopy(font, 0, mem, 0, font.length);
+        if (profile.isExtended()) {
+            byte[] bigFont = {
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, //0
+                    (byte) 0x18, (byte) 0x78, (byte) 0x78, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0xFF, (byte) 0xFF, //1
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x03, (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFF, (byte) 0xFF, //2
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x03, (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x03, (byte) 0xFF, (byte) 0xFF, //3
+                    (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x03, (byte) 0x03, (byte) 0x03, //4
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x03, (byte) 0xFF, (byte) 0xFF, //5
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFF, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, //6
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x03, (byte) 0x06, (byte) 0x0C, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0x18, //7
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, //8
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x03, (byte) 0xFF, (byte) 0xFF, //9
+                    (byte) 0x7E, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, //A
+                    (byte) 0xFC, (byte) 0xFC, (byte) 0xC3, (byte) 0xC3, (byte) 0xFC, (byte) 0xFC, (byte) 0xC3, (byte) 0xC3, (byte) 0xFC, (byte) 0xFC, //B
+                    (byte) 0x3C, (byte) 0xFF, (byte) 0xC3, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC3, (byte) 0xFF, (byte) 0x3C, //C
+                    (byte) 0xFC, (byte) 0xFE, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xFE, (byte) 0xFC, //D
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFF, (byte) 0xFF, //E
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0  //F
+            };
+            System.arraycopy(bigFont, 0, mem, BIG_FONT_ADDRESS, bigFont.length);
+        }
     }
 
     public long getCycleNumber() {
         return cycleNumber;
     }
 
+    public long getSeed() {
+        return seed;
+    }
+
     public short getPC() {
         return PC;
     }
 
+    public short getI() {
+        return I;
+    }
+
+    public byte getDT() {
+        return DT;
+    }
+
     public byte getST() {
         return ST;
     }
 
-    public int[][] getvMem() {
-        return vMem;
+    public byte getRegister(int index) {
+        return reg[index];
+    }
+
+    public void copyRegisters(byte[] destination) {
+        System.arraycopy(reg, 0, destination, 0, reg.length);
+    }
+
+    public int getMemorySize() {
+        return mem.length;
+    }
+
+    public void copyMemory(byte[] destination) {
+        System.arraycopy(mem, 0, destination, 0, mem.length);
+    }
+
+    /**
+     * Captures the machine state. Only pages written since the previous snapshot are copied;
+     * all other pages are shared with earlier snapshots.
+     */
+    public Snapshot snapshot() {
+        for (int page = 0; page < pages.length; page++) {
+            if (isPageDirty(page)) {
+                pages[page] = Arrays.copyOfRange(mem, page * PAGE_SIZE, (page + 1) * PAGE_SIZE);
+            }
+        }
+        Arrays.fill(dirtyPages, 0L);
+        long[] rows = new long[FrameBuffer.STATE_WORDS];
+        frameBuffer.copyRows(rows);
+        return new Snapshot(cycleNumber, PC, I, DT, ST, instructionsPerSecond, timerPhase, random.getState(),
+                reg.clone(), Arrays.copyOf(stack, sp), waitingForKey, waitingForKeyReg, buttonStatus.clone(), rows,
+                flags.clone(), audioPattern.clone(), pitch, pages.clone());
+    }
+
+    /**
+     * Returns the machine to a snapshot taken from this or any other CPU. Only pages that differ from the
+     * snapshot are copied back, and cached blocks are dropped only where memory actually changed.
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.stack.length > STACK_DEPTH) {
+            throw new IllegalArgumentException("Snapshot stack depth " + snapshot.stack.length + " exceeds " + STACK_DEPTH);
+        }
+        if (snapshot.pages.length != pages.length) {
+            throw new IllegalArgumentException("Snapshot memory size " + snapshot.pages.length * PAGE_SIZE
+                    + " does not match " + mem.length);
+        }
+        for (int page = 0; page < pages.length; page++) {
+            byte[] source = snapshot.pages[page];
+            if (isPageDirty(page) || pages[page] != source) {
+                int base = page * PAGE_SIZE;
+                for (int offset = 0; offset < PAGE_SIZE; offset++) {
+                    if (mem[base + offset] != source[offset]) {
+                        writeMemory(base + offset, source[offset]);
+                    }
+                }
+                pages[page] = source;
+            }
+        }
+        Arrays.fill(dirtyPages, 0L);
+        cycleNumber = snapshot.cycleNumber;
+        PC = snapshot.pc;
+        I = snapshot.i;
+        DT = snapshot.dt;
+        ST = snapshot.st;
+        instructionsPerSecond = snapshot.instructionsPerSecond;
+        timerPhase = snapshot.timerPhase;
+        random.setState(snapshot.randomState);
+        System.arraycopy(snapshot.reg, 0, reg, 0, reg.length);
+        System.arraycopy(snapshot.stack, 0, stack, 0, snapshot.stack.length);
+        sp = snapshot.stack.length;
+        waitingForKey = snapshot.waitingForKey;
+        waitingForKeyReg = snapshot.waitingForKeyReg;
+        System.arraycopy(snapshot.buttonStatus, 0, buttonStatus, 0, buttonStatus.length);
+        frameBuffer.restoreRows(snapshot.rows);
+        System.arraycopy(snapshot.flags, 0, flags, 0, flags.length);
+        restoreAudio(snapshot.audioPattern, snapshot.pitch);
+        drawFlag = true;
+        checkProof();
+    }
+
+    /**
+     * Writes the machine state into a fixed layout of {@link #getStateSize()} bytes, so consecutive images
+     * can be diffed byte by byte.
+     */
+    void saveState(byte[] image) {
+        ByteBuffer out = ByteBuffer.wrap(image);
+        out.putLong(cycleNumber).putLong(random.getState()).putShort(PC).putShort(I).put(DT).put(ST);
+        out.putInt(instructionsPerSecond).putInt(timerPhase);
+        out.put((byte) (waitingForKey ? 1 : 0)).put(waitingForKeyReg);
+        int buttons = 0;
+        for (int key = 0; key < KEY_COUNT; key++) {
+            if (buttonStatus[key]) {
+                buttons |= 1 << key;
+            }
+        }
+        out.putShort((short) buttons);
+        out.put((byte) sp);
+        for (int entry = 0; entry < STACK_DEPTH; entry++) {
+            out.putShort(entry < sp ? stack[entry] : 0);
+        }
+        out.put(reg);
+        frameBuffer.copyRows(stateRows);
+        for (long word : stateRows) {
+            out.putLong(word);
+        }
+        out.put(flags).put(audioPattern).put(pitch);
+        out.put(mem);
+    }
+
+    void loadState(byte[] image) {
+        ByteBuffer in = ByteBuffer.wrap(image);
+        cycleNumber = in.getLong();
+        random.setState(in.getLong());
+        PC = in.getShort();
+        I = in.getShort();
+        DT = in.get();
+        ST = in.get();
+        instructionsPerSecond = in.getInt();
+        timerPhase = in.getInt();
+        waitingForKey = in.get() != 0;
+        waitingForKeyReg = in.get();
+        int buttons = in.getShort();
+        for (int key = 0; key < KEY_COUNT; key++) {
+            buttonStatus[key] = (buttons & 1 << key) != 0;
+        }
+        sp = in.get();
+        for (int entry = 0; entry < STACK_DEPTH; entry++) {
+            stack[entry] = in.getShort();
+        }
+        in.get(reg);
+        for (int word = 0; word < stateRows.length; word++) {
+            stateRows[word] = in.getLong();
+        }
+        frameBuffer.restoreRows(stateRows);
+        in.get(flags);
+        byte[] pattern = new byte[audioPattern.length];
+        in.get(pattern);
+        restoreAudio(pattern, in.get());
+        int base = in.position();
+        for (int address = 0; address < mem.length; address++) {
+            if (mem[address] != image[base + address]) {
+                writeMemory(address, image[base + address]);
+            }
+        }
+        drawFlag = true;
+        checkProof();
+    }
+
+    int getStateSize() {
+        return stateSize(profile);
+    }
+
+    static int stateSize(Profile profile) {
+        return STATE_HEADER_SIZE + profile.getMemorySize();
+    }
+
+    /**
+     * Returns whether verified blocks currently run without their checks.
+     */
+    boolean isProven() {
+        return proven;
+    }
+
+    private void restoreAudio(byte[] pattern, byte pitch) {
+        if (this.pitch != pitch || !Arrays.equals(audioPattern, pattern)) {
+            System.arraycopy(pattern, 0, audioPattern, 0, audioPattern.length);
+            this.pitch = pitch;
+            audioChanged = true;
+        }
+    }
+
+    private boolean isPageDirty(int page) {
+        return (dirtyPages[page >> 6] & 1L << page) != 0;
+    }
+
+    public boolean isWaitingForKey() {
+        return waitingForKey;
+    }
+
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    Coverage getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * Records executed code into the given map, or stops recording when it is null.
+     */
+    void setCoverage(Coverage coverage) {
+        this.coverage = coverage;
+    }
+
+    public int getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    public void setInstructionsPerSecond(int instructionsPerSecond) {
+        if (instructionsPerSecond < TIMER_FREQUENCY) {
+            throw new IllegalArgumentException("At least " + TIMER_FREQUENCY + " instructions per second are required");
+        }
+        this.instructionsPerSecond = instructionsPerSecond;
+        timerPhase = 0;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+        analysis = executionMode == ExecutionMode.INTERPRETER || profile.isExtended() ? null : RomAnalysis.of(mem);
+        blockCache = executionMode == ExecutionMode.INTERPRETER ? null : new BlockCache(mem, decodeTable, analysis);
+        checkProof();
+    }
+
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns whether the XO-CHIP audio pattern or pitch changed since the previous call and resets it.
+     */
+    boolean takeAudioChanged() {
+        boolean changed = audioChanged;
+        audioChanged = false;
+        return changed;
+    }
+
+    byte[] getAudioPattern() {
+        return audioPattern;
+    }
+
+    /**
+     * Playback rate of the audio pattern in bits per second, 4000 * 2^((pitch - 64) / 48).
+     */
+    int getAudioBitRate() {
+        return (int) Math.round(4000 * Math.pow(2, ((pitch & 0xFF) - 64) / 48.0));
+    }
+
+    boolean takeSoundTriggered() {
+        boolean triggered = soundTriggered;
+        soundTriggered = false;
+        return triggered;
     }
 
     public boolean isDrawFlag() {
@@ -425,19 +1346,23 @@ public class CPU {
         this.drawFlag = value;
     }
 
-    public void keyPressed(KeyCode keyCode) {
-        if (buttonMap.containsKey(keyCode)) {
-            buttonStatus[buttonMap.get(keyCode)] = true;
-            if (waitingForKey) {
-                reg[waitingForKeyReg] = buttonMap.get(keyCode).byteValue();
-                waitingForKey = false;
-            }
+    @Override
+    public void keyPressed(int key) {
+        if (key < 0 || key >= KEY_COUNT) {
+            return;
+        }
+        buttonStatus[key] = true;
+        if (waitingForKey) {
+            reg[waitingForKeyReg] = (byte) key;
+            waitingForKey = false;
         }
     }
 
-    public void keyReleased(KeyCode keyCode) {
-        if (buttonMap.containsKey(keyCode)) {
-            buttonStatus[buttonMap.get(keyCode)] = false;
+    @Override
+    public void keyReleased(int key) {
+        if (key < 0 || key >= KEY_COUNT) {
+            return;
         }
+        buttonStatus[key] = false;
     }
 }
@@ -0,0 +1,5 @@
+package emulator;
+
+interface CompiledBlock {
+    int run(byte[] reg, int I);
+}
@@ -0,0 +1,105 @@
+package emulator;
+
+import java.util.Arrays;
+
+/**
+ * Execution coverage of one run, in the style of AFL: a map of hit counts indexed by hashed edges between
+ * consecutive entry points, plus the set of executed instruction addresses. The block tiers record a whole
+ * block when it is entered, so the cost is one map update per block rather than per instruction; the
+ * instructions of a block are only marked again when it is entered for a longer run than before. Entries
+ * touched since the last {@link #reset()} are listed, so resetting and merging only visit what the run used.
+ */
+final class Coverage {
+    static final int MAP_BITS = 16;
+    static final int MAP_SIZE = 1 << MAP_BITS;
+
+    private final byte[] hits = new byte[MAP_SIZE];
+    private final boolean[] addresses;
+    private final int[] markedFrom;
+    private final int addressMask;
+    private int[] touchedEdges = new int[256];
+    private int edgeCount;
+    private int[] touchedAddresses = new int[256];
+    private int addressCount;
+    private int previous;
+
+    Coverage(int memorySize) {
+        addresses = new boolean[memorySize];
+        markedFrom = new int[memorySize];
+        addressMask = memorySize - 1;
+    }
+
+    /**
+     * Records entering straight-line code at pc that runs for count instructions.
+     */
+    void enter(int pc, int count) {
+        int location = pc * 0x9E3779B1 >>> (32 - MAP_BITS);
+        int edge = location ^ previous;
+        previous = location >>> 1;
+        byte hit = hits[edge];
+        if (hit == 0) {
+            if (edgeCount == touchedEdges.length) {
+                touchedEdges = Arrays.copyOf(touchedEdges, edgeCount * 2);
+            }
+            touchedEdges[edgeCount++] = edge;
+        }
+        if (hit != -1) {
+            hits[edge] = (byte) (hit + 1);
+        }
+        int entry = pc & addressMask;
+        if (markedFrom[entry] >= count) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int address = pc + 2 * i & addressMask;
+            if (!addresses[address]) {
+                addresses[address] = true;
+                if (addressCount == touchedAddresses.length) {
+                    touchedAddresses = Arrays.copyOf(touchedAddresses, addressCount * 2);
+                }
+                touchedAddresses[addressCount++] = address;
+            }
+        }
+        markedFrom[entry] = count;
+    }
+
+    void reset() {
+        for (int i = 0; i < edgeCount; i++) {
+            hits[touchedEdges[i]] = 0;
+        }
+        for (int i = 0; i < addressCount; i++) {
+            addresses[touchedAddresses[i]] = false;
+            markedFrom[touchedAddresses[i]] = 0;
+        }
+        edgeCount = 0;
+        addressCount = 0;
+        previous = 0;
+    }
+
+    int getEdgeCount() {
+        return edgeCount;
+    }
+
+    int edgeAt(int index) {
+        return touchedEdges[index];
+    }
+
+    /**
+     * Hit count class of an edge as a single bit: 1, 2, 3, 4-7, 8-15, 16-31, 32-127 and 128 or more hits.
+     */
+    int bucket(int edge) {
+        int hit = hits[edge] & 0xFF;
+        if (hit <= 3) {
+            return 1 << (hit - 1);
+        }
+        return hit < 8 ? 1 << 3 : hit < 16 ? 1 << 4 : hit < 32 ? 1 << 5 : hit < 128 ? 1 << 6 : 1 << 7;
+    }
+
+    int getAddressCount() {
+        return addressCount;
+    }
+
+    int addressAt(int index) {
+        return touchedAddresses[index];
+    }
+}
@@ -0,0 +1,498 @@
+package emulator;
+
+import util.CpuUtil;
+
+/**
+ * Decode table covering all 65536 opcodes, built once when the class is loaded.
+ * Each entry packs the handler id in the upper 16 bits and the opcode in the lower 16,
+ * so X, Y, N, NN and NNN are available with a single mask and no allocation.
+ * The SUPER-CHIP and XO-CHIP profiles get their own tables, built on first use; where their semantics
+ * differ from this emulator's CHIP-8 behavior they map to separate handlers.
+ */
+final class Decoder {
+    static final int UNKNOWN = 0;
+    static final int CLS = 1;
+    static final int RET = 2;
+    static final int JMP = 3;
+    static final int CALL = 4;
+    static final int SE_N = 5;
+    static final int SNE_N = 6;
+    static final int LD_N = 7;
+    static final int ADD_N = 8;
+    static final int LD_R = 9;
+    static final int AND = 10;
+    static final int ADD = 11;
+    static final int SUB_R = 12;
+    static final int SNE_R = 13;
+    static final int LDI = 14;
+    static final int RND = 15;
+    static final int DRW = 16;
+    static final int SKP = 17;
+    static final int SKNP = 18;
+    static final int LDRDT = 19;
+    static final int LDK = 20;
+    static final int LDDT = 21;
+    static final int LDST = 22;
+    static final int ADD_I = 23;
+    static final int LDF = 24;
+    static final int LDB = 25;
+    static final int LDR = 26;
+    static final int STR = 27;
+    static final int SCD = 28;
+    static final int SCU = 29;
+    static final int SCR = 30;
+    static final int SCL = 31;
+    static final int EXIT = 32;
+    static final int LOW = 33;
+    static final int HIGH = 34;
+    static final int SE_R = 35;
+    static final int SAVE_RANGE = 36;
+    static final int LOAD_RANGE = 37;
+    static final int OR = 38;
+    static final int XOR = 39;
+    static final int ADD_C = 40;
+    static final int SUB_C = 41;
+    static final int SHR = 42;
+    static final int SUBN = 43;
+    static final int SHL = 44;
+    static final int SNE_RR = 45;
+    static final int JMP_V = 46;
+    static final int RND_M = 47;
+    static final int DRW_M = 48;
+    static final int SKP_M = 49;
+    static final int SKNP_M = 50;
+    static final int ADD_IU = 51;
+    static final int LDF_M = 52;
+    static final int LDHF = 53;
+    static final int LDB_U = 54;
+    static final int STR_M = 55;
+    static final int LDR_M = 56;
+    static final int SAVEF = 57;
+    static final int LOADF = 58;
+    static final int LDI_LONG = 59;
+    static final int PLANE = 60;
+    static final int AUDIO = 61;
+    static final int PITCH = 62;
+    static final int HANDLER_COUNT = 63;
+
+    private static final String[] NAMES = {
+            "UNKNOWN", "CLS", "RET", "JMP", "CALL", "SE_N", "SNE_N", "LD_N", "ADD_N", "LD_R", "AND", "ADD",
+            "SUB_R", "SNE_R", "LDI", "RND", "DRW", "SKP", "SKNP", "LDRDT", "LDK", "LDDT", "LDST", "ADD_I",
+            "LDF", "LDB", "LDR", "STR", "SCD", "SCU", "SCR", "SCL", "EXIT", "LOW", "HIGH", "SE_R", "SAVE_RANGE",
+            "LOAD_RANGE", "OR", "XOR", "ADD_C", "SUB_C", "SHR", "SUBN", "SHL", "SNE_RR", "JMP_V", "RND_M", "DRW_M",
+            "SKP_M", "SKNP_M", "ADD_IU", "LDF_M", "LDHF", "LDB_U", "STR_M", "LDR_M", "SAVEF", "LOADF", "LDI_LONG",
+            "PLANE", "AUDIO", "PITCH"
+    };
+
+    private static final int[] TABLE = new int[0x10000];
+
+    static {
+        for (int opcode = 0; opcode < TABLE.length; opcode++) {
+            TABLE[opcode] = resolve((short) opcode) << 16 | opcode;
+        }
+    }
+
+    private static final class ExtendedTables {
+        static final int[] SCHIP = build(Profile.SCHIP);
+        static final int[] XO_CHIP = build(Profile.XO_CHIP);
+
+        private static int[] build(Profile profile) {
+            int[] table = new int[0x10000];
+            for (int opcode = 0; opcode < table.length; opcode++) {
+                table[opcode] = resolveExtended((short) opcode, profile.isXo()) << 16 | opcode;
+            }
+            return table;
+        }
+    }
+
+    private Decoder() {
+    }
+
+    static int decode(short opcode) {
+        return TABLE[opcode & 0xFFFF];
+    }
+
+    static int[] table(Profile profile) {
+        switch (profile) {
+            case SCHIP:
+                return ExtendedTables.SCHIP;
+            case XO_CHIP:
+                return ExtendedTables.XO_CHIP;
+            default:
+                return TABLE;
+        }
+    }
+
+    static int handler(int entry) {
+        return entry >>> 16;
+    }
+
+    static short opcode(int entry) {
+        return (short) entry;
+    }
+
+    static byte x(int entry) {
+        return (byte) (entry >> 8 & 0xF);
+    }
+
+    static byte y(int entry) {
+        return (byte) (entry >> 4 & 0xF);
+    }
+
+    static byte n(int entry) {
+        return (byte) (entry & 0xF);
+    }
+
+    static byte nn(int entry) {
+        return (byte) entry;
+    }
+
+    static short nnn(int entry) {
+        return (short) (entry & 0xFFF);
+    }
+
+    static String name(int handler) {
+        return NAMES[handler];
+    }
+
+    static String disassemble(short opcode) {
+        return disassemble(Profile.CHIP8, opcode);
+    }
+
+    static String disassemble(Profile profile, short opcode) {
+        int entry = table(profile)[opcode & 0xFFFF];
+        int x = x(entry);
+        int y = y(entry);
+        String nn = String.format("0x%02X", nn(entry) & 0xFF);
+        String nnn = String.format("0x%03X", nnn(entry));
+        switch (handler(entry)) {
+            case CLS:
+                return "CLS";
+            case RET:
+                return "RET";
+            case JMP:
+                return "JP " + nnn;
+            case CALL:
+                return "CALL " + nnn;
+            case SE_N:
+                return "SE V" + hex(x) + ", " + nn;
+            case SE_R:
+                return "SE V" + hex(x) + ", V" + hex(y);
+            case SNE_N:
+                return "SNE V" + hex(x) + ", " + nn;
+            case LD_N:
+                return "LD V" + hex(x) + ", " + nn;
+            case ADD_N:
+                return "ADD V" + hex(x) + ", " + nn;
+            case LD_R:
+                return "LD V" + hex(x) + ", V" + hex(y);
+            case OR:
+                return "OR V" + hex(x) + ", V" + hex(y);
+            case AND:
+                return "AND V" + hex(x) + ", V" + hex(y);
+            case XOR:
+                return "XOR V" + hex(x) + ", V" + hex(y);
+            case ADD:
+            case ADD_C:
+                return "ADD V" + hex(x) + ", V" + hex(y);
+            case SUB_R:
+            case SUB_C:
+                return "SUB V" + hex(x) + ", V" + hex(y);
+            case SHR:
+                return "SHR V" + hex(x) + ", V" + hex(y);
+            case SUBN:
+                return "SUBN V" + hex(x) + ", V" + hex(y);
+            case SHL:
+                return "SHL V" + hex(x) + ", V" + hex(y);
+            case SNE_R:
+            case SNE_RR:
+                return "SNE V" + hex(x) + ", V" + hex(y);
+            case JMP_V:
+                return "JP V" + (profile.jumpsWithVX() ? hex(x) : "0") + ", " + nnn;
+            case SCD:
+                return "SCD " + n(entry);
+            case SCU:
+                return "SCU " + n(entry);
+            case SCR:
+                return "SCR";
+            case SCL:
+                return "SCL";
+            case EXIT:
+                return "EXIT";
+            case LOW:
+                return "LOW";
+            case HIGH:
+                return "HIGH";
+            case SAVE_RANGE:
+                return "LD [I], V" + hex(x) + "-V" + hex(y);
+            case LOAD_RANGE:
+                return "LD V" + hex(x) + "-V" + hex(y) + ", [I]";
+            case LDI_LONG:
+                return "LD I, NNNN";
+            case PLANE:
+                return "PLANE " + x;
+            case AUDIO:
+                return "AUDIO";
+            case PITCH:
+                return "PITCH V" + hex(x);
+            case LDHF:
+                return "LD HF, V" + hex(x);
+            case SAVEF:
+                return "LD R, V" + hex(x);
+            case LOADF:
+                return "LD V" + hex(x) + ", R";
+            case LDI:
+                return "LD I, " + nnn;
+            case RND:
+            case RND_M:
+                return "RND V" + hex(x) + ", " + nn;
+            case DRW:
+            case DRW_M:
+                return "DRW V" + hex(x) + ", V" + hex(y) + ", " + n(entry);
+            case SKP:
+            case SKP_M:
+                return "SKP V" + hex(x);
+            case SKNP:
+            case SKNP_M:
+                return "SKNP V" + hex(x);
+            case LDRDT:
+                return "LD V" + hex(x) + ", DT";
+            case LDK:
+                return "LD V" + hex(x) + ", K";
+            case LDDT:
+                return "LD DT, V" + hex(x);
+            case LDST:
+                return "LD ST, V" + hex(x);
+            case ADD_I:
+            case ADD_IU:
+                return "ADD I, V" + hex(x);
+            case LDF:
+            case LDF_M:
+                return "LD F, V" + hex(x);
+            case LDB:
+            case LDB_U:
+                return "LD B, V" + hex(x);
+            case LDR:
+            case LDR_M:
+                return "LD V" + hex(x) + ", [I]";
+            case STR:
+            case STR_M:
+                return "LD [I], V" + hex(x);
+            default:
+                return String.format("DW 0x%04X", opcode);
+        }
+    }
+
+    private static String hex(int nibble) {
+        return Integer.toHexString(nibble).toUpperCase();
+    }
+
+    private static int resolve(short opcode) {
+        byte[] nibbles = CpuUtil.nibblesFromShort(opcode);
+        byte lowByte = CpuUtil.byteFromNibbles(nibbles[2], nibbles[3]);
+
+        switch (nibbles[0]) {
+            case 0x0:
+                switch (lowByte) {
+                    case (byte) 0xE0:
+                        return CLS;
+                    case (byte) 0xEE:
+                        return RET;
+                    default:
+                        return UNKNOWN;
+                }
+            case 0x1:
+                return JMP;
+            case 0x2:
+                return CALL;
+            case 0x3:
+                return SE_N;
+            case 0x4:
+                return SNE_N;
+            case 0x6:
+                return LD_N;
+            case 0x7:
+                return ADD_N;
+            case 0x8:
+                switch (nibbles[3]) {
+                    case 0x0:
+                        return LD_R;
+                    case 0x2:
+                        return AND;
+                    case 0x4:
+                        return ADD;
+                    case 0x5:
+                        return SUB_R;
+                    default:
+                        return UNKNOWN;
+                }
+            case 0x9:
+                return SNE_R;
+            case 0xA:
+                return LDI;
+            case 0xC:
+                return RND;
+            case 0xD:
+                return DRW;
+            case 0xE:
+                switch (lowByte) {
+                    case (byte) 0x9E:
+                        return SKP;
+                    case (byte) 0xA1:
+                        return SKNP;
+                    default:
+                        return UNKNOWN;
+                }
+            case 0xF:
+                switch (lowByte) {
+                    case 0x07:
+                        return LDRDT;
+                    case 0x0A:
+                        return LDK;
+                    case 0x15:
+                        return LDDT;
+                    case 0x18:
+                        return LDST;
+                    case 0x1E:
+                        return ADD_I;
+                    case 0x29:
+                        return LDF;
+                    case 0x33:
+                        return LDB;
+                    case 0x55:
+                        return STR;
+                    case 0x65:
+                        return LDR;
+                    default:
+                        return UNKNOWN;
+                }
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private static int resolveExtended(short opcode, boolean xo) {
+        byte[] nibbles = CpuUtil.nibblesFromShort(opcode);
+        byte lowByte = CpuUtil.byteFromNibbles(nibbles[2], nibbles[3]);
+
+        switch (nibbles[0]) {
+            case 0x0:
+                if (nibbles[1] == 0 && nibbles[2] == 0xC) {
+                    return SCD;
+                }
+                if (nibbles[1] == 0 && nibbles[2] == 0xD && xo) {
+                    return SCU;
+                }
+                switch (lowByte) {
+                    case (byte) 0xE0:
+                        return CLS;
+                    case (byte) 0xEE:
+                        return RET;
+                    case (byte) 0xFB:
+                        return nibbles[1] == 0 ? SCR : UNKNOWN;
+                    case (byte) 0xFC:
+                        return nibbles[1] == 0 ? SCL : UNKNOWN;
+                    case (byte) 0xFD:
+                        return nibbles[1] == 0 ? EXIT : UNKNOWN;
+                    case (byte) 0xFE:
+                        return nibbles[1] == 0 ? LOW : UNKNOWN;
+                    case (byte) 0xFF:
+                        return nibbles[1] == 0 ? HIGH : UNKNOWN;
+                    default:
+                        return UNKNOWN;
+                }
+            case 0x5:
+                switch (nibbles[3]) {
+                    case 0x0:
+                        return SE_R;
+                    case 0x2:
+                        return xo ? SAVE_RANGE : UNKNOWN;
+                    case 0x3:
+                        return xo ? LOAD_RANGE : UNKNOWN;
+                    default:
+                        return UNKNOWN;
+                }
+            case 0x8:
+                switch (nibbles[3]) {
+                    case 0x0:
+                        return LD_R;
+                    case 0x1:
+                        return OR;
+                    case 0x2:
+                        return AND;
+                    case 0x3:
+                        return XOR;
+                    case 0x4:
+                        return ADD_C;
+                    case 0x5:
+                        return SUB_C;
+                    case 0x6:
+                        return SHR;
+                    case 0x7:
+                        return SUBN;
+                    case 0xE:
+                        return SHL;
+                    default:
+                        return UNKNOWN;
+                }
+            case 0x9:
+                return nibbles[3] == 0 ? SNE_RR : UNKNOWN;
+            case 0xB:
+                return JMP_V;
+            case 0xC:
+                return RND_M;
+            case 0xD:
+                return DRW_M;
+            case 0xE:
+                switch (lowByte) {
+                    case (byte) 0x9E:
+                        return SKP_M;
+                    case (byte) 0xA1:
+                        return SKNP_M;
+                    default:
+                        return UNKNOWN;
+                }
+            case 0xF:
+                if (xo && opcode == (short) 0xF000) {
+                    return LDI_LONG;
+                }
+                if (xo && opcode == (short) 0xF002) {
+                    return AUDIO;
+                }
+                switch (lowByte) {
+                    case 0x01:
+                        return xo ? PLANE : UNKNOWN;
+                    case 0x07:
+                        return LDRDT;
+                    case 0x0A:
+                        return LDK;
+                    case 0x15:
+                        return LDDT;
+                    case 0x18:
+                        return LDST;
+                    case 0x1E:
+                        return ADD_IU;
+                    case 0x29:
+                        return LDF_M;
+                    case 0x30:
+                        return LDHF;
+                    case 0x33:
+                        return LDB_U;
+                    case 0x3A:
+                        return xo ? PITCH : UNKNOWN;
+                    case 0x55:
+                        return STR_M;
+                    case 0x65:
+                        return LDR_M;
+                    case 0x75:
+                        return SAVEF;
+                    case (byte) 0x85:
+                        return LOADF;
+                    default:
+                        return UNKNOWN;
+                }
+            default:
+                return resolve(opcode);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package emulator;
+
+import java.util.function.Consumer;
+
+/**
+ * Runs the scheduler on its own thread so the UI and the emulator never stall each other. Key events arrive
+ * through an InputQueue and are applied by {@link LiveInput} at the cycle within the next frame that matches
+ * when they arrived, with a tap held for at least a frame; every frame that changed the display is published
+ * to a FrameExchange for the renderer to pick up.
+ */
+public class EmulationThread implements Runnable {
+    private final CPU cpu;
+    private final Scheduler scheduler;
+    private final Keypad keypad;
+    private final InputQueue inputQueue = new InputQueue();
+    private final LiveInput liveInput;
+    private final FrameExchange frames = new FrameExchange();
+    private final Consumer<RuntimeException> onHalt;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile boolean rewinding;
+
+    public EmulationThread(Scheduler scheduler, CPU cpu, Keypad keypad, Consumer<RuntimeException> onHalt) {
+        this.scheduler = scheduler;
+        this.cpu = cpu;
+        this.keypad = keypad;
+        this.onHalt = onHalt;
+        this.liveInput = new LiveInput(inputQueue, keypad);
+        scheduler.setLiveInput(liveInput);
+        this.thread = new Thread(this, "chip8-emulation");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the loop after the current frame and waits for the thread to finish.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        frames.publish(cpu.getFrameBuffer(), scheduler.getFrameNumber());
+        try {
+            while (running) {
+                if (rewinding && scheduler.getRewindBuffer() != null) {
+                    liveInput.flush();
+                    if (scheduler.getRewindBuffer().rewind(cpu, 1) && keypad instanceof InputRecorder) {
+                        ((InputRecorder) keypad).truncate(cpu.getCycleNumber());
+                    }
+                } else {
+                    scheduler.runFrame();
+                }
+                if (cpu.getFrameBuffer().takeDirtyRows() != 0) {
+                    frames.publish(cpu.getFrameBuffer(), scheduler.getFrameNumber());
+                    cpu.setDrawFlag(false);
+                }
+                scheduler.awaitNextFrame();
+            }
+        } catch (RuntimeException e) {
+            running = false;
+            frames.publish(cpu.getFrameBuffer(), scheduler.getFrameNumber());
+            if (onHalt != null) {
+                onHalt.accept(e);
+            }
+        }
+    }
+
+    public InputQueue getInputQueue() {
+        return inputQueue;
+    }
+
+    public FrameExchange getFrames() {
+        return frames;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRewinding(boolean rewinding) {
+        this.rewinding = rewinding;
+    }
+}
@@ -0,0 +1,7 @@
+package emulator;
+
+public enum ExecutionMode {
+    INTERPRETER,
+    BLOCK_CACHE,
+    COMPILED
+}
@@ -0,0 +1,510 @@
+package emulator;
+
+import util.RomUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coverage-guided exploration of a ROM's key input. Every corpus entry is a list of key presses together with
+ * snapshots taken along its run. A worker picks an entry, forks from one of its snapshots, mutates the presses
+ * after that point (adding, dropping, moving and stretching them) and runs only the remainder with a
+ * {@link Coverage} map attached. Runs that reach a new edge, hit count class or instruction join the corpus;
+ * runs that crash are reduced from reset to a small input log that still reproduces the same crash.
+ */
+public class Explorer {
+    static final int SNAPSHOT_INTERVAL = 1_000;
+    static final long DEFAULT_RUN_CYCLES = 6_000;
+    static final long DEFAULT_MAX_CYCLES = 100_000;
+
+    private static final int MAX_PRESS_CYCLES = 600;
+    private static final int MAX_MUTATIONS = 4;
+
+    private final byte[] rom;
+    private final Profile profile;
+    private final long seed;
+    private final int instructionsPerSecond;
+    private final long runCycles;
+    private final long maxCycles;
+    private final byte[] seenEdges = new byte[Coverage.MAP_SIZE];
+    private final boolean[] seenAddresses;
+    private final List<Entry> corpus = new CopyOnWriteArrayList<>();
+    private final Map<String, Crash> crashes = new LinkedHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder executedCycles = new LongAdder();
+    private int edgeClasses;
+    private int addresses;
+    private volatile boolean stopped;
+
+    public Explorer(byte[] rom, Profile profile, long seed, int instructionsPerSecond, long runCycles, long maxCycles) {
+        if (runCycles < 1 || maxCycles < runCycles) {
+            throw new IllegalArgumentException("Run length must be positive and at most the maximum depth");
+        }
+        this.rom = rom;
+        this.profile = profile;
+        this.seed = seed;
+        this.instructionsPerSecond = instructionsPerSecond;
+        this.runCycles = runCycles;
+        this.maxCycles = maxCycles;
+        this.seenAddresses = new boolean[profile.getMemorySize()];
+    }
+
+    /**
+     * Explores on the given number of threads until the time limit passes or the execution limit is reached,
+     * reporting progress at the given interval when a reporter is set.
+     */
+    public void run(int threads, long seconds, long executionLimit, long reportSeconds) throws InterruptedException {
+        Worker seedWorker = new Worker(0);
+        seedWorker.execute(null, seedWorker.cpu.snapshot(), new Press[0]);
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Worker worker = i == 0 ? seedWorker : new Worker(i);
+            workers[i] = new Thread(worker, "chip8-explorer-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        long nextReport = start + reportSeconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline && executions.sum() < executionLimit) {
+            Thread.sleep(10);
+            if (reportSeconds > 0 && System.nanoTime() >= nextReport) {
+                System.out.println(status(System.nanoTime() - start));
+                nextReport += reportSeconds * 1_000_000_000L;
+            }
+        }
+        stopped = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.println(status(System.nanoTime() - start));
+    }
+
+    private synchronized String status(long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        return String.format("%.0f s: %d executions (%.0f/s, %.0f cycles/s), corpus %d, %d edge classes, "
+                        + "%d instructions, %d crashes", seconds, executions.sum(), executions.sum() / seconds,
+                executedCycles.sum() / seconds, corpus.size(), edgeClasses, addresses, crashes.size());
+    }
+
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    public int getCorpusSize() {
+        return corpus.size();
+    }
+
+    public synchronized int getCoveredInstructions() {
+        return addresses;
+    }
+
+    public synchronized List<Crash> getCrashes() {
+        List<Crash> found = new ArrayList<>();
+        for (Crash crash : crashes.values()) {
+            if (crash.script != null) {
+                found.add(crash);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Classifies a failure by where it happened and what it was. Messages of exceptions other than the CPU's
+     * own RuntimeExceptions carry operands, such as an array index, that are left out.
+     */
+    static String signature(RuntimeException e, CPU cpu) {
+        String cause = e.getClass() == RuntimeException.class ? e.getMessage() : e.getClass().getSimpleName();
+        return String.format("%04X %s", cpu.getPC() & 0xFFFF, cause);
+    }
+
+    /**
+     * The EXIT instruction ends a program on purpose, so it is not a crash.
+     */
+    static boolean isExit(RuntimeException e) {
+        return e.getClass() == RuntimeException.class && "Program exited".equals(e.getMessage());
+    }
+
+    private CPU newCpu() {
+        CPU cpu = new CPU(rom, seed, profile);
+        cpu.setInstructionsPerSecond(instructionsPerSecond);
+        cpu.setExecutionMode(ExecutionMode.COMPILED);
+        return cpu;
+    }
+
+    static InputScript script(Press[] presses, long after) {
+        return script(presses, after, Long.MAX_VALUE);
+    }
+
+    /**
+     * Key events of the presses stamped after one cycle and up to another. A crash during cycle N only depends
+     * on events stamped before N, which are applied once N - 1 cycles have run.
+     */
+    static InputScript script(Press[] presses, long after, long until) {
+        InputScript.Builder builder = InputScript.builder();
+        for (Press press : presses) {
+            if (press.cycle > after && press.cycle <= until) {
+                builder.press(press.cycle, press.key);
+            }
+            long release = press.cycle + press.duration;
+            if (release > after && release <= until) {
+                builder.release(release, press.key);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Runs the script's events up to the given cycle, starting at the given event index. Unlike
+     * {@link InputScript#run(CPU, long)} this never applies an event stamped with the current cycle twice
+     * when a run is continued. Returns the index of the first event not yet applied.
+     */
+    private static int advance(CPU cpu, InputScript script, int index, long end) {
+        while (index < script.size() && script.cycleAt(index) <= end) {
+            cpu.runCycles(script.cycleAt(index) - cpu.getCycleNumber());
+            script.apply(cpu, index++);
+        }
+        cpu.runCycles(end - cpu.getCycleNumber());
+        return index;
+    }
+
+    /**
+     * Runs the script from reset and returns the signature of the crash it leads to within the limit, or null.
+     */
+    private String reproduce(InputScript script, long limit) {
+        CPU cpu = newCpu();
+        try {
+            advance(cpu, script, 0, limit);
+        } catch (RuntimeException e) {
+            return isExit(e) ? null : signature(e, cpu);
+        }
+        return null;
+    }
+
+    /**
+     * Drops presses one at a time, latest first, keeping each removal that still reproduces the crash.
+     */
+    private Press[] minimize(Press[] presses, long crashCycle, String signature) {
+        List<Press> current = new ArrayList<>();
+        for (Press press : presses) {
+            if (press.cycle <= crashCycle) {
+                current.add(press);
+            }
+        }
+        long limit = crashCycle + runCycles;
+        for (int i = current.size() - 1; i >= 0; i--) {
+            List<Press> candidate = new ArrayList<>(current);
+            candidate.remove(i);
+            if (signature.equals(reproduce(script(candidate.toArray(new Press[0]), -1), limit))) {
+                current = candidate;
+            }
+        }
+        return current.toArray(new Press[0]);
+    }
+
+    private void crashed(String signature, Press[] presses, long crashCycle) {
+        synchronized (this) {
+            if (crashes.containsKey(signature)) {
+                return;
+            }
+            crashes.put(signature, new Crash(signature));
+        }
+        InputScript script = script(minimize(presses, crashCycle, signature), -1, crashCycle - 1);
+        boolean reproducible = signature.equals(reproduce(script, crashCycle + runCycles));
+        synchronized (this) {
+            Crash crash = crashes.get(signature);
+            crash.script = script;
+            crash.cycle = crashCycle;
+            crash.reproducible = reproducible;
+        }
+    }
+
+    /**
+     * Merges a run's coverage into the global maps if it reached anything new. Returns whether it did.
+     */
+    private boolean merge(Coverage coverage) {
+        if (!isNew(coverage)) {
+            return false;
+        }
+        synchronized (this) {
+            if (!isNew(coverage)) {
+                return false;
+            }
+            for (int i = 0; i < coverage.getEdgeCount(); i++) {
+                int edge = coverage.edgeAt(i);
+                int bucket = coverage.bucket(edge);
+                if ((seenEdges[edge] & bucket) == 0) {
+                    seenEdges[edge] |= (byte) bucket;
+                    edgeClasses++;
+                }
+            }
+            for (int i = 0; i < coverage.getAddressCount(); i++) {
+                int address = coverage.addressAt(i);
+                if (!seenAddresses[address]) {
+                    seenAddresses[address] = true;
+                    addresses++;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads the global maps without locking; a stale read only sends a run to the locked check in {@link #merge}.
+     */
+    private boolean isNew(Coverage coverage) {
+        for (int i = 0; i < coverage.getEdgeCount(); i++) {
+            int edge = coverage.edgeAt(i);
+            if ((seenEdges[edge] & coverage.bucket(edge)) == 0) {
+                return true;
+            }
+        }
+        for (int i = 0; i < coverage.getAddressCount(); i++) {
+            if (!seenAddresses[coverage.addressAt(i)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class Worker implements Runnable {
+        private final CPU cpu = newCpu();
+        private final Coverage coverage = new Coverage(cpu.getMemorySize());
+        private final SplittableRandom random;
+
+        Worker(int index) {
+            random = new SplittableRandom(seed * 31 + index);
+            cpu.setCoverage(coverage);
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                Entry parent = corpus.get(random.nextInt(corpus.size()));
+                Snapshot fork = parent.snapshots[random.nextInt(parent.snapshots.length)];
+                execute(parent, fork, mutate(parent.presses, fork.getCycleNumber()));
+            }
+        }
+
+        private void execute(Entry parent, Snapshot fork, Press[] presses) {
+            long forkCycle = fork.getCycleNumber();
+            long end = Math.min(forkCycle + runCycles, maxCycles);
+            InputScript script = script(presses, forkCycle);
+            List<Snapshot> taken = new ArrayList<>();
+            cpu.restore(fork);
+            coverage.reset();
+            String failure = null;
+            try {
+                int index = 0;
+                for (long next = forkCycle + SNAPSHOT_INTERVAL; next < end; next += SNAPSHOT_INTERVAL) {
+                    index = advance(cpu, script, index, next);
+                    taken.add(cpu.snapshot());
+                }
+                advance(cpu, script, index, end);
+            } catch (RuntimeException e) {
+                if (!isExit(e)) {
+                    failure = signature(e, cpu);
+                }
+            }
+            executions.increment();
+            executedCycles.add(cpu.getCycleNumber() - forkCycle);
+            if (failure != null) {
+                crashed(failure, presses, cpu.getCycleNumber());
+            }
+            if (merge(coverage) || parent == null) {
+                List<Snapshot> snapshots = new ArrayList<>();
+                if (parent == null) {
+                    snapshots.add(fork);
+                } else {
+                    for (Snapshot snapshot : parent.snapshots) {
+                        if (snapshot.getCycleNumber() <= forkCycle) {
+                            snapshots.add(snapshot);
+                        }
+                    }
+                }
+                if (failure == null) {
+                    snapshots.addAll(taken);
+                }
+                corpus.add(new Entry(presses, snapshots.toArray(new Snapshot[0])));
+            }
+        }
+
+        /**
+         * Changes the presses that start after the fork point; earlier ones must stay as they were, since the
+         * forked snapshot already reflects them.
+         */
+        private Press[] mutate(Press[] presses, long forkCycle) {
+            List<Press> kept = new ArrayList<>();
+            List<Press> tail = new ArrayList<>();
+            for (Press press : presses) {
+                (press.cycle > forkCycle ? tail : kept).add(press);
+            }
+            long window = Math.min(runCycles, maxCycles - forkCycle);
+            int mutations = 1 + random.nextInt(MAX_MUTATIONS);
+            for (int m = 0; m < mutations; m++) {
+                int choice = tail.isEmpty() ? 0 : random.nextInt(5);
+                if (choice == 0) {
+                    tail.add(new Press(forkCycle + 1 + random.nextLong(window), random.nextInt(Keypad.KEY_COUNT),
+                            1 + random.nextInt(MAX_PRESS_CYCLES)));
+                    continue;
+                }
+                int index = random.nextInt(tail.size());
+                Press press = tail.get(index);
+                switch (choice) {
+                    case 1:
+                        tail.remove(index);
+                        break;
+                    case 2: {
+                        long shift = random.nextInt(2 * MAX_PRESS_CYCLES + 1) - MAX_PRESS_CYCLES;
+                        tail.set(index, new Press(Math.max(forkCycle + 1, press.cycle + shift), press.key, press.duration));
+                        break;
+                    }
+                    case 3:
+                        tail.set(index, new Press(press.cycle, press.key, 1 + random.nextInt(MAX_PRESS_CYCLES)));
+                        break;
+                    default:
+                        tail.set(index, new Press(press.cycle, random.nextInt(Keypad.KEY_COUNT), press.duration));
+                }
+            }
+            tail.sort(Comparator.comparingLong(press -> press.cycle));
+            kept.addAll(tail);
+            return kept.toArray(new Press[0]);
+        }
+    }
+
+    /**
+     * A key held down from a cycle for a number of cycles.
+     */
+    static final class Press {
+        final long cycle;
+        final int key;
+        final int duration;
+
+        Press(long cycle, int key, int duration) {
+            this.cycle = cycle;
+            this.key = key;
+            this.duration = duration;
+        }
+    }
+
+    private static final class Entry {
+        final Press[] presses;
+        final Snapshot[] snapshots;
+
+        Entry(Press[] presses, Snapshot[] snapshots) {
+            this.presses = presses;
+            this.snapshots = snapshots;
+        }
+    }
+
+    /**
+     * A distinct crash and the reduced input that leads to it from reset.
+     */
+    public static final class Crash {
+        private final String signature;
+        private InputScript script;
+        private long cycle;
+        private boolean reproducible;
+
+        Crash(String signature) {
+            this.signature = signature;
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        public InputScript getScript() {
+            return script;
+        }
+
+        /**
+         * Cycle at which the crash was first seen.
+         */
+        public long getCycle() {
+            return cycle;
+        }
+
+        /**
+         * Whether running the reduced script from reset leads to the same crash, as it should.
+         */
+        public boolean isReproducible() {
+            return reproducible;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: Explorer <rom> [--seconds=N] [--executions=N] [--threads=N] [--run=cycles] [--depth=cycles] [--seed=N] [--ips=N] [--profile=chip8|schip|xo_chip] [--out=<directory>]");
+            System.exit(2);
+        }
+        String romPath = args[0];
+        long seconds = 60;
+        long executionLimit = Long.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long runCycles = DEFAULT_RUN_CYCLES;
+        long maxCycles = DEFAULT_MAX_CYCLES;
+        long seed = 0;
+        int instructionsPerSecond = CPU.DEFAULT_INSTRUCTIONS_PER_SECOND;
+        Profile profile = Profile.forFileName(romPath);
+        Path out = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--seconds=")) {
+                seconds = Long.parseLong(args[i].substring("--seconds=".length()));
+            } else if (args[i].startsWith("--executions=")) {
+                executionLimit = Long.parseLong(args[i].substring("--executions=".length()));
+            } else if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else if (args[i].startsWith("--run=")) {
+                runCycles = Long.parseLong(args[i].substring("--run=".length()));
+            } else if (args[i].startsWith("--depth=")) {
+                maxCycles = Long.parseLong(args[i].substring("--depth=".length()));
+            } else if (args[i].startsWith("--seed=")) {
+                seed = Long.parseLong(args[i].substring("--seed=".length()));
+            } else if (args[i].startsWith("--ips=")) {
+                instructionsPerSecond = Integer.parseInt(args[i].substring("--ips=".length()));
+            } else if (args[i].startsWith("--profile=")) {
+                profile = Profile.parse(args[i].substring("--profile=".length()));
+            } else if (args[i].startsWith("--out=")) {
+                out = Paths.get(args[i].substring("--out=".length()));
+            }
+        }
+
+        Explorer explorer = new Explorer(RomUtil.LoadRom(romPath), profile, seed, instructionsPerSecond, runCycles,
+                maxCycles);
+        explorer.run(threads, seconds, executionLimit, 5);
+
+        List<Crash> found = explorer.getCrashes();
+        if (out != null && !found.isEmpty()) {
+            Files.createDirectories(out);
+        }
+        for (int i = 0; i < found.size(); i++) {
+            Crash crash = found.get(i);
+            System.out.printf("Crash %s at cycle %d, %d input events%s%n", crash.getSignature(), crash.getCycle(),
+                    crash.getScript().size(), crash.isReproducible() ? "" : " (does not reproduce from reset)");
+            for (int e = 0; e < crash.getScript().size(); e++) {
+                System.out.printf("  %d %s %X%n", crash.getScript().cycleAt(e),
+                        crash.getScript().isPressAt(e) ? "press" : "release", crash.getScript().keyAt(e));
+            }
+            if (out != null) {
+                Path file = out.resolve("crash-" + i + RegressionRunner.INPUT_SUFFIX);
+                try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file))) {
+                    new InputLog(seed, instructionsPerSecond, crash.getScript()).write(stream);
+                }
+                System.out.println("  written to " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package emulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes PCM to a file, either as a WAV file whose header sizes are filled in on close or as raw samples.
+ */
+public class FileAudioSink implements AudioSink {
+    private static final int WAV_HEADER_SIZE = 44;
+
+    private final FileChannel channel;
+    private final boolean wav;
+    private final ByteBuffer chunk = ByteBuffer.allocateDirect(64 * 1024);
+    private long dataBytes;
+
+    private FileAudioSink(Path file, boolean wav) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.wav = wav;
+        if (wav) {
+            writeFully(wavHeader(0));
+        }
+    }
+
+    public static FileAudioSink wav(Path file) throws IOException {
+        return new FileAudioSink(file, true);
+    }
+
+    public static FileAudioSink raw(Path file) throws IOException {
+        return new FileAudioSink(file, false);
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) throws IOException {
+        if (chunk.remaining() < length) {
+            flush();
+        }
+        chunk.put(buffer, 0, length);
+        dataBytes += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        flush();
+        if (wav) {
+            ByteBuffer header = wavHeader(dataBytes);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        channel.close();
+    }
+
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    private void flush() throws IOException {
+        chunk.flip();
+        writeFully(chunk);
+        chunk.clear();
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static ByteBuffer wavHeader(long dataBytes) {
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952).putInt((int) (WAV_HEADER_SIZE - 8 + dataBytes)).putInt(0x45564157);
+        header.putInt(0x20746D66).putInt(16).putShort((short) 1).putShort((short) 1);
+        header.putInt(Beeper.SAMPLE_RATE).putInt(Beeper.SAMPLE_RATE * Beeper.BYTES_PER_SAMPLE);
+        header.putShort((short) Beeper.BYTES_PER_SAMPLE).putShort((short) 16);
+        header.putInt(0x61746164).putInt((int) dataBytes);
+        header.flip();
+        return header;
+    }
+}
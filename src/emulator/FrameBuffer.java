@@ -0,0 +1,362 @@
+package emulator;
+
+import java.util.Arrays;
+
+/**
+ * Monochrome display of up to two bit planes, 64x32 in low resolution and 128x64 in high resolution.
+ * Each row of a plane is packed into one long (low resolution) or two (high resolution) with column 0 in the
+ * most significant bit, and the rows of a plane are stored back to back. Vertical scrolling is therefore an
+ * array copy and horizontal scrolling a shift per word. In low resolution with only the first plane selected,
+ * which is all CHIP-8 uses, the layout is exactly one long per row and drawing takes the original path.
+ * <p>
+ * The state words exchanged through {@link #copyRows(long[])} hold both planes followed by a mode word,
+ * so a copied display can be interpreted without the FrameBuffer it came from.
+ */
+public class FrameBuffer {
+    public static final int WIDTH = 64;
+    public static final int HEIGHT = 32;
+    public static final int HIGH_WIDTH = 128;
+    public static final int HIGH_HEIGHT = 64;
+    public static final int PLANES = 2;
+    static final int PLANE_WORDS = HIGH_HEIGHT * HIGH_WIDTH / 64;
+    /**
+     * Length of the arrays used by {@link #copyRows(long[])}: every plane word followed by the mode word.
+     */
+    public static final int STATE_WORDS = PLANES * PLANE_WORDS + 1;
+    static final int MODE_WORD = STATE_WORDS - 1;
+    private static final long HIGH_RESOLUTION = 1;
+    private static final int PLANE_SHIFT = 1;
+    static final long DEFAULT_MODE = 1 << PLANE_SHIFT;
+
+    private final long[] rows = new long[STATE_WORDS];
+    private int width = WIDTH;
+    private int height = HEIGHT;
+    private int rowWords = 1;
+    private int planeMask = 1;
+    private long dirtyRows = allRows(HEIGHT);
+
+    public FrameBuffer() {
+        rows[MODE_WORD] = DEFAULT_MODE;
+    }
+
+    boolean draw(int x, int y, byte[] mem, int address, int height) {
+        if (rowWords != 1 || planeMask != 1) {
+            return drawPlanes(x, y, mem, address, height, 1, false);
+        }
+        int shift = x & (WIDTH - 1);
+        long collision = 0;
+        for (int j = 0; j < height; j++) {
+            long sprite = Long.rotateRight((long) (mem[address + j] & 0xFF) << 56, shift);
+            int row = (y + j) & (HEIGHT - 1);
+            collision |= rows[row] & sprite;
+            rows[row] ^= sprite;
+            if (sprite != 0) {
+                dirtyRows |= 1L << row;
+            }
+        }
+        return collision != 0;
+    }
+
+    /**
+     * Draws a sprite of the given height and width in bytes (1 or 2) into every selected plane. Each plane
+     * takes its own sprite data, following the previous plane's. Sprite addresses wrap around memory, and
+     * pixels past the display edges wrap around as well unless clip is set.
+     */
+    boolean drawPlanes(int x, int y, byte[] mem, int address, int height, int bytesPerRow, boolean clip) {
+        int memoryMask = mem.length - 1;
+        int column = x & (width - 1);
+        int top = y & (this.height - 1);
+        int spriteWidth = bytesPerRow * 8;
+        long collision = 0;
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((planeMask & 1 << plane) == 0) {
+                continue;
+            }
+            int base = plane * PLANE_WORDS;
+            for (int j = 0; j < height; j++) {
+                int row = top + j;
+                if (row >= this.height) {
+                    if (clip) {
+                        address += (height - j) * bytesPerRow;
+                        break;
+                    }
+                    row &= this.height - 1;
+                }
+                long bits = mem[address & memoryMask] & 0xFF;
+                if (bytesPerRow == 2) {
+                    bits = bits << 8 | mem[(address + 1) & memoryMask] & 0xFF;
+                }
+                address += bytesPerRow;
+                long sprite = bits << (64 - spriteWidth);
+                int index = base + row * rowWords;
+                if (rowWords == 1) {
+                    long word = clip ? sprite >>> column : Long.rotateRight(sprite, column);
+                    collision |= rows[index] & word;
+                    rows[index] ^= word;
+                } else {
+                    long left;
+                    long right;
+                    if (column < 64) {
+                        left = sprite >>> column;
+                        right = column == 0 ? 0 : sprite << (64 - column);
+                    } else {
+                        left = clip || column <= HIGH_WIDTH - spriteWidth ? 0 : sprite << (HIGH_WIDTH - column);
+                        right = sprite >>> (column - 64);
+                    }
+                    collision |= rows[index] & left | rows[index + 1] & right;
+                    rows[index] ^= left;
+                    rows[index + 1] ^= right;
+                }
+                if (bits != 0) {
+                    dirtyRows |= 1L << row;
+                }
+            }
+        }
+        return collision != 0;
+    }
+
+    /**
+     * Clears the selected planes.
+     */
+    void clear() {
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((planeMask & 1 << plane) == 0) {
+                continue;
+            }
+            int base = plane * PLANE_WORDS;
+            for (int y = 0; y < height; y++) {
+                for (int word = 0; word < rowWords; word++) {
+                    if (rows[base + y * rowWords + word] != 0) {
+                        dirtyRows |= 1L << y;
+                    }
+                }
+            }
+            Arrays.fill(rows, base, base + height * rowWords, 0);
+        }
+    }
+
+    /**
+     * Switches between 64x32 and 128x64. Both planes are cleared, as on XO-CHIP.
+     */
+    void setHighResolution(boolean highResolution) {
+        width = highResolution ? HIGH_WIDTH : WIDTH;
+        height = highResolution ? HIGH_HEIGHT : HEIGHT;
+        rowWords = width / 64;
+        Arrays.fill(rows, 0, MODE_WORD, 0);
+        updateModeWord();
+        markAllDirty();
+    }
+
+    /**
+     * Selects the planes later draws, clears and scrolls apply to, as a bit mask.
+     */
+    void selectPlanes(int mask) {
+        planeMask = mask & ((1 << PLANES) - 1);
+        updateModeWord();
+    }
+
+    void scrollDown(int lines) {
+        int shift = Math.min(lines, height) * rowWords;
+        for (int base = 0; base < MODE_WORD; base += PLANE_WORDS) {
+            if ((planeMask & 1 << base / PLANE_WORDS) != 0) {
+                System.arraycopy(rows, base, rows, base + shift, height * rowWords - shift);
+                Arrays.fill(rows, base, base + shift, 0);
+            }
+        }
+        dirtyRows = allRows(height);
+    }
+
+    void scrollUp(int lines) {
+        int shift = Math.min(lines, height) * rowWords;
+        for (int base = 0; base < MODE_WORD; base += PLANE_WORDS) {
+            if ((planeMask & 1 << base / PLANE_WORDS) != 0) {
+                int end = base + height * rowWords;
+                System.arraycopy(rows, base + shift, rows, base, height * rowWords - shift);
+                Arrays.fill(rows, end - shift, end, 0);
+            }
+        }
+        dirtyRows = allRows(height);
+    }
+
+    /**
+     * Scrolls the selected planes right by a number of pixels below 64.
+     */
+    void scrollRight(int pixels) {
+        for (int base = 0; base < MODE_WORD; base += PLANE_WORDS) {
+            if ((planeMask & 1 << base / PLANE_WORDS) == 0) {
+                continue;
+            }
+            for (int index = base; index < base + height * rowWords; index += rowWords) {
+                if (rowWords == 2) {
+                    rows[index + 1] = rows[index + 1] >>> pixels | rows[index] << (64 - pixels);
+                }
+                rows[index] >>>= pixels;
+            }
+        }
+        dirtyRows = allRows(height);
+    }
+
+    /**
+     * Scrolls the selected planes left by a number of pixels below 64.
+     */
+    void scrollLeft(int pixels) {
+        for (int base = 0; base < MODE_WORD; base += PLANE_WORDS) {
+            if ((planeMask & 1 << base / PLANE_WORDS) == 0) {
+                continue;
+            }
+            for (int index = base; index < base + height * rowWords; index += rowWords) {
+                rows[index] <<= pixels;
+                if (rowWords == 2) {
+                    rows[index] |= rows[index + 1] >>> (64 - pixels);
+                    rows[index + 1] <<= pixels;
+                }
+            }
+        }
+        dirtyRows = allRows(height);
+    }
+
+    public boolean isPixelSet(int x, int y) {
+        return pixel(rows, x, y) != 0;
+    }
+
+    /**
+     * Returns the first plane's row in low resolution. In high resolution, use {@link #copyRows(long[])}.
+     */
+    public long getRow(int y) {
+        return rows[y];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isHighResolution() {
+        return rowWords == 2;
+    }
+
+    public int getPlaneMask() {
+        return planeMask;
+    }
+
+    /**
+     * Returns a bit mask of the rows changed since the previous call and resets it.
+     */
+    public long takeDirtyRows() {
+        long dirty = dirtyRows;
+        dirtyRows = 0;
+        return dirty;
+    }
+
+    public void markAllDirty() {
+        dirtyRows = allRows(height);
+    }
+
+    public void rowToPixels(int y, int[] pixels, int offset, int[] palette) {
+        rowToPixels(rows, y, pixels, offset, palette);
+    }
+
+    public void rowToPixels(int y, int[] pixels, int offset, int foreground, int background) {
+        rowToPixels(rows, y, pixels, offset, palette(foreground, background));
+    }
+
+    public static void rowToPixels(long row, int[] pixels, int offset, int foreground, int background) {
+        for (int x = 0; x < WIDTH; x++) {
+            pixels[offset + x] = (row << x) < 0 ? foreground : background;
+        }
+    }
+
+    /**
+     * Converts row y of a display copied with {@link #copyRows(long[])} into {@link #width(long[])} pixels,
+     * indexing the palette with the plane bits of each pixel. Words that are blank in both planes are filled
+     * without looking at individual pixels.
+     */
+    public static void rowToPixels(long[] state, int y, int[] pixels, int offset, int[] palette) {
+        int rowWords = (int) (state[MODE_WORD] & HIGH_RESOLUTION) + 1;
+        for (int word = 0; word < rowWords; word++) {
+            long first = state[y * rowWords + word];
+            long second = state[PLANE_WORDS + y * rowWords + word];
+            int start = offset + word * 64;
+            if ((first | second) == 0) {
+                Arrays.fill(pixels, start, start + 64, palette[0]);
+                continue;
+            }
+            for (int x = 0; x < 64; x++) {
+                pixels[start + x] = palette[(int) ((first << x) >>> 63 | (second << x) >>> 63 << 1)];
+            }
+        }
+    }
+
+    public void toPixels(int[] pixels, int foreground, int background) {
+        int[] palette = palette(foreground, background);
+        for (int y = 0; y < height; y++) {
+            rowToPixels(y, pixels, y * width, palette);
+        }
+    }
+
+    /**
+     * Palette for {@link #rowToPixels(long[], int, int[], int, int[])} built from two colors: pixels set only in
+     * the second plane are drawn half way between them, and pixels set in both planes in the foreground color.
+     */
+    public static int[] palette(int foreground, int background) {
+        int blend = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            blend |= (((foreground >>> shift & 0xFF) + (background >>> shift & 0xFF)) / 2) << shift;
+        }
+        return new int[]{background, foreground, blend, foreground};
+    }
+
+    public static int width(long[] state) {
+        return (state[MODE_WORD] & HIGH_RESOLUTION) != 0 ? HIGH_WIDTH : WIDTH;
+    }
+
+    public static int height(long[] state) {
+        return (state[MODE_WORD] & HIGH_RESOLUTION) != 0 ? HIGH_HEIGHT : HEIGHT;
+    }
+
+    /**
+     * Plane bits of one pixel of a display copied with {@link #copyRows(long[])}.
+     */
+    public static int pixel(long[] state, int x, int y) {
+        int rowWords = (int) (state[MODE_WORD] & HIGH_RESOLUTION) + 1;
+        int index = y * rowWords + (x >> 6);
+        return (int) ((state[index] << x) >>> 63 | (state[PLANE_WORDS + index] << x) >>> 63 << 1);
+    }
+
+    /**
+     * Copies the display state into an array of {@link #STATE_WORDS} longs.
+     */
+    public void copyRows(long[] destination) {
+        System.arraycopy(rows, 0, destination, 0, STATE_WORDS);
+    }
+
+    void restoreRows(long[] source) {
+        if (source[MODE_WORD] != rows[MODE_WORD]) {
+            System.arraycopy(source, 0, rows, 0, STATE_WORDS);
+            long mode = rows[MODE_WORD];
+            width = (mode & HIGH_RESOLUTION) != 0 ? HIGH_WIDTH : WIDTH;
+            height = (mode & HIGH_RESOLUTION) != 0 ? HIGH_HEIGHT : HEIGHT;
+            rowWords = width / 64;
+            planeMask = (int) (mode >>> PLANE_SHIFT);
+            markAllDirty();
+            return;
+        }
+        for (int index = 0; index < MODE_WORD; index++) {
+            if (rows[index] != source[index]) {
+                rows[index] = source[index];
+                dirtyRows |= 1L << (index % PLANE_WORDS / rowWords);
+            }
+        }
+    }
+
+    private void updateModeWord() {
+        rows[MODE_WORD] = (long) planeMask << PLANE_SHIFT | (rowWords == 2 ? HIGH_RESOLUTION : 0);
+    }
+
+    private static long allRows(int height) {
+        return height == 64 ? -1L : (1L << height) - 1;
+    }
+}
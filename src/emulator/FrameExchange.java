@@ -0,0 +1,65 @@
+package emulator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triple buffer handing completed frames from the emulation thread to the renderer without locks. The
+ * producer fills its back buffer and swaps it with the shared middle one; the consumer swaps the middle
+ * buffer for its front one only when a newer frame is there, so neither side ever waits for the other.
+ */
+public class FrameExchange {
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final long[][] rows = new long[3][FrameBuffer.STATE_WORDS];
+    private final long[] frameNumbers = new long[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+    private volatile long published;
+    private volatile long skipped;
+
+    /**
+     * Producer side. Copies the frame buffer into the back buffer and makes it the newest frame.
+     */
+    public void publish(FrameBuffer frameBuffer, long frameNumber) {
+        frameBuffer.copyRows(rows[back]);
+        frameNumbers[back] = frameNumber;
+        int previous = middle.getAndSet(back | FRESH);
+        if ((previous & FRESH) != 0) {
+            skipped++;
+        }
+        back = previous & INDEX_MASK;
+        published++;
+    }
+
+    /**
+     * Consumer side. Returns the newest published frame, or null if nothing was published since the last call.
+     * The returned rows stay valid until the next call.
+     */
+    public long[] take() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return rows[front];
+    }
+
+    /**
+     * Frame number of the rows most recently returned by take().
+     */
+    public long getFrameNumber() {
+        return frameNumbers[front];
+    }
+
+    public long getPublishedCount() {
+        return published;
+    }
+
+    /**
+     * Frames that were overwritten by a newer one before the consumer took them.
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+}
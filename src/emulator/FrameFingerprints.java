@@ -0,0 +1,120 @@
+package emulator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Video output of one run as the frame numbers at which the display changed and the hash of each new display,
+ * together with how many cycles ran and why the run stopped early, if it did.
+ */
+public final class FrameFingerprints {
+    static final int MAGIC = 0x43384650;
+    static final short VERSION = 1;
+
+    private final long[] frames;
+    private final long[] hashes;
+    private final long cycles;
+    private final String error;
+
+    FrameFingerprints(long[] frames, long[] hashes, long cycles, String error) {
+        this.frames = frames;
+        this.hashes = hashes;
+        this.cycles = cycles;
+        this.error = error;
+    }
+
+    public int size() {
+        return frames.length;
+    }
+
+    public long frameAt(int index) {
+        return frames[index];
+    }
+
+    public long hashAt(int index) {
+        return hashes[index];
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Single hash over the whole stream, cycle count and error.
+     */
+    public long digest() {
+        long digest = FrameHasher.mix(cycles) ^ (error != null ? error.hashCode() : 0);
+        for (int i = 0; i < frames.length; i++) {
+            digest = FrameHasher.mix(digest ^ frames[i]) + hashes[i];
+        }
+        return FrameHasher.mix(digest);
+    }
+
+    /**
+     * Returns null if both runs produced the same output, otherwise a short description of the first difference.
+     */
+    public String compare(FrameFingerprints expected) {
+        int common = Math.min(size(), expected.size());
+        for (int i = 0; i < common; i++) {
+            if (frames[i] != expected.frames[i] || hashes[i] != expected.hashes[i]) {
+                return String.format("display change %d differs: expected frame %d hash %016X, got frame %d hash %016X",
+                        i, expected.frames[i], expected.hashes[i], frames[i], hashes[i]);
+            }
+        }
+        if (size() != expected.size()) {
+            return "expected " + expected.size() + " display changes, got " + size();
+        }
+        if (cycles != expected.cycles) {
+            return "expected " + expected.cycles + " cycles, got " + cycles;
+        }
+        if (error == null ? expected.error != null : !error.equals(expected.error)) {
+            return "expected error " + expected.error + ", got " + error;
+        }
+        return null;
+    }
+
+    public void write(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(cycles);
+        out.writeBoolean(error != null);
+        if (error != null) {
+            out.writeUTF(error);
+        }
+        out.writeInt(frames.length);
+        for (int i = 0; i < frames.length; i++) {
+            out.writeLong(frames[i]);
+            out.writeLong(hashes[i]);
+        }
+        out.flush();
+    }
+
+    public static FrameFingerprints read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a frame fingerprint file");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported frame fingerprint version " + version);
+        }
+        long cycles = in.readLong();
+        String error = in.readBoolean() ? in.readUTF() : null;
+        int count = in.readInt();
+        long[] frames = new long[count];
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = in.readLong();
+            hashes[i] = in.readLong();
+        }
+        return new FrameFingerprints(frames, hashes, cycles, error);
+    }
+}
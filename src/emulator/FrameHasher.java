@@ -0,0 +1,74 @@
+package emulator;
+
+import java.util.Arrays;
+
+/**
+ * Frame sink that hashes the display at every frame and keeps one entry each time the hash changes,
+ * giving a compact fingerprint of a run's video output.
+ */
+public class FrameHasher implements FrameSink {
+    private long[] frames = new long[64];
+    private long[] hashes = new long[64];
+    private int size;
+    private long lastHash;
+    private final long[] rows = new long[FrameBuffer.STATE_WORDS];
+
+    @Override
+    public void frameCompleted(long frameNumber, FrameBuffer frameBuffer) {
+        frameBuffer.copyRows(rows);
+        long hash = hash(rows);
+        if (size > 0 && hash == lastHash) {
+            return;
+        }
+        if (size == frames.length) {
+            frames = Arrays.copyOf(frames, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        frames[size] = frameNumber;
+        hashes[size] = hash;
+        size++;
+        lastHash = hash;
+    }
+
+    public FrameFingerprints toFingerprints(long cycles, String error) {
+        return new FrameFingerprints(Arrays.copyOf(frames, size), Arrays.copyOf(hashes, size), cycles, error);
+    }
+
+    public static long hash(FrameBuffer frameBuffer) {
+        long[] rows = new long[FrameBuffer.STATE_WORDS];
+        frameBuffer.copyRows(rows);
+        return hash(rows);
+    }
+
+    /**
+     * Hashes display state words. A low-resolution display that only uses the first plane hashes its 32 rows
+     * alone, so CHIP-8 fingerprints stay the same as before high resolution and planes existed.
+     */
+    public static long hash(long[] rows) {
+        long hash = 0;
+        for (int y = 0; y < FrameBuffer.HEIGHT; y++) {
+            hash = (hash ^ rows[y]) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        boolean extended = rows[FrameBuffer.MODE_WORD] != FrameBuffer.DEFAULT_MODE;
+        for (int index = FrameBuffer.HEIGHT; index < FrameBuffer.MODE_WORD && !extended; index++) {
+            extended = rows[index] != 0;
+        }
+        if (extended) {
+            for (int index = FrameBuffer.HEIGHT; index < FrameBuffer.STATE_WORDS; index++) {
+                hash = (hash ^ rows[index]) * 0x9E3779B97F4A7C15L;
+                hash ^= hash >>> 29;
+            }
+        }
+        return mix(hash);
+    }
+
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
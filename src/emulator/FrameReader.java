@@ -0,0 +1,135 @@
+package emulator;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads back the display changes written by {@link FrameRecorder}, one frame at a time. Recordings made before
+ * high resolution and planes existed, which hold 32 rows, are read as well.
+ */
+public class FrameReader implements Closeable {
+    private final DataInputStream in;
+    private final long[] rows = new long[FrameBuffer.STATE_WORDS];
+    private final short version;
+    private long frameNumber = -1;
+
+    public FrameReader(Path file) throws IOException {
+        this(Files.newInputStream(file));
+    }
+
+    public FrameReader(InputStream input) throws IOException {
+        DataInputStream header = new DataInputStream(input);
+        if (header.readInt() != FrameRecorder.MAGIC) {
+            throw new IOException("Not a frame recording");
+        }
+        version = header.readShort();
+        if (version < 1 || version > FrameRecorder.VERSION) {
+            throw new IOException("Unsupported frame recording version " + version);
+        }
+        in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(input)));
+        // Later versions record the mode word XORed with zero like every other word; version 1 has none.
+        if (version == 1) {
+            rows[FrameBuffer.MODE_WORD] = FrameBuffer.DEFAULT_MODE;
+        }
+    }
+
+    /**
+     * Advances to the next recorded display change. Returns false at the end of the recording.
+     */
+    public boolean next() throws IOException {
+        long number;
+        try {
+            number = in.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (version == 1) {
+            int changed = in.readInt();
+            for (int y = 0; y < FrameBuffer.HEIGHT; y++) {
+                if ((changed & 1 << y) != 0) {
+                    rows[y] ^= in.readLong();
+                }
+            }
+        } else {
+            long[] changed = new long[FrameRecorder.MASK_WORDS];
+            for (int word = 0; word < changed.length; word++) {
+                changed[word] = in.readLong();
+            }
+            for (int index = 0; index < rows.length; index++) {
+                if ((changed[index >> 6] & 1L << index) != 0) {
+                    rows[index] ^= in.readLong();
+                }
+            }
+        }
+        frameNumber = number;
+        return true;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * Display of the current frame, in the layout of {@link FrameBuffer#copyRows(long[])}.
+     */
+    public long[] getRows() {
+        return rows;
+    }
+
+    public BufferedImage toImage(int scale, int foreground, int background) {
+        int width = FrameBuffer.width(rows);
+        int height = FrameBuffer.height(rows);
+        BufferedImage image = new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_RGB);
+        int[] palette = FrameBuffer.palette(foreground, background);
+        int[] pixels = new int[width];
+        for (int y = 0; y < height; y++) {
+            FrameBuffer.rowToPixels(rows, y, pixels, 0, palette);
+            for (int x = 0; x < width; x++) {
+                for (int dy = 0; dy < scale; dy++) {
+                    for (int dx = 0; dx < scale; dx++) {
+                        image.setRGB(x * scale + dx, y * scale + dy, pixels[x]);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: FrameReader <recording> <output directory> [--scale=N]");
+            System.exit(2);
+        }
+        int scale = 4;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--scale=")) {
+                scale = Integer.parseInt(args[i].substring("--scale=".length()));
+            }
+        }
+        Path directory = Files.createDirectories(Paths.get(args[1]));
+        int written = 0;
+        try (FrameReader reader = new FrameReader(Paths.get(args[0]))) {
+            while (reader.next()) {
+                Path file = directory.resolve(String.format("frame_%08d.png", reader.getFrameNumber()));
+                ImageIO.write(reader.toImage(scale, 0xFFFFFF, 0x000000), "png", file.toFile());
+                written++;
+            }
+        }
+        System.out.println("Wrote " + written + " frames to " + directory);
+    }
+}
@@ -0,0 +1,77 @@
+package emulator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Frame sink that streams every display change to a compressed file. Each record holds the frame number,
+ * a mask of the display state words that changed and those words XORed with their previous contents; the
+ * record stream is deflated. Read it back with {@link FrameReader}.
+ */
+public class FrameRecorder implements FrameSink {
+    static final int MAGIC = 0x43384652;
+    static final short VERSION = 2;
+    static final int MASK_WORDS = (FrameBuffer.STATE_WORDS + 63) / 64;
+
+    private final DataOutputStream out;
+    private final long[] previous = new long[FrameBuffer.STATE_WORDS];
+    private final long[] current = new long[FrameBuffer.STATE_WORDS];
+    private final long[] changed = new long[MASK_WORDS];
+    private long frames;
+
+    public FrameRecorder(Path file) throws IOException {
+        this(Files.newOutputStream(file));
+    }
+
+    public FrameRecorder(OutputStream output) throws IOException {
+        DataOutputStream header = new DataOutputStream(output);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.flush();
+        out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(output, new Deflater(Deflater.BEST_SPEED), 8192)));
+    }
+
+    @Override
+    public void frameCompleted(long frameNumber, FrameBuffer frameBuffer) throws IOException {
+        frameBuffer.copyRows(current);
+        boolean any = false;
+        for (int index = 0; index < current.length; index++) {
+            if (current[index] != previous[index]) {
+                changed[index >> 6] |= 1L << index;
+                any = true;
+            }
+        }
+        if (!any && frames > 0) {
+            return;
+        }
+        out.writeLong(frameNumber);
+        for (long mask : changed) {
+            out.writeLong(mask);
+        }
+        for (int index = 0; index < current.length; index++) {
+            if ((changed[index >> 6] & 1L << index) != 0) {
+                out.writeLong(current[index] ^ previous[index]);
+                previous[index] = current[index];
+            }
+        }
+        Arrays.fill(changed, 0);
+        frames++;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,15 @@
+package emulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the display at the end of every scheduler frame, without going through {@link Renderer}.
+ */
+public interface FrameSink extends Closeable {
+    void frameCompleted(long frameNumber, FrameBuffer frameBuffer) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
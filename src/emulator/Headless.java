@@ -0,0 +1,208 @@
+package emulator;
+
+import util.RomUtil;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Headless {
+
+    private static final long DEFAULT_CYCLES = 10_000_000L;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: Headless <rom> [cycles] [--trace=<file>] [--mode=interpreter|block_cache|compiled] [--ips=N] [--seed=N] [--profile=chip8|schip|xo_chip] [--replay=<input log>] [--wav=<file>] [--video=<file>] [--stream=<port>] [--metrics] [--realtime]");
+            System.exit(2);
+        }
+        String romPath = args[0];
+        long cycles = DEFAULT_CYCLES;
+        String tracePath = null;
+        ExecutionMode mode = ExecutionMode.COMPILED;
+        int instructionsPerSecond = CPU.DEFAULT_INSTRUCTIONS_PER_SECOND;
+        boolean ipsSet = false;
+        boolean realtime = false;
+        Long seed = null;
+        String replayPath = null;
+        String wavPath = null;
+        String videoPath = null;
+        Integer streamPort = null;
+        boolean metrics = false;
+        Profile profile = Profile.forFileName(romPath);
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--trace=")) {
+                tracePath = args[i].substring("--trace=".length());
+            } else if (args[i].startsWith("--mode=")) {
+                mode = ExecutionMode.valueOf(args[i].substring("--mode=".length()).toUpperCase());
+            } else if (args[i].startsWith("--ips=")) {
+                instructionsPerSecond = Integer.parseInt(args[i].substring("--ips=".length()));
+                ipsSet = true;
+            } else if (args[i].startsWith("--seed=")) {
+                seed = Long.parseLong(args[i].substring("--seed=".length()));
+            } else if (args[i].startsWith("--profile=")) {
+                profile = Profile.parse(args[i].substring("--profile=".length()));
+            } else if (args[i].startsWith("--replay=")) {
+                replayPath = args[i].substring("--replay=".length());
+            } else if (args[i].startsWith("--wav=")) {
+                wavPath = args[i].substring("--wav=".length());
+            } else if (args[i].startsWith("--video=")) {
+                videoPath = args[i].substring("--video=".length());
+            } else if (args[i].startsWith("--stream=")) {
+                streamPort = Integer.parseInt(args[i].substring("--stream=".length()));
+            } else if (args[i].equals("--metrics")) {
+                metrics = true;
+            } else if (args[i].equals("--realtime")) {
+                realtime = true;
+            } else {
+                cycles = Long.parseLong(args[i]);
+            }
+        }
+
+        if (videoPath != null && streamPort != null) {
+            System.out.println("--video and --stream cannot be combined");
+            System.exit(2);
+        }
+        if (replayPath != null && (seed != null || ipsSet)) {
+            System.out.println("--replay cannot be combined with --seed or --ips, which come from the input log");
+            System.exit(2);
+        }
+
+        CPU cpu;
+        InputLog log = null;
+        try {
+            byte[] romData = RomUtil.LoadRom(romPath);
+            if (replayPath != null) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(replayPath)))) {
+                    log = InputLog.read(in);
+                }
+                seed = log.getSeed();
+                instructionsPerSecond = log.getInstructionsPerSecond();
+            }
+            cpu = new CPU(romData, seed != null ? seed : ThreadLocalRandom.current().nextLong(), profile);
+            if (tracePath != null) {
+                cpu.setTraceRecorder(new TraceRecorder(Paths.get(tracePath), cpu.getProfile()));
+            }
+        } catch (Exception e) {
+            System.out.println("Couldn't initialize emulator");
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+        cpu.setExecutionMode(mode);
+        if (metrics) {
+            cpu.setMetrics(new Metrics());
+        }
+        Scheduler scheduler = new Scheduler(cpu, instructionsPerSecond);
+        scheduler.setThrottled(realtime);
+        if (log != null) {
+            scheduler.setInput(log.getScript());
+        }
+        if (wavPath != null) {
+            try {
+                scheduler.setBeeper(new Beeper(FileAudioSink.wav(Paths.get(wavPath))));
+            } catch (IOException e) {
+                System.out.println("Couldn't open audio file");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        if (videoPath != null) {
+            try {
+                scheduler.setFrameSink(new FrameRecorder(Paths.get(videoPath)));
+            } catch (IOException e) {
+                System.out.println("Couldn't open video file");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        if (streamPort != null) {
+            try {
+                StreamServer server = new StreamServer(streamPort);
+                scheduler.setFrameSink(server);
+                System.out.println("Streaming on port " + server.getPort());
+            } catch (IOException e) {
+                System.out.println("Couldn't start stream server");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            while (cpu.getCycleNumber() < cycles) {
+                scheduler.runFrame();
+                scheduler.awaitNextFrame();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Execution halted unexpectedly");
+            System.out.println(e.getMessage() +
+                    "\nPC: " + String.format("%04X", cpu.getPC()) +
+                    "\nCycle number: " + cpu.getCycleNumber());
+            closeTrace(cpu);
+            closeAudio(scheduler);
+            closeVideo(scheduler);
+            System.exit(1);
+        }
+        closeTrace(cpu);
+        closeAudio(scheduler);
+        closeVideo(scheduler);
+        long elapsed = System.nanoTime() - start;
+
+        printSummary(cpu, scheduler.getFrameNumber(), elapsed);
+        if (cpu.getMetrics() != null) {
+            System.out.println(cpu.getMetrics().snapshot());
+        }
+    }
+
+    private static void closeTrace(CPU cpu) {
+        if (cpu.getTraceRecorder() == null) {
+            return;
+        }
+        try {
+            cpu.getTraceRecorder().close();
+        } catch (IOException e) {
+            System.out.println("Couldn't write trace");
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeAudio(Scheduler scheduler) {
+        if (scheduler.getBeeper() == null) {
+            return;
+        }
+        try {
+            scheduler.getBeeper().getSink().close();
+        } catch (IOException e) {
+            System.out.println("Couldn't write audio");
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeVideo(Scheduler scheduler) {
+        if (scheduler.getFrameSink() == null) {
+            return;
+        }
+        try {
+            scheduler.getFrameSink().close();
+        } catch (IOException e) {
+            System.out.println("Couldn't write video");
+            e.printStackTrace();
+        }
+    }
+
+    private static void printSummary(CPU cpu, long frames, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.println("Executed " + cpu.getCycleNumber() + " cycles (" + frames + " frames) in " + String.format("%.3f", seconds) + " s" +
+                " (" + String.format("%.0f", cpu.getCycleNumber() / seconds) + " instructions/s)");
+        System.out.println("PC: " + String.format("%04X", cpu.getPC()) + " I: " + String.format("%04X", cpu.getI()) +
+                " DT: " + String.format("%02X", cpu.getDT()) + " ST: " + String.format("%02X", cpu.getST()));
+        StringBuilder registers = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            registers.append(String.format("V%X: %02X ", i, cpu.getRegister(i)));
+        }
+        System.out.println(registers.toString().trim());
+    }
+}
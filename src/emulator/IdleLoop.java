@@ -0,0 +1,84 @@
+package emulator;
+
+import util.CpuUtil;
+
+/**
+ * Recognizes the busy-wait loops programs spin in while nothing but the clock can change their outcome:
+ * a jump to itself, a key poll ({@code EX9E}/{@code EXA1} followed by a jump back) and a delay timer poll
+ * ({@code FX07}, {@code 3XNN}/{@code 4XNN} on the same register, then a jump back). Detection is purely static;
+ * the CPU confirms at run time that the loop would keep spinning before it fast-forwards over it.
+ */
+final class IdleLoop {
+    static final int NONE = 0;
+    static final int SELF_JUMP = 1;
+    static final int KEY_WAIT = 2;
+    static final int TIMER_WAIT = 3;
+
+    private IdleLoop() {
+    }
+
+    /**
+     * Kind of wait loop starting at pc, decoding with the given profile's table.
+     */
+    static int detect(byte[] mem, int pc, int[] decodeTable) {
+        int first = opAt(mem, pc, decodeTable);
+        if (isJumpTo(first, pc)) {
+            return SELF_JUMP;
+        }
+        int handler = Decoder.handler(first);
+        if (isKeySkip(handler) && isJumpTo(opAt(mem, pc + 2, decodeTable), pc)) {
+            return KEY_WAIT;
+        }
+        if (handler == Decoder.LDRDT) {
+            int compare = opAt(mem, pc + 2, decodeTable);
+            int compareHandler = Decoder.handler(compare);
+            if ((compareHandler == Decoder.SE_N || compareHandler == Decoder.SNE_N)
+                    && Decoder.x(compare) == Decoder.x(first) && isJumpTo(opAt(mem, pc + 4, decodeTable), pc)) {
+                return TIMER_WAIT;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Number of bytes the loop occupies, starting at its first instruction.
+     */
+    static int length(int kind) {
+        switch (kind) {
+            case SELF_JUMP:
+                return 2;
+            case KEY_WAIT:
+                return 4;
+            case TIMER_WAIT:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Whether a key poll skips when the key is down: EX9E in any profile.
+     */
+    static boolean skipsIfPressed(int handler) {
+        return handler == Decoder.SKP || handler == Decoder.SKP_M;
+    }
+
+    private static boolean isKeySkip(int handler) {
+        return skipsIfPressed(handler) || handler == Decoder.SKNP || handler == Decoder.SKNP_M;
+    }
+
+    static int opAt(byte[] mem, int address) {
+        return opAt(mem, address, Decoder.table(Profile.CHIP8));
+    }
+
+    static int opAt(byte[] mem, int address, int[] decodeTable) {
+        if (address < 0 || address + 1 >= mem.length) {
+            return Decoder.UNKNOWN;
+        }
+        return decodeTable[CpuUtil.shortFromBytes(mem[address], mem[address + 1]) & 0xFFFF];
+    }
+
+    private static boolean isJumpTo(int op, int target) {
+        return Decoder.handler(op) == Decoder.JMP && Decoder.nnn(op) == target;
+    }
+}
@@ -0,0 +1,73 @@
+package emulator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Everything needed to reproduce a run besides the ROM: the random seed, the instruction rate that drives
+ * the timers and the cycle-stamped key events.
+ */
+public final class InputLog {
+    static final int MAGIC = 0x4338494C;
+    static final short VERSION = 1;
+
+    private final long seed;
+    private final int instructionsPerSecond;
+    private final InputScript script;
+
+    public InputLog(long seed, int instructionsPerSecond, InputScript script) {
+        this.seed = seed;
+        this.instructionsPerSecond = instructionsPerSecond;
+        this.script = script;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    public InputScript getScript() {
+        return script;
+    }
+
+    public void write(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(seed);
+        out.writeInt(instructionsPerSecond);
+        out.writeInt(script.size());
+        for (int i = 0; i < script.size(); i++) {
+            out.writeLong(script.cycleAt(i));
+            out.writeByte(script.keyAt(i) | (script.isPressAt(i) ? 0x80 : 0));
+        }
+        out.flush();
+    }
+
+    public static InputLog read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an input log");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported input log version " + version);
+        }
+        long seed = in.readLong();
+        int instructionsPerSecond = in.readInt();
+        int events = in.readInt();
+        InputScript.Builder builder = InputScript.builder();
+        for (int i = 0; i < events; i++) {
+            long cycle = in.readLong();
+            int event = in.readUnsignedByte();
+            builder.add(cycle, event & 0x0F, (event & 0x80) != 0);
+        }
+        return new InputLog(seed, instructionsPerSecond, builder.build());
+    }
+}
@@ -0,0 +1,151 @@
+package emulator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer queue of key events stamped with System.nanoTime(). The UI
+ * thread offers events through the Keypad interface and the emulation thread drains them into its own
+ * Keypad between cycles, either all at once or one at a time through {@link LiveInput}. Events offered while the queue is full are dropped and counted.
+ */
+public class InputQueue implements Keypad {
+    private static final byte PRESSED = (byte) 0x80;
+
+    private final long[] times;
+    private final byte[] events;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long cachedHead;
+    private volatile long dropped;
+    private volatile long applied;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+
+    public InputQueue() {
+        this(256);
+    }
+
+    public InputQueue(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        times = new long[capacity];
+        events = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    @Override
+    public void keyPressed(int key) {
+        offer(key, true);
+    }
+
+    @Override
+    public void keyReleased(int key) {
+        offer(key, false);
+    }
+
+    /**
+     * Producer side. Returns false if the queue was full and the event was dropped.
+     */
+    public boolean offer(int key, boolean pressed) {
+        long t = tail.get();
+        if (t - cachedHead == times.length) {
+            cachedHead = head.get();
+            if (t - cachedHead == times.length) {
+                dropped++;
+                return false;
+            }
+        }
+        int slot = (int) t & mask;
+        times[slot] = System.nanoTime();
+        events[slot] = (byte) (pressed ? key | PRESSED : key & ~PRESSED);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side. Applies every queued event to the keypad in order and returns how many there were.
+     */
+    public int drain(Keypad keypad) {
+        long h = head.get();
+        long t = tail.get();
+        if (h == t) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long total = totalLatencyNanos;
+        long max = maxLatencyNanos;
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            byte event = events[slot];
+            long latency = now - times[slot];
+            total += latency;
+            max = Math.max(max, latency);
+            apply(keypad, event);
+        }
+        head.lazySet(t);
+        totalLatencyNanos = total;
+        maxLatencyNanos = max;
+        applied += t - h;
+        return (int) (t - h);
+    }
+
+    /**
+     * Consumer side. Returns when the oldest queued event was offered, in System.nanoTime() terms; only
+     * meaningful while {@link #size()} is positive.
+     */
+    public long peekTime() {
+        return times[(int) head.get() & mask];
+    }
+
+    /**
+     * Consumer side. Applies the oldest queued event to the keypad and returns false if there was none.
+     */
+    public boolean poll(Keypad keypad) {
+        long h = head.get();
+        if (h == tail.get()) {
+            return false;
+        }
+        int slot = (int) h & mask;
+        byte event = events[slot];
+        long latency = System.nanoTime() - times[slot];
+        head.lazySet(h + 1);
+        totalLatencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        applied++;
+        apply(keypad, event);
+        return true;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    public long getAppliedCount() {
+        return applied;
+    }
+
+    /**
+     * Mean time between an event being offered and being applied, in nanoseconds.
+     */
+    public long getAverageLatencyNanos() {
+        long count = applied;
+        return count == 0 ? 0 : totalLatencyNanos / count;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    private static void apply(Keypad keypad, byte event) {
+        if ((event & PRESSED) != 0) {
+            keypad.keyPressed(event & ~PRESSED);
+        } else {
+            keypad.keyReleased(event);
+        }
+    }
+}
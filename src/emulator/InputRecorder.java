@@ -0,0 +1,41 @@
+package emulator;
+
+/**
+ * Keypad that forwards key events to a CPU and stamps each one with the CPU's cycle count.
+ */
+public class InputRecorder implements Keypad {
+    private final CPU cpu;
+    private final InputScript.Builder events = InputScript.builder();
+
+    public InputRecorder(CPU cpu) {
+        this.cpu = cpu;
+    }
+
+    @Override
+    public void keyPressed(int key) {
+        if (key >= 0 && key < KEY_COUNT) {
+            events.press(cpu.getCycleNumber(), key);
+        }
+        cpu.keyPressed(key);
+    }
+
+    @Override
+    public void keyReleased(int key) {
+        if (key >= 0 && key < KEY_COUNT) {
+            events.release(cpu.getCycleNumber(), key);
+        }
+        cpu.keyReleased(key);
+    }
+
+    /**
+     * Forgets the events stamped at or after the given cycle. Call it once the CPU has been moved back to that
+     * cycle, as a rewind does: the restored state does not include those events, so a replay must not apply them.
+     */
+    public void truncate(long cycle) {
+        events.truncate(cycle);
+    }
+
+    public InputLog toLog() {
+        return new InputLog(cpu.getSeed(), cpu.getInstructionsPerSecond(), events.build());
+    }
+}
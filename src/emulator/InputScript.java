@@ -0,0 +1,122 @@
+package emulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable sequence of key events stamped with the cycle count at which they take effect. An event stamped
+ * with cycle N is applied after the CPU has executed N cycles and before it executes cycle N + 1.
+ */
+public final class InputScript {
+    public static final InputScript EMPTY = new InputScript(new long[0], new byte[0], new boolean[0]);
+
+    private final long[] cycles;
+    private final byte[] keys;
+    private final boolean[] pressed;
+
+    private InputScript(long[] cycles, byte[] keys, boolean[] pressed) {
+        this.cycles = cycles;
+        this.keys = keys;
+        this.pressed = pressed;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return cycles.length;
+    }
+
+    public long cycleAt(int index) {
+        return cycles[index];
+    }
+
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    public boolean isPressAt(int index) {
+        return pressed[index];
+    }
+
+    /**
+     * Runs the CPU up to the given cycle count, applying every event stamped within that range on the way.
+     */
+    public void run(CPU cpu, long endCycle) throws RuntimeException {
+        int index = firstEventAtOrAfter(cpu.getCycleNumber());
+        while (index < cycles.length && cycles[index] <= endCycle) {
+            cpu.runCycles(cycles[index] - cpu.getCycleNumber());
+            apply(cpu, index++);
+        }
+        cpu.runCycles(endCycle - cpu.getCycleNumber());
+    }
+
+    public int firstEventAtOrAfter(long cycle) {
+        int index = Arrays.binarySearch(cycles, cycle);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && cycles[index - 1] == cycle) {
+            index--;
+        }
+        return index;
+    }
+
+    void apply(Keypad keypad, int index) {
+        if (pressed[index]) {
+            keypad.keyPressed(keys[index]);
+        } else {
+            keypad.keyReleased(keys[index]);
+        }
+    }
+
+    public static final class Builder {
+        private final List<long[]> events = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder press(long cycle, int key) {
+            return add(cycle, key, true);
+        }
+
+        public Builder release(long cycle, int key) {
+            return add(cycle, key, false);
+        }
+
+        public Builder add(long cycle, int key, boolean press) {
+            if (cycle < 0) {
+                throw new IllegalArgumentException("Negative cycle " + cycle);
+            }
+            if (key < 0 || key >= Keypad.KEY_COUNT) {
+                throw new IllegalArgumentException("Invalid key " + key);
+            }
+            events.add(new long[]{cycle, key, press ? 1 : 0});
+            return this;
+        }
+
+        /**
+         * Drops the events added for the given cycle or later.
+         */
+        public Builder truncate(long cycle) {
+            events.removeIf(event -> event[0] >= cycle);
+            return this;
+        }
+
+        public InputScript build() {
+            long[][] sorted = events.toArray(new long[0][]);
+            Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+            long[] cycles = new long[sorted.length];
+            byte[] keys = new byte[sorted.length];
+            boolean[] pressed = new boolean[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                cycles[i] = sorted[i][0];
+                keys[i] = (byte) sorted[i][1];
+                pressed[i] = sorted[i][2] == 1;
+            }
+            return new InputScript(cycles, keys, pressed);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package emulator;
+
+import javafx.scene.input.KeyCode;
+
+import java.util.Arrays;
+
+public final class KeyMap {
+    private static final byte[] buttonMap = new byte[KeyCode.values().length];
+
+    static {
+        Arrays.fill(buttonMap, (byte) -1);
+        map(KeyCode.DIGIT1, 0x1);
+        map(KeyCode.DIGIT2, 0x2);
+        map(KeyCode.DIGIT3, 0x3);
+        map(KeyCode.DIGIT4, 0xC);
+        map(KeyCode.Q, 0x4);
+        map(KeyCode.W, 0x5);
+        map(KeyCode.E, 0x6);
+        map(KeyCode.R, 0xD);
+        map(KeyCode.A, 0x7);
+        map(KeyCode.S, 0x8);
+        map(KeyCode.D, 0x9);
+        map(KeyCode.F, 0xE);
+        map(KeyCode.Z, 0xA);
+        map(KeyCode.X, 0x0);
+        map(KeyCode.C, 0xB);
+        map(KeyCode.V, 0xF);
+    }
+
+    private KeyMap() {
+    }
+
+    private static void map(KeyCode keyCode, int key) {
+        buttonMap[keyCode.ordinal()] = (byte) key;
+    }
+
+    public static int keyFor(KeyCode keyCode) {
+        return buttonMap[keyCode.ordinal()];
+    }
+
+    public static void keyPressed(Keypad keypad, KeyCode keyCode) {
+        int key = keyFor(keyCode);
+        if (key >= 0) {
+            keypad.keyPressed(key);
+        }
+    }
+
+    public static void keyReleased(Keypad keypad, KeyCode keyCode) {
+        int key = keyFor(keyCode);
+        if (key >= 0) {
+            keypad.keyReleased(key);
+        }
+    }
+}
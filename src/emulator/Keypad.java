@@ -0,0 +1,9 @@
+package emulator;
+
+public interface Keypad {
+    int KEY_COUNT = 16;
+
+    void keyPressed(int key);
+
+    void keyReleased(int key);
+}
@@ -0,0 +1,74 @@
+package emulator;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative durations in nanoseconds. Each power of two is split into 16 buckets,
+ * so recorded values are kept to within about 6% with a fixed array and no allocation.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long max;
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucket(value)]++;
+        total++;
+        max = Math.max(max, value);
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile (0-100), or 0 if nothing was recorded.
+     */
+    public long percentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        max = 0;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) << SUB_BUCKET_BITS | (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        long lower = (long) (bucket & (SUB_BUCKETS - 1) | SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
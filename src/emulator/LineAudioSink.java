@@ -0,0 +1,35 @@
+package emulator;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays PCM through a {@code javax.sound.sampled} line with a buffer of a few frames. Writes never block the
+ * caller; when the line is that far behind, the excess samples are dropped.
+ */
+public class LineAudioSink implements AudioSink {
+    private static final int BUFFERED_FRAMES = 4;
+
+    private final SourceDataLine line;
+
+    public LineAudioSink() throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(Beeper.SAMPLE_RATE, 16, 1, true, false);
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, Beeper.SAMPLE_RATE / Scheduler.FRAME_RATE * Beeper.BYTES_PER_SAMPLE * BUFFERED_FRAMES);
+        line.start();
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) {
+        int writable = Math.min(length, line.available());
+        line.write(buffer, 0, writable - writable % Beeper.BYTES_PER_SAMPLE);
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+}
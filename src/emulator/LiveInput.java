@@ -0,0 +1,107 @@
+package emulator;
+
+import java.util.Arrays;
+
+/**
+ * Applies key events from an {@link InputQueue} to a keypad at the cycles that match when they arrived. Each
+ * run covers the wall-clock time since the previous one, and an event offered partway through that time is
+ * applied the same fraction of the way through the run's cycles, so presses and releases keep their order and
+ * spacing instead of landing together between frames. A release that would end a press less than a frame's
+ * worth of cycles after it began is held back until then, so a tap shorter than a frame is still seen by a
+ * program that polls the key once per frame.
+ */
+public class LiveInput {
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final InputQueue queue;
+    private final Keypad keypad;
+    private final Keypad latch = new Latch();
+    private final long[] pressedAt = new long[Keypad.KEY_COUNT];
+    private final long[] releaseAt = new long[Keypad.KEY_COUNT];
+    private CPU cpu;
+    private long lastRun;
+    private boolean started;
+
+    public LiveInput(InputQueue queue, Keypad keypad) {
+        this.queue = queue;
+        this.keypad = keypad;
+        Arrays.fill(pressedAt, NONE);
+        Arrays.fill(releaseAt, NONE);
+    }
+
+    /**
+     * Runs the CPU up to the given cycle count, applying the events offered since the previous run and any
+     * held-back releases that fall due on the way.
+     */
+    public void run(CPU cpu, long endCycle) throws RuntimeException {
+        this.cpu = cpu;
+        long now = System.nanoTime();
+        long window = started ? now - lastRun : 0;
+        lastRun = now;
+        started = true;
+        long start = cpu.getCycleNumber();
+        long cycles = endCycle - start;
+        while (true) {
+            long next = endCycle;
+            boolean event = queue.size() > 0 && queue.peekTime() - now <= 0;
+            if (event) {
+                long offset = Math.max(0, Math.min(window, queue.peekTime() - (now - window)));
+                next = Math.min(next, start + (window == 0 ? 0 : offset * cycles / window));
+            }
+            int release = -1;
+            for (int key = 0; key < Keypad.KEY_COUNT; key++) {
+                if (releaseAt[key] != NONE && releaseAt[key] <= next) {
+                    next = releaseAt[key];
+                    release = key;
+                }
+            }
+            cpu.runCycles(Math.max(0, next - cpu.getCycleNumber()));
+            if (release >= 0) {
+                releaseAt[release] = NONE;
+                keypad.keyReleased(release);
+            } else if (event) {
+                queue.poll(latch);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies every held-back release and queued event right away, for when the CPU is about to jump to
+     * another cycle.
+     */
+    public void flush() {
+        for (int key = 0; key < Keypad.KEY_COUNT; key++) {
+            if (releaseAt[key] != NONE) {
+                releaseAt[key] = NONE;
+                keypad.keyReleased(key);
+            }
+        }
+        queue.drain(keypad);
+        Arrays.fill(pressedAt, NONE);
+        lastRun = System.nanoTime();
+    }
+
+    /**
+     * Forwards events to the keypad, holding back releases that come less than a frame after their press.
+     */
+    private final class Latch implements Keypad {
+        @Override
+        public void keyPressed(int key) {
+            pressedAt[key] = cpu.getCycleNumber();
+            releaseAt[key] = NONE;
+            keypad.keyPressed(key);
+        }
+
+        @Override
+        public void keyReleased(int key) {
+            long frame = Math.max(1, cpu.getInstructionsPerSecond() / Scheduler.FRAME_RATE);
+            if (pressedAt[key] != NONE && cpu.getCycleNumber() < pressedAt[key] + frame) {
+                releaseAt[key] = pressedAt[key] + frame;
+            } else {
+                keypad.keyReleased(key);
+            }
+        }
+    }
+}
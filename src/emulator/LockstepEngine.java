@@ -0,0 +1,824 @@
+package emulator;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import util.CpuUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs many instances of one ROM in lockstep, with machine state stored as struct-of-arrays lanes.
+ * Instances that share a PC form a group that fetches and decodes once per cycle. In groups large enough to
+ * pay for a masked pass over every lane, register arithmetic, immediate loads and compares run with the Vector
+ * API; smaller groups, such as lanes that diverged on their own, run them lane by lane like everything else.
+ * Groups split when lanes branch differently and merge again when their PCs meet. Lane {@code i} behaves
+ * like {@code new CPU(rom, seeds[i])}.
+ * Requires {@code --add-modules jdk.incubator.vector}.
+ */
+public class LockstepEngine {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    /**
+     * About how many scalar lane updates one masked vector step costs. Groups with fewer members than a full
+     * masked pass would cost run their register operations lane by lane instead.
+     */
+    private static final int VECTOR_PASS_COST = 16;
+
+    private final int instances;
+    private final int lanes;
+    private final int memoryLength;
+    private final byte[][] v = new byte[16][];
+    private final short[] index;
+    private final byte[] dt;
+    private final byte[] st;
+    private final short[] pc;
+    private final short[][] stacks;
+    private final int[] stackPointers;
+    private final byte[][] mem;
+    private final boolean[] written;
+    private final FrameBuffer[] frames;
+    private final boolean[][] buttonStatus;
+    private final boolean[] waitingForKey;
+    private final byte[] waitingForKeyReg;
+    private final boolean[] alive;
+    private final String[] errors;
+    private final SeededRandom[] random;
+    private final boolean[] condition;
+    private final List<Group> groups = new ArrayList<>();
+    private final ArrayDeque<Group> spare = new ArrayDeque<>();
+    private final Group[] owner;
+    private final int[] slot;
+    private final int vectorThreshold;
+    private final int[] mergeStamps;
+    private final int[] mergeSlots;
+    private int mergeEpoch;
+    private int instructionsPerSecond = CPU.DEFAULT_INSTRUCTIONS_PER_SECOND;
+    private int timerPhase;
+    private long cycleNumber;
+
+    public LockstepEngine(byte[] romData, long[] seeds) {
+        instances = seeds.length;
+        lanes = SPECIES.loopBound(instances + SPECIES.length() - 1);
+        CPU reset = new CPU(romData);
+        byte[] image = new byte[reset.getMemorySize()];
+        reset.copyMemory(image);
+        memoryLength = image.length;
+
+        for (int r = 0; r < 16; r++) {
+            v[r] = new byte[lanes];
+        }
+        index = new short[lanes];
+        dt = new byte[lanes];
+        st = new byte[lanes];
+        pc = new short[lanes];
+        stacks = new short[instances][CPU.STACK_DEPTH];
+        stackPointers = new int[instances];
+        mem = new byte[instances][];
+        written = new boolean[memoryLength];
+        frames = new FrameBuffer[instances];
+        buttonStatus = new boolean[instances][Keypad.KEY_COUNT];
+        waitingForKey = new boolean[instances];
+        waitingForKeyReg = new byte[instances];
+        alive = new boolean[lanes];
+        errors = new String[instances];
+        random = new SeededRandom[instances];
+        condition = new boolean[lanes];
+        owner = new Group[instances];
+        slot = new int[instances];
+        vectorThreshold = Math.max(2, lanes / SPECIES.length() * VECTOR_PASS_COST);
+        mergeStamps = new int[memoryLength];
+        mergeSlots = new int[memoryLength];
+
+        Group all = new Group((short) 0x200);
+        for (int lane = 0; lane < instances; lane++) {
+            mem[lane] = image.clone();
+            frames[lane] = new FrameBuffer();
+            random[lane] = new SeededRandom(seeds[lane]);
+            alive[lane] = true;
+            all.add(lane);
+        }
+        groups.add(all);
+    }
+
+    public void setInstructionsPerSecond(int instructionsPerSecond) {
+        if (instructionsPerSecond < CPU.TIMER_FREQUENCY) {
+            throw new IllegalArgumentException("At least " + CPU.TIMER_FREQUENCY + " instructions per second are required");
+        }
+        this.instructionsPerSecond = instructionsPerSecond;
+        timerPhase = 0;
+    }
+
+    public void runCycles(long cycles) {
+        for (long c = 0; c < cycles; c++) {
+            cycleNumber++;
+            updateTimers();
+            for (int g = 0, count = groups.size(); g < count; g++) {
+                Group group = groups.get(g);
+                if (group.count > 0) {
+                    execute(group);
+                }
+            }
+            mergeGroups();
+        }
+    }
+
+    /**
+     * Runs every lane to the given cycle, applying each lane's own input script on the way.
+     */
+    public void run(InputScript[] scripts, long endCycle) {
+        int[] next = new int[instances];
+        for (int lane = 0; lane < instances; lane++) {
+            next[lane] = scripts[lane].firstEventAtOrAfter(cycleNumber);
+        }
+        while (true) {
+            long eventCycle = endCycle + 1;
+            for (int lane = 0; lane < instances; lane++) {
+                if (next[lane] < scripts[lane].size()) {
+                    eventCycle = Math.min(eventCycle, scripts[lane].cycleAt(next[lane]));
+                }
+            }
+            if (eventCycle > endCycle) {
+                break;
+            }
+            runCycles(eventCycle - cycleNumber);
+            for (int lane = 0; lane < instances; lane++) {
+                InputScript script = scripts[lane];
+                while (next[lane] < script.size() && script.cycleAt(next[lane]) == eventCycle) {
+                    int event = next[lane]++;
+                    if (script.isPressAt(event)) {
+                        keyPressed(lane, script.keyAt(event));
+                    } else {
+                        keyReleased(lane, script.keyAt(event));
+                    }
+                }
+            }
+        }
+        runCycles(endCycle - cycleNumber);
+    }
+
+    private void updateTimers() {
+        timerPhase += CPU.TIMER_FREQUENCY;
+        if (timerPhase < instructionsPerSecond) {
+            return;
+        }
+        timerPhase -= instructionsPerSecond;
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> live = VectorMask.fromArray(SPECIES, alive, i);
+            ByteVector.fromArray(SPECIES, dt, i).sub((byte) 1, live).max((byte) 0).intoArray(dt, i, live);
+            ByteVector.fromArray(SPECIES, st, i).sub((byte) 1, live).max((byte) 0).intoArray(st, i, live);
+        }
+    }
+
+    private void execute(Group group) {
+        short p = group.pc;
+        if (p + 1 >= memoryLength) {
+            haltGroup(group, "PC outside memory range");
+            return;
+        }
+        if (p < 0) {
+            haltGroup(group, "Index " + p + " out of bounds for length " + memoryLength);
+            return;
+        }
+        int leader = group.members[0];
+        short opcode = CpuUtil.shortFromBytes(mem[leader][p], mem[leader][p + 1]);
+        Group diverged = null;
+        if (written[p] || written[p + 1]) {
+            diverged = splitByOpcode(group, leader, p);
+        }
+
+        int op = Decoder.decode(opcode);
+        byte x = Decoder.x(op);
+        byte y = Decoder.y(op);
+        switch (Decoder.handler(op)) {
+            case Decoder.CLS:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    frames[lane].clear();
+                }
+                break;
+            case Decoder.RET:
+                RET(group);
+                break;
+            case Decoder.JMP:
+                group.pc = (short) (Decoder.nnn(op) - 2);
+                break;
+            case Decoder.CALL:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    if (stackPointers[lane] == CPU.STACK_DEPTH) {
+                        halt(group, lane, "Stack overflow");
+                    } else {
+                        stacks[lane][stackPointers[lane]++] = (short) (p + 2);
+                    }
+                }
+                group.pc = (short) (Decoder.nnn(op) - 2);
+                break;
+            case Decoder.SE_N:
+                skipIf(group, x, Decoder.nn(op), VectorOperators.EQ);
+                break;
+            case Decoder.SNE_N:
+                skipIf(group, x, Decoder.nn(op), VectorOperators.NE);
+                break;
+            case Decoder.LD_N:
+                LD_N(group, x, Decoder.nn(op));
+                break;
+            case Decoder.ADD_N:
+                ADD_N(group, x, Decoder.nn(op));
+                break;
+            case Decoder.LD_R:
+                LD_R(group, x, y);
+                break;
+            case Decoder.AND:
+                AND(group, x, y);
+                break;
+            case Decoder.ADD:
+                ADD(group, x, y);
+                break;
+            case Decoder.SUB_R:
+                SUB_R(group, x, y);
+                break;
+            case Decoder.SNE_R:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    condition[lane] = mem[lane][x] != mem[lane][y];
+                }
+                skipWhere(group);
+                break;
+            case Decoder.LDI:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    index[lane] = Decoder.nnn(op);
+                }
+                break;
+            case Decoder.RND:
+                RND(group, x, Decoder.nn(op));
+                break;
+            case Decoder.DRW:
+                DRW(group, x, y, Decoder.n(op));
+                break;
+            case Decoder.SKP:
+            case Decoder.SKNP:
+                boolean pressed = Decoder.handler(op) == Decoder.SKP;
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    int key = v[x][lane];
+                    if (key < 0 || key >= Keypad.KEY_COUNT) {
+                        halt(group, lane, "Index " + key + " out of bounds for length " + Keypad.KEY_COUNT);
+                    } else {
+                        condition[lane] = buttonStatus[lane][key] == pressed;
+                    }
+                }
+                skipWhere(group);
+                break;
+            case Decoder.LDRDT:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    v[x][lane] = dt[lane];
+                }
+                break;
+            case Decoder.LDK:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    waitingForKey[lane] = true;
+                    waitingForKeyReg[lane] = x;
+                    pc[lane] = (short) (p + 2);
+                }
+                group.clear();
+                break;
+            case Decoder.LDDT:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    dt[lane] = v[x][lane];
+                }
+                break;
+            case Decoder.LDST:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    st[lane] = v[x][lane];
+                }
+                break;
+            case Decoder.ADD_I:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    index[lane] += v[x][lane];
+                }
+                break;
+            case Decoder.LDF:
+                for (int k = group.count - 1; k >= 0; k--) {
+                    int lane = group.members[k];
+                    index[lane] = (short) (v[x][lane] * 5);
+                }
+                break;
+            case Decoder.LDB:
+                LDB(group, x);
+                break;
+            case Decoder.LDR:
+                LDR(group, x);
+                break;
+            case Decoder.STR:
+                STR(group, x);
+                break;
+            default:
+                haltGroup(group, "Unknown opcode " + String.format("%04X", opcode));
+        }
+        group.pc += 2;
+
+        if (diverged != null) {
+            execute(diverged);
+        }
+    }
+
+    private Group splitByOpcode(Group group, int leader, int p) {
+        Group diverged = null;
+        for (int k = group.count - 1; k > 0; k--) {
+            int lane = group.members[k];
+            if (mem[lane][p] != mem[leader][p] || mem[lane][p + 1] != mem[leader][p + 1]) {
+                group.remove(lane);
+                if (diverged == null) {
+                    diverged = newGroup(group.pc);
+                }
+                diverged.add(lane);
+            }
+        }
+        return diverged;
+    }
+
+    //3XNN, 4XNN
+    private void skipIf(Group group, byte x, byte value, VectorOperators.Comparison comparison) {
+        if (!group.isVector()) {
+            boolean equal = comparison == VectorOperators.EQ;
+            for (int k = group.count - 1; k >= 0; k--) {
+                int lane = group.members[k];
+                condition[lane] = (v[x][lane] == value) == equal;
+            }
+            skipWhere(group);
+            return;
+        }
+        int taken = 0;
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> members = VectorMask.fromArray(SPECIES, group.mask, i);
+            VectorMask<Byte> skip = ByteVector.fromArray(SPECIES, v[x], i).compare(comparison, value, members);
+            skip.intoArray(condition, i);
+            taken += skip.trueCount();
+        }
+        skip(group, taken);
+    }
+
+    private void skipWhere(Group group) {
+        int taken = 0;
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            if (condition[lane]) {
+                taken++;
+            }
+        }
+        skip(group, taken);
+    }
+
+    private void skip(Group group, int taken) {
+        if (taken == 0) {
+            return;
+        }
+        if (taken == group.count) {
+            group.pc += 2;
+            return;
+        }
+        boolean moveTaken = 2 * taken <= group.count;
+        Group moved = newGroup((short) (group.pc + (moveTaken ? 4 : 2)));
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            if (condition[lane] == moveTaken) {
+                group.remove(lane);
+                moved.add(lane);
+            }
+        }
+        if (!moveTaken) {
+            group.pc += 2;
+        }
+    }
+
+    /**
+     * Returns an empty group at the given PC, reusing one dropped by {@link #mergeGroups()} when possible, and
+     * adds it to the groups run this cycle.
+     */
+    private Group newGroup(short pc) {
+        Group group = spare.isEmpty() ? new Group(pc) : spare.pop();
+        group.pc = pc;
+        groups.add(group);
+        return group;
+    }
+
+    //00EE
+    private void RET(Group group) {
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            if (stackPointers[lane] == 0) {
+                halt(group, lane, "Stack underflow");
+                continue;
+            }
+            pc[lane] = (short) (stacks[lane][--stackPointers[lane]] - 2);
+            if (pc[lane] < 0) {
+                group.remove(lane);
+                halt(group, lane, "PC is negative");
+            }
+        }
+        if (group.count == 0) {
+            return;
+        }
+        group.pc = pc[group.members[0]];
+        for (int k = group.count - 1; k > 0; k--) {
+            int lane = group.members[k];
+            if (pc[lane] != group.pc) {
+                group.remove(lane);
+                Group target = newGroup((short) (pc[lane] + 2));
+                target.add(lane);
+            }
+        }
+    }
+
+    //6XNN
+    private void LD_N(Group group, byte x, byte value) {
+        if (!group.isVector()) {
+            for (int k = group.count - 1; k >= 0; k--) {
+                v[x][group.members[k]] = value;
+            }
+            return;
+        }
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> members = VectorMask.fromArray(SPECIES, group.mask, i);
+            ByteVector.broadcast(SPECIES, value).intoArray(v[x], i, members);
+        }
+    }
+
+    //7XNN
+    private void ADD_N(Group group, byte x, byte value) {
+        if (!group.isVector()) {
+            for (int k = group.count - 1; k >= 0; k--) {
+                v[x][group.members[k]] += value;
+            }
+            return;
+        }
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> members = VectorMask.fromArray(SPECIES, group.mask, i);
+            ByteVector.fromArray(SPECIES, v[x], i).add(value).intoArray(v[x], i, members);
+        }
+    }
+
+    //8XY0
+    private void LD_R(Group group, byte x, byte y) {
+        if (!group.isVector()) {
+            for (int k = group.count - 1; k >= 0; k--) {
+                int lane = group.members[k];
+                v[x][lane] = v[y][lane];
+            }
+            return;
+        }
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> members = VectorMask.fromArray(SPECIES, group.mask, i);
+            ByteVector.fromArray(SPECIES, v[y], i).intoArray(v[x], i, members);
+        }
+    }
+
+    //8XY2
+    private void AND(Group group, byte x, byte y) {
+        if (!group.isVector()) {
+            for (int k = group.count - 1; k >= 0; k--) {
+                int lane = group.members[k];
+                v[x][lane] &= v[y][lane];
+            }
+            return;
+        }
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> members = VectorMask.fromArray(SPECIES, group.mask, i);
+            ByteVector.fromArray(SPECIES, v[x], i).and(ByteVector.fromArray(SPECIES, v[y], i))
+                    .intoArray(v[x], i, members);
+        }
+    }
+
+    //8XY4: VX + VY never exceeds 255 for signed bytes, so VF is always cleared, and VY % 255 == VY
+    private void ADD(Group group, byte x, byte y) {
+        if (!group.isVector()) {
+            for (int k = group.count - 1; k >= 0; k--) {
+                int lane = group.members[k];
+                v[0xF][lane] = 0;
+                v[x][lane] += v[y][lane];
+            }
+            return;
+        }
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> members = VectorMask.fromArray(SPECIES, group.mask, i);
+            ByteVector.zero(SPECIES).intoArray(v[0xF], i, members);
+            ByteVector.fromArray(SPECIES, v[x], i).add(ByteVector.fromArray(SPECIES, v[y], i))
+                    .intoArray(v[x], i, members);
+        }
+    }
+
+    //8XY5
+    private void SUB_R(Group group, byte x, byte y) {
+        if (!group.isVector()) {
+            for (int k = group.count - 1; k >= 0; k--) {
+                int lane = group.members[k];
+                v[0xF][lane] = (byte) (v[x][lane] < v[y][lane] ? 0 : 1);
+                v[x][lane] -= v[y][lane];
+            }
+            return;
+        }
+        for (int i = 0; i < lanes; i += SPECIES.length()) {
+            VectorMask<Byte> members = VectorMask.fromArray(SPECIES, group.mask, i);
+            VectorMask<Byte> borrow = ByteVector.fromArray(SPECIES, v[x], i)
+                    .compare(VectorOperators.LT, ByteVector.fromArray(SPECIES, v[y], i));
+            ByteVector.broadcast(SPECIES, (byte) 1).blend((byte) 0, borrow).intoArray(v[0xF], i, members);
+            ByteVector.fromArray(SPECIES, v[x], i).sub(ByteVector.fromArray(SPECIES, v[y], i))
+                    .intoArray(v[x], i, members);
+        }
+    }
+
+    //CXNN
+    private void RND(Group group, byte x, byte value) {
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            if (value + 1 <= 0) {
+                halt(group, lane, "bound must be positive");
+            } else {
+                v[x][lane] = (byte) random[lane].nextInt(value + 1);
+            }
+        }
+    }
+
+    //DXYN
+    private void DRW(Group group, byte x, byte y, byte n) {
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            try {
+                boolean collision = frames[lane].draw(v[x][lane], v[y][lane], mem[lane], index[lane], n);
+                v[0xF][lane] = (byte) (collision ? 0x01 : 0x00);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                halt(group, lane, e.getMessage());
+            }
+        }
+    }
+
+    //FX33
+    private void LDB(Group group, byte x) {
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            int address = index[lane];
+            if (address + 2 >= memoryLength) {
+                halt(group, lane, segfault(address));
+                continue;
+            }
+            byte value = v[x][lane];
+            try {
+                write(lane, address, (byte) (value / 100));
+                write(lane, address + 1, (byte) ((value % 100) / 10));
+                write(lane, address + 2, (byte) (value % 10));
+            } catch (ArrayIndexOutOfBoundsException e) {
+                halt(group, lane, e.getMessage());
+            }
+        }
+    }
+
+    //FX65
+    private void LDR(Group group, byte x) {
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            int address = index[lane];
+            if (address + x >= memoryLength) {
+                halt(group, lane, segfault(address));
+                continue;
+            }
+            try {
+                for (int r = 0; r <= x; r++) {
+                    v[r][lane] = mem[lane][address + r];
+                }
+                index[lane] = (short) (address + x + 1);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                halt(group, lane, e.getMessage());
+            }
+        }
+    }
+
+    //FX55
+    private void STR(Group group, byte x) {
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            int address = index[lane];
+            if (address + x >= memoryLength) {
+                halt(group, lane, segfault(address));
+                continue;
+            }
+            try {
+                for (int r = 0; r <= x; r++) {
+                    write(lane, address + r, v[r][lane]);
+                }
+                index[lane] = (short) (address + x + 1);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                halt(group, lane, e.getMessage());
+            }
+        }
+    }
+
+    private void write(int lane, int address, byte value) {
+        mem[lane][address] = value;
+        written[address] = true;
+    }
+
+    private String segfault(int address) {
+        return "Segmentation fault! I: " + String.format("%04X", (short) address) + " Memory length: " + memoryLength;
+    }
+
+    private void halt(Group group, int lane, String error) {
+        if (group.contains(lane)) {
+            pc[lane] = group.pc;
+        }
+        group.remove(lane);
+        alive[lane] = false;
+        errors[lane] = error;
+    }
+
+    private void haltGroup(Group group, String error) {
+        for (int k = group.count - 1; k >= 0; k--) {
+            int lane = group.members[k];
+            halt(group, lane, error);
+        }
+    }
+
+    /**
+     * Merges groups that ended the cycle on the same PC, finding them through a table indexed by PC so the cost
+     * grows with the number of groups rather than its square. The smaller group joins the larger one.
+     */
+    private void mergeGroups() {
+        mergeEpoch++;
+        int kept = 0;
+        for (int g = 0; g < groups.size(); g++) {
+            Group group = groups.get(g);
+            if (group.count == 0) {
+                spare.push(group);
+                continue;
+            }
+            int p = group.pc;
+            if (p >= 0 && p < memoryLength) {
+                if (mergeStamps[p] == mergeEpoch) {
+                    Group target = groups.get(mergeSlots[p]);
+                    if (target.count < group.count) {
+                        group.absorb(target);
+                        groups.set(mergeSlots[p], group);
+                        spare.push(target);
+                    } else {
+                        target.absorb(group);
+                        spare.push(group);
+                    }
+                    continue;
+                }
+                mergeStamps[p] = mergeEpoch;
+                mergeSlots[p] = kept;
+            }
+            groups.set(kept++, group);
+        }
+        for (int g = groups.size() - 1; g >= kept; g--) {
+            groups.remove(g);
+        }
+    }
+
+    public void keyPressed(int lane, int key) {
+        if (key < 0 || key >= Keypad.KEY_COUNT) {
+            return;
+        }
+        buttonStatus[lane][key] = true;
+        if (waitingForKey[lane] && alive[lane]) {
+            v[waitingForKeyReg[lane]][lane] = (byte) key;
+            waitingForKey[lane] = false;
+            newGroup(pc[lane]).add(lane);
+            mergeGroups();
+        }
+    }
+
+    public void keyReleased(int lane, int key) {
+        if (key < 0 || key >= Keypad.KEY_COUNT) {
+            return;
+        }
+        buttonStatus[lane][key] = false;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    public long getCycleNumber() {
+        return cycleNumber;
+    }
+
+    public short getPC(int lane) {
+        return owner[lane] != null ? owner[lane].pc : pc[lane];
+    }
+
+    public short getI(int lane) {
+        return index[lane];
+    }
+
+    public byte getDT(int lane) {
+        return dt[lane];
+    }
+
+    public byte getST(int lane) {
+        return st[lane];
+    }
+
+    public byte getRegister(int lane, int register) {
+        return v[register][lane];
+    }
+
+    public FrameBuffer getFrameBuffer(int lane) {
+        return frames[lane];
+    }
+
+    public boolean isHalted(int lane) {
+        return !alive[lane];
+    }
+
+    public String getError(int lane) {
+        return errors[lane];
+    }
+
+    /**
+     * Lanes at one PC, kept as an unordered list with each lane's position in {@link #slot}, so adding and
+     * removing a lane is constant time and walking a group only visits its members. Iterate from the end, which
+     * stays correct when the current lane is removed. Groups large enough for masked vector passes to beat a
+     * walk over the list also keep a lane mask.
+     */
+    private final class Group {
+        int[] members = new int[4];
+        boolean[] mask;
+        short pc;
+        int count;
+
+        Group(short pc) {
+            this.pc = pc;
+        }
+
+        boolean isVector() {
+            return count >= vectorThreshold;
+        }
+
+        boolean contains(int lane) {
+            return owner[lane] == this;
+        }
+
+        void add(int lane) {
+            if (owner[lane] == this) {
+                return;
+            }
+            if (count == members.length) {
+                members = Arrays.copyOf(members, count * 2);
+            }
+            slot[lane] = count;
+            members[count++] = lane;
+            owner[lane] = this;
+            if (mask != null) {
+                mask[lane] = true;
+            } else if (count >= vectorThreshold) {
+                mask = new boolean[lanes];
+                for (int k = 0; k < count; k++) {
+                    mask[members[k]] = true;
+                }
+            }
+        }
+
+        void remove(int lane) {
+            if (owner[lane] != this) {
+                return;
+            }
+            int last = members[--count];
+            members[slot[lane]] = last;
+            slot[last] = slot[lane];
+            owner[lane] = null;
+            if (mask != null) {
+                mask[lane] = false;
+            }
+        }
+
+        void clear() {
+            for (int k = count - 1; k >= 0; k--) {
+                remove(members[k]);
+            }
+        }
+
+        /**
+         * Moves every lane of another group into this one, leaving the other group empty.
+         */
+        void absorb(Group other) {
+            for (int k = other.count - 1; k >= 0; k--) {
+                other.remove(other.members[k]);
+                add(other.members[other.count]);
+            }
+        }
+    }
+}
@@ -1,41 +1,61 @@
 package emulator;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Alert;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
-import javafx.util.Duration;
-import util.RomUtil;
 
+import javax.sound.sampled.LineUnavailableException;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Main extends Application {
 
     private CPU cpu;
     private Renderer renderer;
-    private MediaPlayer tonePlayer;
-    private final int scale = 7;
+    private int scale = 7;
+    private Color foreground = Color.WHITE;
+    private Color background = Color.BLACK;
+    private int instructionsPerSecond = CPU.DEFAULT_INSTRUCTIONS_PER_SECOND;
+    private Scheduler scheduler;
+    private String tracePath;
+    private int rewindSeconds;
+    private int rewindMegabytes = 16;
+    private Long seed;
+    private String recordPath;
+    private String romName = "games/PONG";
+    private String packPath;
+    private Keypad keypad;
+    private InputRecorder inputRecorder;
+    private EmulationThread emulation;
+    private boolean metrics;
+    private Profile profile;
 
     @Override
     public void start(Stage primaryStage) throws Exception {
+        readParameters();
         Pane root = FXMLLoader.load(getClass().getResource("emulator.fxml"));
         primaryStage.setTitle("Chip8");
         primaryStage.setScene(new Scene(root, 64 * scale, 32 * scale));
         primaryStage.setResizable(false);
         primaryStage.sizeToScene();
         Canvas canvas = new Canvas(64 * scale, 32 * scale);
-        canvas.getGraphicsContext2D().setFill(Color.BLACK);
+        canvas.getGraphicsContext2D().setFill(background);
         canvas.getGraphicsContext2D().fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
         root.getChildren().add(canvas);
 
@@ -47,62 +67,173 @@ public class Main extends Application {
             showAlert("Couldn't initialize emulator\n" + e.getClass(), e, Optional.empty(), Optional.empty());
         }
 
-        primaryStage.addEventHandler(KeyEvent.KEY_PRESSED, event -> cpu.keyPressed(event.getCode()));
-        primaryStage.addEventHandler(KeyEvent.KEY_RELEASED, event -> cpu.keyReleased(event.getCode()));
-
-        tonePlayer = new MediaPlayer(new Media(Paths.get("media/tone.mp3").toUri().toString()));
+        primaryStage.addEventHandler(KeyEvent.KEY_PRESSED, event -> {
+            if (event.getCode() == KeyCode.BACK_SPACE) {
+                emulation.setRewinding(true);
+            }
+            KeyMap.keyPressed(emulation.getInputQueue(), event.getCode());
+        });
+        primaryStage.addEventHandler(KeyEvent.KEY_RELEASED, event -> {
+            if (event.getCode() == KeyCode.BACK_SPACE) {
+                emulation.setRewinding(false);
+            }
+            KeyMap.keyReleased(emulation.getInputQueue(), event.getCode());
+        });
 
         primaryStage.show();
         run();
     }
 
+    private void readParameters() {
+        Map<String, String> parameters = getParameters().getNamed();
+        if (parameters.containsKey("scale")) {
+            scale = Integer.parseInt(parameters.get("scale"));
+        }
+        if (parameters.containsKey("foreground")) {
+            foreground = Color.web(parameters.get("foreground"));
+        }
+        if (parameters.containsKey("background")) {
+            background = Color.web(parameters.get("background"));
+        }
+        if (parameters.containsKey("trace")) {
+            tracePath = parameters.get("trace");
+        }
+        if (parameters.containsKey("ips")) {
+            instructionsPerSecond = Integer.parseInt(parameters.get("ips"));
+        }
+        if (parameters.containsKey("rom")) {
+            romName = parameters.get("rom");
+        }
+        if (parameters.containsKey("pack")) {
+            packPath = parameters.get("pack");
+        }
+        if (parameters.containsKey("seed")) {
+            seed = Long.parseLong(parameters.get("seed"));
+        }
+        if (parameters.containsKey("record")) {
+            recordPath = parameters.get("record");
+        }
+        if (parameters.containsKey("rewind")) {
+            rewindSeconds = Integer.parseInt(parameters.get("rewind"));
+        }
+        if (parameters.containsKey("metrics")) {
+            metrics = Boolean.parseBoolean(parameters.get("metrics"));
+        }
+        if (parameters.containsKey("profile")) {
+            profile = Profile.parse(parameters.get("profile"));
+        }
+        if (parameters.containsKey("rewindMemory")) {
+            rewindMegabytes = Integer.parseInt(parameters.get("rewindMemory"));
+        }
+    }
+
     private void run() {
-        Timeline gameLoop = new Timeline();
-        gameLoop.setCycleCount(Timeline.INDEFINITE);
-
-        KeyFrame kf = new KeyFrame(
-                Duration.seconds(0.005),
-                actionEvent -> {
-                    try {
-                        cpu.executeCycle();
-                    } catch (RuntimeException e) {
-                        gameLoop.stop();
-                        System.out.println("Execution halted unexpectedly");
-                        e.printStackTrace();
-                        showAlert("Execution halted unexpectedly", e, Optional.of(cpu.getPC()), Optional.of(cpu.getCycleNumber()));
-                    }
-                    if (cpu.isDrawFlag()) {
-                        renderer.updateCanvas();
-                        cpu.setDrawFlag(false);
-                    }
-
-                    if (cpu.getST() > 0x0) {
-                        tonePlayer.play();
-                    } else {
-                        tonePlayer.stop();
-                    }
-                });
-
-        gameLoop.getKeyFrames().add(kf);
+        if (emulation == null) {
+            return;
+        }
+        AnimationTimer display = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                long[] rows = emulation.getFrames().take();
+                if (rows != null) {
+                    renderer.render(rows);
+                }
+            }
+        };
+
         System.out.println("\nExecution started:\n------------------");
-        gameLoop.play();
+        emulation.start();
+        display.start();
+    }
+
+    private void halted(RuntimeException e) {
+        Platform.runLater(() -> {
+            System.out.println("Execution halted unexpectedly");
+            e.printStackTrace();
+            closeTrace();
+            showAlert("Execution halted unexpectedly", e, Optional.of(cpu.getPC()), Optional.of(cpu.getCycleNumber()));
+        });
     }
 
     private void initialize(Canvas canvas) throws Exception {
-        byte[] romData = RomUtil.LoadRom("games/PONG");
-
-        System.out.println("Rom Data:\n---------");
-        int index = 0;
-        for (byte b : romData) {
-            System.out.print(String.format("%02X ", b));
-            index++;
-            if (index % 8 == 0) {
-                System.out.print("\n");
-            }
+        RomCatalog catalog = new RomCatalog();
+        if (packPath != null) {
+            catalog.addPack(RomPack.open(Paths.get(packPath)));
+        }
+        ByteBuffer romData = catalog.load(romName);
+
+        cpu = new CPU(romData, seed != null ? seed : ThreadLocalRandom.current().nextLong(),
+                profile != null ? profile : Profile.forFileName(romName));
+        keypad = cpu;
+        if (recordPath != null) {
+            inputRecorder = new InputRecorder(cpu);
+            keypad = inputRecorder;
+        }
+        if (tracePath != null) {
+            cpu.setTraceRecorder(new TraceRecorder(Paths.get(tracePath), cpu.getProfile()));
+        }
+        if (metrics) {
+            cpu.setMetrics(new Metrics());
+            cpu.getMetrics().register();
+        }
+        scheduler = new Scheduler(cpu, instructionsPerSecond);
+        try {
+            scheduler.setBeeper(new Beeper(new LineAudioSink()));
+        } catch (LineUnavailableException e) {
+            System.out.println("Audio unavailable: " + e.getMessage());
+        }
+        if (rewindSeconds > 0) {
+            scheduler.setRewindBuffer(RewindBuffer.forSeconds(rewindSeconds, rewindMegabytes << 20));
+        }
+        renderer = new Renderer(canvas.getGraphicsContext2D(), scale, foreground, background);
+        emulation = new EmulationThread(scheduler, cpu, keypad, this::halted);
+    }
+
+    private void closeTrace() {
+        if (cpu.getTraceRecorder() == null) {
+            return;
+        }
+        try {
+            cpu.getTraceRecorder().close();
+        } catch (IOException e) {
+            System.out.println("Couldn't write trace");
+            e.printStackTrace();
         }
+    }
 
-        cpu = new CPU(romData);
-        renderer = new Renderer(cpu, canvas.getGraphicsContext2D(), scale);
+    private void writeInputLog() {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(recordPath)))) {
+            inputRecorder.toLog().write(out);
+        } catch (IOException e) {
+            System.out.println("Couldn't write input log");
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (emulation != null) {
+            emulation.stop();
+            InputQueue input = emulation.getInputQueue();
+            System.out.printf("Input latency: %.2f ms average, %.2f ms max over %d events%n",
+                    input.getAverageLatencyNanos() / 1e6, input.getMaxLatencyNanos() / 1e6, input.getAppliedCount());
+        }
+        if (cpu != null) {
+            closeTrace();
+            if (cpu.getMetrics() != null) {
+                System.out.println(cpu.getMetrics().snapshot());
+            }
+        }
+        if (inputRecorder != null) {
+            writeInputLog();
+        }
+        if (scheduler != null && scheduler.getBeeper() != null) {
+            try {
+                scheduler.getBeeper().getSink().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     private void showAlert(String message, Exception e, Optional<Short> PC, Optional<Long> cycleNumber) {
@@ -0,0 +1,206 @@
+package emulator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Optional execution counters for a CPU and its scheduler: instructions per opcode family, a hit count for every
+ * address in the 4 KB space, frame and draw time histograms, and Flight Recorder events. Nothing is counted
+ * unless an instance is attached with {@link CPU#setMetrics(Metrics)}, so when detached the cost is a null check
+ * per block. Counters are written by the emulation thread only; readers on other threads see approximate values.
+ */
+public class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "emulator:type=Metrics";
+    private static final int ADDRESS_SPACE = 0x1000;
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final long[] opcodeCounts = new long[Decoder.HANDLER_COUNT];
+    private final long[] addressHits = new long[ADDRESS_SPACE];
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+    private final LatencyHistogram drawTimes = new LatencyHistogram();
+    private long instructions;
+    private long frames;
+    private long overruns;
+    private long idleCycles;
+    private long windowStart;
+    private long windowInstructions;
+    private volatile long instructionsPerSecond;
+
+    void count(int op, int pc) {
+        opcodeCounts[Decoder.handler(op)]++;
+        addressHits[pc & (ADDRESS_SPACE - 1)]++;
+        instructions++;
+    }
+
+    void countBlock(int[] ops, int pc, int count) {
+        for (int i = 0; i < count; i++) {
+            opcodeCounts[Decoder.handler(ops[i])]++;
+            addressHits[(pc + 2 * i) & (ADDRESS_SPACE - 1)]++;
+        }
+        instructions += count;
+    }
+
+    void idleSkipped(long cycles) {
+        idleCycles += cycles;
+    }
+
+    void drawCompleted(int address, int height, boolean collision, long nanos) {
+        drawTimes.record(nanos);
+        MetricsEvents.Draw event = new MetricsEvents.Draw();
+        if (event.isEnabled()) {
+            event.address = address;
+            event.height = height;
+            event.collision = collision;
+            event.drawTime = nanos;
+            event.commit();
+        }
+    }
+
+    void frameCompleted(long frameNumber, long cycles, long startNanos, long endNanos) {
+        long nanos = endNanos - startNanos;
+        frameTimes.record(nanos);
+        frames++;
+        if (windowStart == 0) {
+            windowStart = startNanos;
+            windowInstructions = instructions;
+        } else if (endNanos - windowStart >= RATE_WINDOW_NANOS) {
+            instructionsPerSecond = (instructions - windowInstructions) * 1_000_000_000L / (endNanos - windowStart);
+            windowStart = endNanos;
+            windowInstructions = instructions;
+        }
+        MetricsEvents.Frame event = new MetricsEvents.Frame();
+        if (event.isEnabled()) {
+            event.frameNumber = frameNumber;
+            event.cycles = cycles;
+            event.frameTime = nanos;
+            event.commit();
+        }
+    }
+
+    void overrun(long behindNanos) {
+        overruns++;
+        MetricsEvents.Overrun event = new MetricsEvents.Overrun();
+        if (event.isEnabled()) {
+            event.behind = behindNanos;
+            event.commit();
+        }
+    }
+
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(System.nanoTime(), instructions, idleCycles, instructionsPerSecond, frames, overruns,
+                frameTimes, drawTimes, opcodeCounts, addressHits);
+    }
+
+    /**
+     * Hands a snapshot to the consumer at a fixed rate on a daemon thread until the returned handle is closed.
+     */
+    public AutoCloseable report(long period, TimeUnit unit, Consumer<MetricsSnapshot> consumer) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "chip8-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> consumer.accept(snapshot()), period, period, unit);
+        return executor::shutdownNow;
+    }
+
+    /**
+     * Registers this instance with the platform MBean server under {@link #OBJECT_NAME}, replacing any earlier one.
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    @Override
+    public long getInstructionCount() {
+        return instructions;
+    }
+
+    @Override
+    public long getIdleCycleCount() {
+        return idleCycles;
+    }
+
+    @Override
+    public long getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frames;
+    }
+
+    @Override
+    public long getOverrunCount() {
+        return overruns;
+    }
+
+    @Override
+    public long getFrameTimeP50Micros() {
+        return frameTimes.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getFrameTimeP99Micros() {
+        return frameTimes.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getFrameTimeMaxMicros() {
+        return frameTimes.getMax() / 1000;
+    }
+
+    @Override
+    public long getDrawCount() {
+        return drawTimes.getCount();
+    }
+
+    @Override
+    public long getDrawTimeP99Nanos() {
+        return drawTimes.percentile(99);
+    }
+
+    @Override
+    public Map<String, Long> getOpcodeCounts() {
+        return snapshot().getOpcodeCounts();
+    }
+
+    @Override
+    public Map<String, Long> getHotAddresses() {
+        MetricsSnapshot snapshot = snapshot();
+        Map<String, Long> hot = new LinkedHashMap<>();
+        for (int address : snapshot.getHotAddresses(16)) {
+            hot.put(String.format("%03X", address), snapshot.getAddressHits(address));
+        }
+        return hot;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(opcodeCounts, 0);
+        Arrays.fill(addressHits, 0);
+        frameTimes.reset();
+        drawTimes.reset();
+        instructions = 0;
+        idleCycles = 0;
+        frames = 0;
+        overruns = 0;
+        windowStart = 0;
+        instructionsPerSecond = 0;
+    }
+}
@@ -0,0 +1,67 @@
+package emulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events emitted while metrics are enabled. They are disabled unless a recording turns them on,
+ * in which case creating and committing one costs no more than the check inside commit().
+ */
+final class MetricsEvents {
+
+    private MetricsEvents() {
+    }
+
+    @Name("emulator.Frame")
+    @Label("Frame")
+    @Category("Chip8")
+    @Description("One scheduler frame of CPU execution")
+    @StackTrace(false)
+    static final class Frame extends Event {
+        @Label("Frame Number")
+        long frameNumber;
+
+        @Label("Cycles")
+        long cycles;
+
+        @Label("Frame Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long frameTime;
+    }
+
+    @Name("emulator.Draw")
+    @Label("Draw")
+    @Category("Chip8")
+    @Description("Execution of a single DXYN instruction")
+    @StackTrace(false)
+    static final class Draw extends Event {
+        @Label("Address")
+        int address;
+
+        @Label("Height")
+        int height;
+
+        @Label("Collision")
+        boolean collision;
+
+        @Label("Draw Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long drawTime;
+    }
+
+    @Name("emulator.Overrun")
+    @Label("Scheduler Overrun")
+    @Category("Chip8")
+    @Description("The scheduler fell too far behind wall-clock time and skipped ahead")
+    @StackTrace(false)
+    static final class Overrun extends Event {
+        @Label("Behind")
+        @Timespan(Timespan.NANOSECONDS)
+        long behind;
+    }
+}
@@ -0,0 +1,34 @@
+package emulator;
+
+import java.util.Map;
+
+/**
+ * Management view of {@link Metrics}, registered under {@link Metrics#OBJECT_NAME}.
+ */
+public interface MetricsMXBean {
+    long getInstructionCount();
+
+    long getIdleCycleCount();
+
+    long getInstructionsPerSecond();
+
+    long getFrameCount();
+
+    long getOverrunCount();
+
+    long getFrameTimeP50Micros();
+
+    long getFrameTimeP99Micros();
+
+    long getFrameTimeMaxMicros();
+
+    long getDrawCount();
+
+    long getDrawTimeP99Nanos();
+
+    Map<String, Long> getOpcodeCounts();
+
+    Map<String, Long> getHotAddresses();
+
+    void reset();
+}
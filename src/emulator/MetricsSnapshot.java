@@ -0,0 +1,172 @@
+package emulator;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the counters kept by {@link Metrics}.
+ */
+public final class MetricsSnapshot {
+    private final long timeNanos;
+    private final long instructions;
+    private final long idleCycles;
+    private final long instructionsPerSecond;
+    private final long frames;
+    private final long overruns;
+    private final long frameTimeP50;
+    private final long frameTimeP90;
+    private final long frameTimeP99;
+    private final long frameTimeMax;
+    private final long draws;
+    private final long drawTimeP50;
+    private final long drawTimeP99;
+    private final long[] opcodeCounts;
+    private final long[] addressHits;
+
+    MetricsSnapshot(long timeNanos, long instructions, long idleCycles, long instructionsPerSecond, long frames, long overruns,
+                    LatencyHistogram frameTimes, LatencyHistogram drawTimes, long[] opcodeCounts, long[] addressHits) {
+        this.timeNanos = timeNanos;
+        this.instructions = instructions;
+        this.idleCycles = idleCycles;
+        this.instructionsPerSecond = instructionsPerSecond;
+        this.frames = frames;
+        this.overruns = overruns;
+        this.frameTimeP50 = frameTimes.percentile(50);
+        this.frameTimeP90 = frameTimes.percentile(90);
+        this.frameTimeP99 = frameTimes.percentile(99);
+        this.frameTimeMax = frameTimes.getMax();
+        this.draws = drawTimes.getCount();
+        this.drawTimeP50 = drawTimes.percentile(50);
+        this.drawTimeP99 = drawTimes.percentile(99);
+        this.opcodeCounts = opcodeCounts.clone();
+        this.addressHits = addressHits.clone();
+    }
+
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Cycles fast-forwarded through detected wait loops instead of being executed.
+     */
+    public long getIdleCycles() {
+        return idleCycles;
+    }
+
+    /**
+     * Rate measured over the most recent second of scheduled frames.
+     */
+    public long getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    /**
+     * Rate measured between an earlier snapshot and this one.
+     */
+    public long instructionsPerSecondSince(MetricsSnapshot earlier) {
+        long elapsed = timeNanos - earlier.timeNanos;
+        return elapsed <= 0 ? 0 : (instructions - earlier.instructions) * 1_000_000_000L / elapsed;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public long getFrameTimeP50Nanos() {
+        return frameTimeP50;
+    }
+
+    public long getFrameTimeP90Nanos() {
+        return frameTimeP90;
+    }
+
+    public long getFrameTimeP99Nanos() {
+        return frameTimeP99;
+    }
+
+    public long getFrameTimeMaxNanos() {
+        return frameTimeMax;
+    }
+
+    public long getDraws() {
+        return draws;
+    }
+
+    public long getDrawTimeP50Nanos() {
+        return drawTimeP50;
+    }
+
+    public long getDrawTimeP99Nanos() {
+        return drawTimeP99;
+    }
+
+    /**
+     * Executed instructions per opcode family, largest first, omitting families that never ran.
+     */
+    public Map<String, Long> getOpcodeCounts() {
+        Integer[] handlers = new Integer[opcodeCounts.length];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = i;
+        }
+        Arrays.sort(handlers, (a, b) -> Long.compare(opcodeCounts[b], opcodeCounts[a]));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int handler : handlers) {
+            if (opcodeCounts[handler] != 0) {
+                counts.put(Decoder.name(handler), opcodeCounts[handler]);
+            }
+        }
+        return counts;
+    }
+
+    public long getAddressHits(int address) {
+        return addressHits[address & (addressHits.length - 1)];
+    }
+
+    /**
+     * Returns up to limit instruction addresses ordered by how often they were executed, hottest first.
+     */
+    public int[] getHotAddresses(int limit) {
+        Integer[] addresses = new Integer[addressHits.length];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = i;
+        }
+        Arrays.sort(addresses, (a, b) -> Long.compare(addressHits[b], addressHits[a]));
+        int count = 0;
+        while (count < Math.min(limit, addresses.length) && addressHits[addresses[count]] != 0) {
+            count++;
+        }
+        int[] hot = new int[count];
+        for (int i = 0; i < count; i++) {
+            hot[i] = addresses[i];
+        }
+        return hot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Instructions: %d (%d/s), idle cycles skipped: %d, frames: %d, overruns: %d%n",
+                instructions, instructionsPerSecond, idleCycles, frames, overruns));
+        text.append(String.format("Frame time: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                frameTimeP50 / 1e6, frameTimeP90 / 1e6, frameTimeP99 / 1e6, frameTimeMax / 1e6));
+        text.append(String.format("Draws: %d, p50 %d ns, p99 %d ns%n", draws, drawTimeP50, drawTimeP99));
+        text.append("Opcodes:");
+        for (Map.Entry<String, Long> entry : getOpcodeCounts().entrySet()) {
+            text.append(String.format(" %s=%d", entry.getKey(), entry.getValue()));
+        }
+        text.append(System.lineSeparator()).append("Hot addresses:");
+        for (int address : getHotAddresses(8)) {
+            text.append(String.format(" %03X=%d", address, addressHits[address]));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package emulator;
+
+import java.util.Locale;
+
+/**
+ * Quirk profiles selecting the instruction set, display and memory a {@link CPU} emulates. {@link #CHIP8} keeps
+ * this emulator's original behavior exactly. {@link #SCHIP} and {@link #XO_CHIP} add the 128x64 mode, 16x16
+ * sprites, scrolling and their other opcodes, and use the conventional semantics modern ROMs rely on for the
+ * base instructions (unsigned arithmetic with carry and borrow, register compares, masked key and font lookups).
+ */
+public enum Profile {
+    CHIP8(0x1000, false, false, false, false, false),
+    /**
+     * SUPER-CHIP 1.1: shifts work on VX in place, FX55/FX65 leave I unchanged, BXNN jumps to XNN + VX
+     * and sprites are clipped at the display edges.
+     */
+    SCHIP(0x1000, true, true, true, true, false),
+    /**
+     * XO-CHIP: 64 KB of memory, two bit planes, pattern audio, F000 NNNN long loads that skips step over
+     * as a whole, and SUPER-CHIP opcodes with CHIP-8 shift, load/store and jump behavior.
+     */
+    XO_CHIP(0x10000, false, false, false, false, true);
+
+    private final int memorySize;
+    private final boolean shiftsInPlace;
+    private final boolean keepsI;
+    private final boolean jumpsWithVX;
+    private final boolean clipsSprites;
+    private final boolean xo;
+
+    Profile(int memorySize, boolean shiftsInPlace, boolean keepsI, boolean jumpsWithVX, boolean clipsSprites,
+            boolean xo) {
+        this.memorySize = memorySize;
+        this.shiftsInPlace = shiftsInPlace;
+        this.keepsI = keepsI;
+        this.jumpsWithVX = jumpsWithVX;
+        this.clipsSprites = clipsSprites;
+        this.xo = xo;
+    }
+
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    boolean isExtended() {
+        return this != CHIP8;
+    }
+
+    boolean shiftsInPlace() {
+        return shiftsInPlace;
+    }
+
+    boolean keepsI() {
+        return keepsI;
+    }
+
+    boolean jumpsWithVX() {
+        return jumpsWithVX;
+    }
+
+    boolean clipsSprites() {
+        return clipsSprites;
+    }
+
+    boolean isXo() {
+        return xo;
+    }
+
+    /**
+     * Picks a profile from the conventional ROM file extensions: {@code .sc8} for SUPER-CHIP and
+     * {@code .xo8} for XO-CHIP. Anything else runs as CHIP-8.
+     */
+    public static Profile forFileName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".sc8")) {
+            return SCHIP;
+        }
+        if (lower.endsWith(".xo8")) {
+            return XO_CHIP;
+        }
+        return CHIP8;
+    }
+
+    public static Profile parse(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
@@ -0,0 +1,180 @@
+package emulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs every ROM/input pair of a corpus headlessly in parallel and compares the frame fingerprints of each run
+ * with a golden file. A corpus is a directory of ROMs or a ROM pack; an input log named {@code <rom>.c8il} or
+ * {@code <rom>.<tag>.c8il} next to a ROM adds a case that replays it, otherwise the ROM runs once without input.
+ * When several corpora are given, case names are prefixed with the corpus file name to keep them apart.
+ */
+public class RegressionRunner {
+    static final String INPUT_SUFFIX = ".c8il";
+    static final String GOLDEN_SUFFIX = ".c8fp";
+
+    public static FrameFingerprints fingerprint(BatchJob job) {
+        CPU cpu = new CPU(job.getRom(), job.getSeed(), job.getProfile());
+        cpu.setExecutionMode(job.getExecutionMode());
+        Scheduler scheduler = new Scheduler(cpu, job.getInstructionsPerSecond());
+        scheduler.setThrottled(false);
+        scheduler.setInput(job.getInput());
+        FrameHasher hasher = new FrameHasher();
+        scheduler.setFrameSink(hasher);
+        String error = null;
+        try {
+            while (cpu.getCycleNumber() < job.getCycleBudget()) {
+                scheduler.runFrame();
+            }
+        } catch (RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        return hasher.toFingerprints(cpu.getCycleNumber(), error);
+    }
+
+    static List<BatchJob> loadCorpus(Path corpus, String prefix, long cycles, ExecutionMode mode) throws IOException {
+        Map<String, ByteBuffer> roms = new TreeMap<>();
+        Map<String, Path> logs = new TreeMap<>();
+        if (Files.isDirectory(corpus)) {
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(corpus)) {
+                files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(INPUT_SUFFIX)) {
+                    logs.put(name.substring(0, name.length() - INPUT_SUFFIX.length()), file);
+                } else if (!name.endsWith(GOLDEN_SUFFIX)) {
+                    roms.put(name, ByteBuffer.wrap(Files.readAllBytes(file)));
+                }
+            }
+        } else {
+            RomPack pack = RomPack.open(corpus);
+            for (RomEntry entry : pack.getEntries()) {
+                roms.put(entry.getName(), pack.data(entry));
+            }
+        }
+
+        List<BatchJob> jobs = new ArrayList<>();
+        Set<String> replayed = new HashSet<>();
+        for (Map.Entry<String, Path> log : logs.entrySet()) {
+            String rom = log.getKey();
+            if (!roms.containsKey(rom) && rom.lastIndexOf('.') > 0) {
+                rom = rom.substring(0, rom.lastIndexOf('.'));
+            }
+            if (!roms.containsKey(rom)) {
+                System.out.println("Skipping input log without a ROM: " + log.getValue());
+                continue;
+            }
+            InputLog input;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(log.getValue()))) {
+                input = InputLog.read(in);
+            }
+            jobs.add(new BatchJob(prefix + log.getKey(), roms.get(rom), input.getScript(), cycles,
+                    input.getInstructionsPerSecond(), mode, input.getSeed(), Profile.forFileName(rom)));
+            replayed.add(rom);
+        }
+        for (Map.Entry<String, ByteBuffer> rom : roms.entrySet()) {
+            if (!replayed.contains(rom.getKey())) {
+                jobs.add(new BatchJob(prefix + rom.getKey(), rom.getValue(), InputScript.EMPTY, cycles,
+                        CPU.DEFAULT_INSTRUCTIONS_PER_SECOND, mode, 0, Profile.forFileName(rom.getKey())));
+            }
+        }
+        return jobs;
+    }
+
+    static Path goldenFile(Path goldenDirectory, String caseName) {
+        return goldenDirectory.resolve(caseName.replace('/', '_').replace('\\', '_') + GOLDEN_SUFFIX);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: RegressionRunner <golden directory> <corpus directory or pack>... [--update] [--cycles=N] [--threads=N] [--mode=interpreter|block_cache|compiled]");
+            System.exit(2);
+        }
+        Path goldenDirectory = Paths.get(args[0]);
+        boolean update = false;
+        long cycles = 1_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutionMode mode = ExecutionMode.COMPILED;
+        List<Path> corpora = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--update")) {
+                update = true;
+            } else if (args[i].startsWith("--cycles=")) {
+                cycles = Long.parseLong(args[i].substring("--cycles=".length()));
+            } else if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else if (args[i].startsWith("--mode=")) {
+                mode = ExecutionMode.valueOf(args[i].substring("--mode=".length()).toUpperCase());
+            } else {
+                corpora.add(Paths.get(args[i]));
+            }
+        }
+
+        List<BatchJob> jobs = new ArrayList<>();
+        for (Path corpus : corpora) {
+            String prefix = corpora.size() > 1 ? corpus.getFileName() + "/" : "";
+            jobs.addAll(loadCorpus(corpus, prefix, cycles, mode));
+        }
+        long start = System.nanoTime();
+        List<FrameFingerprints> results;
+        try (BatchRunner runner = new BatchRunner(threads)) {
+            results = runner.runAll(jobs, RegressionRunner::fingerprint);
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Files.createDirectories(goldenDirectory);
+        int passed = 0;
+        int failed = 0;
+        int missing = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            String name = jobs.get(i).getName();
+            FrameFingerprints actual = results.get(i);
+            Path golden = goldenFile(goldenDirectory, name);
+            String difference;
+            if (!Files.exists(golden)) {
+                difference = "no golden file";
+                missing++;
+            } else {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(golden))) {
+                    difference = actual.compare(FrameFingerprints.read(in));
+                }
+                if (difference == null) {
+                    passed++;
+                } else {
+                    failed++;
+                }
+            }
+            if (difference != null) {
+                System.out.println((update ? "UPDATED " : "FAILED ") + name + ": " + difference);
+                if (update) {
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(golden))) {
+                        actual.write(out);
+                    }
+                }
+            }
+        }
+        System.out.println("Ran " + jobs.size() + " cases on " + threads + " threads in " +
+                String.format("%.3f", seconds) + " s: " + passed + " passed, " + failed + " failed, " +
+                missing + " without golden files");
+        if (!update && (failed > 0 || missing > 0)) {
+            System.exit(1);
+        }
+    }
+}
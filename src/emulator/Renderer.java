@@ -1,28 +1,74 @@
 package emulator;
 
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 
+import java.util.Arrays;
+
+/**
+ * Paints the display onto a canvas of a fixed size, one low-resolution pixel per scale x scale block, so
+ * high-resolution frames are drawn at half the scale. Only rows that changed are converted to pixels, so the
+ * cost of a frame follows what was drawn rather than the display resolution.
+ */
 public class Renderer {
-    private final CPU cpu;
     private final GraphicsContext gc;
     private final int scale;
+    private final int[] palette;
+    private final WritableImage image = new WritableImage(FrameBuffer.HIGH_WIDTH, FrameBuffer.HIGH_HEIGHT);
+    private final PixelWriter pixelWriter = image.getPixelWriter();
+    private final int[] rowPixels = new int[FrameBuffer.HIGH_WIDTH];
+    private final long[] drawnRows = new long[FrameBuffer.STATE_WORDS];
+    private boolean drawn;
+
+    public Renderer(GraphicsContext gc, int scale) {
+        this(gc, scale, Color.WHITE, Color.BLACK);
+    }
 
-    public Renderer(CPU cpu, GraphicsContext gc, int scale) {
-        this.cpu = cpu;
+    public Renderer(GraphicsContext gc, int scale, Color foreground, Color background) {
         this.gc = gc;
         this.scale = scale;
+        this.palette = FrameBuffer.palette(toArgb(foreground), toArgb(background));
+        gc.setImageSmoothing(false);
     }
 
-    public void updateCanvas() {
-        int[][] vMem = cpu.getvMem();
-
-        for (int x = 0; x < 64; x++) {
-            for (int y = 0; y < 32; y++) {
-                Color color = vMem[x][y] == 1 ? Color.WHITE : Color.BLACK;
-                gc.setFill(color);
-                gc.fillRect(x * scale, y * scale, scale, scale);
+    /**
+     * Draws rows handed over from another thread, repainting only those that differ from the last call.
+     */
+    public void render(long[] rows) {
+        int width = FrameBuffer.width(rows);
+        int height = FrameBuffer.height(rows);
+        int rowWords = width / 64;
+        boolean redrawAll = !drawn || rows[FrameBuffer.MODE_WORD] != drawnRows[FrameBuffer.MODE_WORD];
+        boolean changed = false;
+        for (int y = 0; y < height; y++) {
+            int first = y * rowWords;
+            int second = FrameBuffer.PLANE_WORDS + first;
+            if (!redrawAll && Arrays.equals(rows, first, first + rowWords, drawnRows, first, first + rowWords)
+                    && Arrays.equals(rows, second, second + rowWords, drawnRows, second, second + rowWords)) {
+                continue;
             }
+            FrameBuffer.rowToPixels(rows, y, rowPixels, 0, palette);
+            pixelWriter.setPixels(0, y, width, 1, PixelFormat.getIntArgbInstance(), rowPixels, 0, width);
+            changed = true;
+        }
+        System.arraycopy(rows, 0, drawnRows, 0, rows.length);
+        drawn = true;
+        if (changed) {
+            present(width, height);
         }
     }
+
+    private void present(int width, int height) {
+        gc.drawImage(image, 0, 0, width, height, 0, 0, FrameBuffer.WIDTH * scale, FrameBuffer.HEIGHT * scale);
+    }
+
+    private static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24 |
+                (int) Math.round(color.getRed() * 255) << 16 |
+                (int) Math.round(color.getGreen() * 255) << 8 |
+                (int) Math.round(color.getBlue() * 255);
+    }
 }
@@ -0,0 +1,97 @@
+package emulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Re-executes a recorded run and keeps a snapshot every {@code checkpointInterval} cycles on the way, so
+ * seeking to any cycle restores the closest earlier checkpoint and replays only the remaining tail.
+ * A checkpoint at cycle N is taken before the events stamped N are applied.
+ */
+public class Replayer {
+    private final CPU cpu;
+    private final InputScript script;
+    private final long checkpointInterval;
+    private final List<Snapshot> checkpoints = new ArrayList<>();
+    private int[] checkpointEvents = new int[16];
+    private int nextEvent;
+
+    public Replayer(byte[] romData, InputLog log, long checkpointInterval) {
+        this(romData, log, checkpointInterval, ExecutionMode.COMPILED);
+    }
+
+    public Replayer(byte[] romData, InputLog log, long checkpointInterval, ExecutionMode executionMode) {
+        this(romData, log, checkpointInterval, executionMode, Profile.CHIP8);
+    }
+
+    public Replayer(byte[] romData, InputLog log, long checkpointInterval, ExecutionMode executionMode,
+                    Profile profile) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.cpu = new CPU(romData, log.getSeed(), profile);
+        this.cpu.setInstructionsPerSecond(log.getInstructionsPerSecond());
+        this.cpu.setExecutionMode(executionMode);
+        this.script = log.getScript();
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public CPU getCpu() {
+        return cpu;
+    }
+
+    /**
+     * Puts the CPU in the state it had after executing the given number of cycles and receiving the events
+     * stamped with that cycle.
+     */
+    public void seek(long cycle) throws RuntimeException {
+        int checkpoint = (int) Math.min(cycle / checkpointInterval, checkpoints.size() - 1);
+        if (checkpoint >= 0 && (cycle < cpu.getCycleNumber()
+                || checkpoint * checkpointInterval > cpu.getCycleNumber())) {
+            cpu.restore(checkpoints.get(checkpoint));
+            nextEvent = checkpointEvents[checkpoint];
+        }
+        if (cycle < cpu.getCycleNumber()) {
+            throw new IllegalStateException("No checkpoint at or before cycle " + cycle);
+        }
+        runTo(cycle);
+    }
+
+    private void runTo(long cycle) {
+        while (true) {
+            long now = cpu.getCycleNumber();
+            if (now == checkpoints.size() * checkpointInterval) {
+                addCheckpoint();
+            }
+            while (nextEvent < script.size() && script.cycleAt(nextEvent) <= now) {
+                script.apply(cpu, nextEvent++);
+            }
+            if (now >= cycle) {
+                return;
+            }
+            long stop = Math.min(cycle, (now / checkpointInterval + 1) * checkpointInterval);
+            if (nextEvent < script.size()) {
+                stop = Math.min(stop, script.cycleAt(nextEvent));
+            }
+            cpu.runCycles(stop - now);
+        }
+    }
+
+    private void addCheckpoint() {
+        if (checkpoints.size() == checkpointEvents.length) {
+            int[] grown = new int[checkpointEvents.length * 2];
+            System.arraycopy(checkpointEvents, 0, grown, 0, checkpointEvents.length);
+            checkpointEvents = grown;
+        }
+        checkpointEvents[checkpoints.size()] = nextEvent;
+        checkpoints.add(cpu.snapshot());
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+}
@@ -0,0 +1,286 @@
+package emulator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps recent frames as keyframes plus XOR deltas of the CPU state image in a preallocated direct
+ * ring buffer. The oldest keyframe and its deltas are dropped together whenever the frame limit or the
+ * byte budget would be exceeded, so every frame left in the ring can be reconstructed.
+ */
+public class RewindBuffer {
+    private static final int RECORD_HEADER = 5;
+    private static final byte KEYFRAME = 0;
+    private static final byte DELTA = 1;
+    private static final int MIN_SPAN_GAP = 4;
+
+    private final ByteBuffer ring;
+    private final int keyframeInterval;
+    private final int[] positions;
+    private byte[] previous = new byte[CPU.stateSize(Profile.CHIP8)];
+    private byte[] current = new byte[previous.length];
+    private byte[] encoded = new byte[previous.length * 2];
+    private int oldest;
+    private int frames;
+    private int head;
+    private int used;
+    private int sinceKeyframe;
+    private int readOffset;
+
+    public RewindBuffer(int maxFrames, int capacityBytes, int keyframeInterval) {
+        if (maxFrames < 1 || keyframeInterval < 1) {
+            throw new IllegalArgumentException("Frame limit and keyframe interval must be positive");
+        }
+        if (capacityBytes < 2 * (RECORD_HEADER + current.length)) {
+            throw new IllegalArgumentException("At least " + 2 * (RECORD_HEADER + current.length)
+                    + " bytes are required");
+        }
+        this.ring = ByteBuffer.allocateDirect(capacityBytes);
+        this.keyframeInterval = keyframeInterval;
+        this.positions = new int[maxFrames];
+    }
+
+    public static RewindBuffer forSeconds(int seconds, int capacityBytes) {
+        return new RewindBuffer(seconds * Scheduler.FRAME_RATE, capacityBytes, Scheduler.FRAME_RATE);
+    }
+
+    public void capture(CPU cpu) {
+        if (cpu.getStateSize() != current.length) {
+            resize(cpu.getStateSize());
+        }
+        cpu.saveState(current);
+        int length;
+        byte kind;
+        if (frames == 0 || sinceKeyframe + 1 >= keyframeInterval) {
+            System.arraycopy(current, 0, encoded, 0, current.length);
+            length = current.length;
+            kind = KEYFRAME;
+            sinceKeyframe = 0;
+        } else {
+            length = encodeDelta();
+            kind = DELTA;
+            sinceKeyframe++;
+        }
+        System.arraycopy(current, 0, previous, 0, current.length);
+
+        int size = RECORD_HEADER + length;
+        while (frames > 0 && (frames == positions.length || used + size > ring.capacity())) {
+            dropOldestGroup();
+        }
+        if (kind == DELTA && frames == 0) {
+            System.arraycopy(current, 0, encoded, 0, current.length);
+            length = current.length;
+            size = RECORD_HEADER + length;
+            kind = KEYFRAME;
+            sinceKeyframe = 0;
+        }
+        positions[(oldest + frames) % positions.length] = head;
+        frames++;
+        used += size;
+        put(kind);
+        putInt(length);
+        put(encoded, length);
+    }
+
+    /**
+     * Moves the CPU back by the given number of captured frames, discarding everything newer.
+     * Returns false when the buffer does not reach that far back.
+     */
+    public boolean rewind(CPU cpu, int count) {
+        if (count < 0 || count >= frames) {
+            return false;
+        }
+        int target = frames - 1 - count;
+        int keyframe = target;
+        while (kindAt(keyframe) != KEYFRAME) {
+            keyframe--;
+        }
+        for (int frame = keyframe; frame <= target; frame++) {
+            int position = positions[(oldest + frame) % positions.length];
+            byte kind = ring.get(position);
+            int length = getInt((position + 1) % ring.capacity());
+            int payload = (position + RECORD_HEADER) % ring.capacity();
+            if (kind == KEYFRAME) {
+                get(payload, current, length);
+            } else {
+                get(payload, encoded, length);
+                applyDelta(length);
+            }
+        }
+        cpu.loadState(current);
+        System.arraycopy(current, 0, previous, 0, current.length);
+
+        int next = target + 1;
+        if (next < frames) {
+            int position = positions[(oldest + next) % positions.length];
+            used = distance(positions[oldest], position);
+            head = position;
+        }
+        frames = next;
+        sinceKeyframe = target - keyframe;
+        return true;
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+
+    public int getUsedBytes() {
+        return used;
+    }
+
+    public int getCapacityBytes() {
+        return ring.capacity();
+    }
+
+    /**
+     * Adapts the buffers to a CPU whose state image has a different size, such as one with XO-CHIP memory.
+     * Frames captured so far are dropped.
+     */
+    private void resize(int stateSize) {
+        if (ring.capacity() < 2 * (RECORD_HEADER + stateSize)) {
+            throw new IllegalStateException("At least " + 2 * (RECORD_HEADER + stateSize)
+                    + " bytes are required for this CPU");
+        }
+        previous = new byte[stateSize];
+        current = new byte[stateSize];
+        encoded = new byte[stateSize * 2];
+        clear();
+    }
+
+    public void clear() {
+        frames = 0;
+        oldest = 0;
+        head = 0;
+        used = 0;
+        sinceKeyframe = 0;
+    }
+
+    private int encodeDelta() {
+        int length = 0;
+        int address = 0;
+        int last = 0;
+        while (address < current.length) {
+            if (current[address] == previous[address]) {
+                address++;
+                continue;
+            }
+            int start = address;
+            int end = address + 1;
+            while (end < current.length) {
+                if (current[end] != previous[end]) {
+                    end++;
+                } else if (end + MIN_SPAN_GAP < current.length && differsWithin(end, MIN_SPAN_GAP)) {
+                    end++;
+                } else {
+                    break;
+                }
+            }
+            length = putVarint(length, start - last);
+            length = putVarint(length, end - start);
+            for (int i = start; i < end; i++) {
+                encoded[length++] = (byte) (current[i] ^ previous[i]);
+            }
+            last = end;
+            address = end;
+        }
+        return length;
+    }
+
+    private boolean differsWithin(int from, int span) {
+        for (int i = from; i < from + span; i++) {
+            if (current[i] != previous[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void applyDelta(int length) {
+        int address = 0;
+        readOffset = 0;
+        while (readOffset < length) {
+            address += getVarint();
+            int span = getVarint();
+            for (int i = 0; i < span; i++) {
+                current[address++] ^= encoded[readOffset++];
+            }
+        }
+    }
+
+    /**
+     * Writes a gap or span length seven bits at a time, low bits first, so offsets anywhere in a state image
+     * of any size fit while the common short ones still take a single byte.
+     */
+    private int putVarint(int offset, int value) {
+        while (value >= 0x80) {
+            encoded[offset++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        encoded[offset++] = (byte) value;
+        return offset;
+    }
+
+    private int getVarint() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = encoded[readOffset++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private void dropOldestGroup() {
+        do {
+            oldest = (oldest + 1) % positions.length;
+            frames--;
+        } while (frames > 0 && kindAt(0) != KEYFRAME);
+        used = frames == 0 ? 0 : distance(positions[oldest], head);
+        if (frames == 0) {
+            head = 0;
+        }
+    }
+
+    private byte kindAt(int frame) {
+        return ring.get(positions[(oldest + frame) % positions.length]);
+    }
+
+    private int distance(int from, int to) {
+        int distance = (to - from + ring.capacity()) % ring.capacity();
+        return distance == 0 && frames > 0 ? ring.capacity() : distance;
+    }
+
+    private void put(byte value) {
+        ring.put(head, value);
+        head = (head + 1) % ring.capacity();
+    }
+
+    private void putInt(int value) {
+        put((byte) (value >> 24));
+        put((byte) (value >> 16));
+        put((byte) (value >> 8));
+        put((byte) value);
+    }
+
+    private void put(byte[] source, int length) {
+        int first = Math.min(length, ring.capacity() - head);
+        ring.put(head, source, 0, first);
+        ring.put(0, source, first, length - first);
+        head = (head + length) % ring.capacity();
+    }
+
+    private int getInt(int position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | ring.get((position + i) % ring.capacity()) & 0xFF;
+        }
+        return value;
+    }
+
+    private void get(int position, byte[] destination, int length) {
+        int first = Math.min(length, ring.capacity() - position);
+        ring.get(position, destination, 0, first);
+        ring.get(0, destination, first, length - first);
+    }
+}
@@ -0,0 +1,478 @@
+package emulator;
+
+import util.CpuUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Static pre-validation of a program image. Walks the control-flow graph from 0x200, following jumps, calls,
+ * returns and both outcomes of every skip, and computes for each reachable instruction an interval for I and
+ * every register plus the possible call depths. An instruction is proven when the checks the CPU makes before
+ * executing it cannot fail in any state that reaches it: accesses through I stay inside memory, stores stay
+ * clear of code, calls cannot overflow the stack and returns cannot underflow it.
+ * <p>
+ * The intervals hold for every state reachable from one the analysis admits, as long as no code byte changes.
+ * Results are immutable and shared between CPUs running the same image.
+ */
+final class RomAnalysis {
+    static final int ENTRY = 0x200;
+
+    private static final int WIDEN_AFTER = 8;
+    private static final int MAX_SHARED_ANALYSES = 256;
+    private static final ConcurrentHashMap<Key, RomAnalysis> shared = new ConcurrentHashMap<>();
+
+    private final byte[] image;
+    private final State[] states;
+    private final boolean[] returnSite;
+    private final boolean[] runsOff;
+    private final boolean[] code;
+    private final int[] codeAddresses;
+    private final boolean[] proven;
+
+    private RomAnalysis(byte[] image) {
+        this.image = image;
+        this.states = new State[image.length];
+        this.returnSite = new boolean[image.length];
+        this.runsOff = new boolean[image.length];
+        this.code = new boolean[image.length];
+        this.proven = new boolean[image.length];
+        explore();
+        int count = 0;
+        for (int pc = 0; pc < image.length; pc++) {
+            if (states[pc] != null) {
+                count += code[pc] ? 1 : 2;
+                code[pc] = true;
+                code[pc + 1] = true;
+            }
+        }
+        codeAddresses = new int[count];
+        count = 0;
+        for (int address = 0; address < image.length; address++) {
+            if (code[address]) {
+                codeAddresses[count++] = address;
+            }
+        }
+        for (int pc = 0; pc < image.length; pc++) {
+            proven[pc] = states[pc] != null && uncheckedFault(pc) == null;
+        }
+    }
+
+    /**
+     * Returns the analysis of a memory image, reusing an earlier result for identical images.
+     */
+    static RomAnalysis of(byte[] mem) {
+        Key key = new Key(mem.clone());
+        RomAnalysis analysis = shared.get(key);
+        if (analysis == null) {
+            analysis = new RomAnalysis(key.image);
+            if (shared.size() < MAX_SHARED_ANALYSES) {
+                RomAnalysis existing = shared.putIfAbsent(key, analysis);
+                if (existing != null) {
+                    analysis = existing;
+                }
+            }
+        }
+        return analysis;
+    }
+
+    boolean isReachable(int pc) {
+        return pc >= 0 && pc < states.length && states[pc] != null;
+    }
+
+    /**
+     * True if the instruction at pc is reachable and the CPU's own checks for it are redundant.
+     */
+    boolean isProven(int pc) {
+        return pc >= 0 && pc < proven.length && proven[pc];
+    }
+
+    boolean isCode(int address) {
+        return code[address];
+    }
+
+    /**
+     * True if a machine about to execute pc with this state lies within what the analysis computed for pc,
+     * so the proofs keep holding from here on. The register a pending FX0A will overwrite is not checked.
+     */
+    boolean admits(int pc, int i, byte[] reg, short[] stack, int sp, int pendingKeyRegister, byte[] mem) {
+        if (!isReachable(pc)) {
+            return false;
+        }
+        State state = states[pc];
+        if (i < state.iLo || i > state.iHi || sp < state.depthLo || sp > state.depthHi) {
+            return false;
+        }
+        for (int r = 0; r < reg.length; r++) {
+            if (r != pendingKeyRegister && (reg[r] < state.lo[r] || reg[r] > state.hi[r])) {
+                return false;
+            }
+        }
+        for (int entry = 0; entry < sp; entry++) {
+            if (stack[entry] < 0 || stack[entry] >= returnSite.length || !returnSite[stack[entry]]) {
+                return false;
+            }
+        }
+        for (int address : codeAddresses) {
+            if (mem[address] != image[address]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void explore() {
+        int[] visits = new int[image.length];
+        boolean[] queued = new boolean[image.length];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        List<Integer> returns = new ArrayList<>();
+        List<Integer> sites = new ArrayList<>();
+        states[ENTRY] = new State();
+        work.add(ENTRY);
+        queued[ENTRY] = true;
+        while (!work.isEmpty()) {
+            int pc = work.poll();
+            queued[pc] = false;
+            State in = states[pc];
+            int op = IdleLoop.opAt(image, pc);
+            List<Integer> targets = new ArrayList<>(2);
+            State out = in;
+            switch (Decoder.handler(op)) {
+                case Decoder.UNKNOWN:
+                    break;
+                case Decoder.JMP:
+                    targets.add((int) Decoder.nnn(op));
+                    break;
+                case Decoder.CALL:
+                    if (in.depthLo < CPU.STACK_DEPTH) {
+                        out = in.copy();
+                        out.depthLo++;
+                        out.depthHi = Math.min(out.depthHi, CPU.STACK_DEPTH - 1) + 1;
+                        targets.add((int) Decoder.nnn(op));
+                    }
+                    if (pc + 2 < returnSite.length && !returnSite[pc + 2]) {
+                        returnSite[pc + 2] = true;
+                        sites.add(pc + 2);
+                        for (int ret : returns) {
+                            if (!queued[ret]) {
+                                work.add(ret);
+                                queued[ret] = true;
+                            }
+                        }
+                    }
+                    break;
+                case Decoder.RET:
+                    if (!returns.contains(pc)) {
+                        returns.add(pc);
+                    }
+                    if (in.depthHi > 0) {
+                        out = in.copy();
+                        out.depthLo = Math.max(out.depthLo, 1) - 1;
+                        out.depthHi--;
+                        targets.addAll(sites);
+                    }
+                    break;
+                case Decoder.SE_N:
+                case Decoder.SNE_N:
+                case Decoder.SNE_R:
+                case Decoder.SKP:
+                case Decoder.SKNP:
+                    targets.add(pc + 2);
+                    targets.add(pc + 4);
+                    break;
+                case Decoder.RND:
+                    if (Decoder.nn(op) >= 0) {
+                        out = in.copy();
+                        out.set(Decoder.x(op), 0, Decoder.nn(op));
+                        targets.add(pc + 2);
+                    }
+                    break;
+                default:
+                    out = transfer(in, op);
+                    targets.add(pc + 2);
+            }
+            for (int target : targets) {
+                if (target < 0 || target + 1 >= image.length) {
+                    runsOff[pc] = true;
+                    continue;
+                }
+                boolean changed;
+                if (states[target] == null) {
+                    states[target] = out.copy();
+                    changed = true;
+                } else {
+                    changed = states[target].join(out, ++visits[target] > WIDEN_AFTER);
+                }
+                if (changed && !queued[target]) {
+                    work.add(target);
+                    queued[target] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * State after a straight-line instruction.
+     */
+    private static State transfer(State in, int op) {
+        byte x = Decoder.x(op);
+        byte y = Decoder.y(op);
+        State out = in.copy();
+        switch (Decoder.handler(op)) {
+            case Decoder.LD_N:
+                out.set(x, Decoder.nn(op), Decoder.nn(op));
+                break;
+            case Decoder.ADD_N:
+                out.set(x, in.lo[x] + Decoder.nn(op), in.hi[x] + Decoder.nn(op));
+                break;
+            case Decoder.LD_R:
+                out.set(x, in.lo[y], in.hi[y]);
+                break;
+            case Decoder.AND:
+                if (in.lo[x] >= 0 || in.lo[y] >= 0) {
+                    int hi = Math.min(in.lo[x] >= 0 ? in.hi[x] : Byte.MAX_VALUE, in.lo[y] >= 0 ? in.hi[y] : Byte.MAX_VALUE);
+                    out.set(x, 0, hi);
+                } else {
+                    out.set(x, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                }
+                break;
+            case Decoder.ADD:
+                out.set(0xF, 0, 0);
+                out.set(x, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                break;
+            case Decoder.SUB_R:
+                out.set(0xF, 0, 1);
+                out.set(x, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                break;
+            case Decoder.LDI:
+                out.iLo = out.iHi = Decoder.nnn(op);
+                break;
+            case Decoder.DRW:
+                out.set(0xF, 0, 1);
+                break;
+            case Decoder.LDRDT:
+                out.set(x, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                break;
+            case Decoder.LDK:
+                out.set(x, 0, CPU.KEY_COUNT - 1);
+                break;
+            case Decoder.ADD_I:
+                out.setI(in.iLo + in.lo[x], in.iHi + in.hi[x]);
+                break;
+            case Decoder.LDF:
+                out.setI(in.lo[x] * 5, in.hi[x] * 5);
+                break;
+            case Decoder.LDR:
+                for (int r = 0; r <= x; r++) {
+                    out.set(r, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                }
+                out.setI(in.iLo + x + 1, in.iHi + x + 1);
+                break;
+            case Decoder.STR:
+                out.setI(in.iLo + x + 1, in.iHi + x + 1);
+                break;
+            default:
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * Why the CPU's own check for the instruction at a reachable pc could fail, or null if it cannot.
+     */
+    private String uncheckedFault(int pc) {
+        State state = states[pc];
+        int op = IdleLoop.opAt(image, pc);
+        byte x = Decoder.x(op);
+        switch (Decoder.handler(op)) {
+            case Decoder.RET:
+                return state.depthLo > 0 ? null : "may return with an empty stack";
+            case Decoder.CALL:
+                return state.depthHi < CPU.STACK_DEPTH ? null : "may overflow the stack";
+            case Decoder.LDB:
+                return store(state, 2);
+            case Decoder.STR:
+                return store(state, x);
+            case Decoder.LDR:
+                return inside(state, x) ? null : "may read outside memory";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Why the instruction at a reachable pc could fault on any check, including the ones the JVM makes.
+     */
+    private String fault(int pc) {
+        String fault = uncheckedFault(pc);
+        if (fault != null) {
+            return fault;
+        }
+        State state = states[pc];
+        int op = IdleLoop.opAt(image, pc);
+        byte x = Decoder.x(op);
+        switch (Decoder.handler(op)) {
+            case Decoder.UNKNOWN:
+                return "unknown opcode";
+            case Decoder.DRW:
+                return Decoder.n(op) == 0 || inside(state, Decoder.n(op) - 1) ? null : "may draw from outside memory";
+            case Decoder.SKP:
+            case Decoder.SKNP:
+                return state.lo[x] >= 0 && state.hi[x] < CPU.KEY_COUNT ? null : "may test an invalid key";
+            case Decoder.RND:
+                return Decoder.nn(op) >= 0 ? null : "random range is negative";
+            default:
+                return runsOff[pc] ? "may continue past the end of memory" : null;
+        }
+    }
+
+    private String store(State state, int last) {
+        if (!inside(state, last)) {
+            return "may write outside memory";
+        }
+        for (int address = state.iLo; address <= state.iHi + last; address++) {
+            if (code[address]) {
+                return "may overwrite code";
+            }
+        }
+        return null;
+    }
+
+    private boolean inside(State state, int last) {
+        return state.iLo >= 0 && state.iHi + last < image.length;
+    }
+
+    String report() {
+        StringBuilder text = new StringBuilder();
+        int reachable = 0;
+        int faults = 0;
+        int unproven = 0;
+        for (int pc = 0; pc < image.length; pc++) {
+            if (states[pc] == null) {
+                continue;
+            }
+            reachable++;
+            String fault = fault(pc);
+            if (fault == null) {
+                continue;
+            }
+            faults++;
+            unproven += proven[pc] ? 0 : 1;
+            text.append(String.format("%03X  %-16s %s", pc,
+                    Decoder.disassemble(CpuUtil.shortFromBytes(image[pc], image[pc + 1])), fault));
+            State state = states[pc];
+            text.append(String.format("  (I %04X..%04X, depth %d..%d)%n", state.iLo & 0xFFFF, state.iHi & 0xFFFF,
+                    state.depthLo, state.depthHi));
+        }
+        text.insert(0, String.format("%d reachable instructions, %d proven, %d possible faults, %d code bytes%n",
+                reachable, reachable - unproven, faults, codeAddresses.length));
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: RomAnalysis <rom>");
+            System.exit(2);
+        }
+        CPU cpu = new CPU(ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0]))), 0);
+        byte[] mem = new byte[cpu.getMemorySize()];
+        cpu.copyMemory(mem);
+        System.out.print(of(mem).report());
+    }
+
+    private static final class State {
+        int iLo;
+        int iHi;
+        int depthLo;
+        int depthHi;
+        final byte[] lo = new byte[16];
+        final byte[] hi = new byte[16];
+
+        State copy() {
+            State copy = new State();
+            copy.iLo = iLo;
+            copy.iHi = iHi;
+            copy.depthLo = depthLo;
+            copy.depthHi = depthHi;
+            System.arraycopy(lo, 0, copy.lo, 0, lo.length);
+            System.arraycopy(hi, 0, copy.hi, 0, hi.length);
+            return copy;
+        }
+
+        /**
+         * Sets a register to an interval, or to every value if the interval wraps around.
+         */
+        void set(int r, int low, int high) {
+            boolean fits = low >= Byte.MIN_VALUE && high <= Byte.MAX_VALUE;
+            lo[r] = fits ? (byte) low : Byte.MIN_VALUE;
+            hi[r] = fits ? (byte) high : Byte.MAX_VALUE;
+        }
+
+        void setI(int low, int high) {
+            boolean fits = low >= Short.MIN_VALUE && high <= Short.MAX_VALUE;
+            iLo = fits ? low : Short.MIN_VALUE;
+            iHi = fits ? high : Short.MAX_VALUE;
+        }
+
+        /**
+         * Widens this state to include another. Once widening, bounds that move jump straight to their limit.
+         */
+        boolean join(State other, boolean widen) {
+            boolean changed = false;
+            if (other.iLo < iLo) {
+                iLo = widen ? Short.MIN_VALUE : other.iLo;
+                changed = true;
+            }
+            if (other.iHi > iHi) {
+                iHi = widen ? Short.MAX_VALUE : other.iHi;
+                changed = true;
+            }
+            if (other.depthLo < depthLo) {
+                depthLo = widen ? 0 : other.depthLo;
+                changed = true;
+            }
+            if (other.depthHi > depthHi) {
+                depthHi = widen ? CPU.STACK_DEPTH : other.depthHi;
+                changed = true;
+            }
+            for (int r = 0; r < lo.length; r++) {
+                if (other.lo[r] < lo[r]) {
+                    lo[r] = widen ? Byte.MIN_VALUE : other.lo[r];
+                    changed = true;
+                }
+                if (other.hi[r] > hi[r]) {
+                    hi[r] = widen ? Byte.MAX_VALUE : other.hi[r];
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+    }
+
+    private static final class Key {
+        final byte[] image;
+        final int hash;
+
+        Key(byte[] image) {
+            this.image = image;
+            this.hash = Arrays.hashCode(image);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(image, ((Key) other).image);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package emulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves ROM names to read-only buffers. Names are looked up in the registered packs first and then
+ * treated as file paths. Every ROM is cached by its SHA-1, so identical content read from different places
+ * is held once, and a file is only read again when its size or modification time changes.
+ */
+public class RomCatalog {
+    private final List<RomPack> packs = new ArrayList<>();
+    private final Map<String, ByteBuffer> byHash = new ConcurrentHashMap<>();
+    private final Map<Path, CachedFile> files = new ConcurrentHashMap<>();
+
+    public synchronized void addPack(RomPack pack) {
+        packs.add(pack);
+        for (RomEntry entry : pack.getEntries()) {
+            byHash.putIfAbsent(entry.getHashString(), pack.data(entry));
+        }
+    }
+
+    public ByteBuffer load(String name) throws IOException {
+        RomPack pack = packFor(name);
+        if (pack != null) {
+            return pack.data(pack.find(name));
+        }
+        return loadFile(Paths.get(name)).rom.duplicate();
+    }
+
+    public RomEntry describe(String name) throws IOException {
+        RomPack pack = packFor(name);
+        if (pack != null) {
+            return pack.find(name);
+        }
+        return loadFile(Paths.get(name)).entry;
+    }
+
+    public ByteBuffer findByHash(String hash) {
+        ByteBuffer rom = byHash.get(hash);
+        return rom == null ? null : rom.duplicate();
+    }
+
+    public List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (RomPack pack : packsSnapshot()) {
+            for (RomEntry entry : pack.getEntries()) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    private RomPack packFor(String name) {
+        for (RomPack pack : packsSnapshot()) {
+            if (pack.find(name) != null) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    private synchronized List<RomPack> packsSnapshot() {
+        return new ArrayList<>(packs);
+    }
+
+    private CachedFile loadFile(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        CachedFile cached = files.get(path);
+        if (cached != null && cached.size == attributes.size()
+                && cached.modified.equals(attributes.lastModifiedTime())) {
+            return cached;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).asReadOnlyBuffer();
+        RomEntry entry = RomEntry.describe(path.getFileName().toString(), data);
+        ByteBuffer shared = byHash.putIfAbsent(entry.getHashString(), data);
+        cached = new CachedFile(attributes.size(), attributes.lastModifiedTime(), entry,
+                shared != null ? shared : data);
+        files.put(path, cached);
+        return cached;
+    }
+
+    private static final class CachedFile {
+        final long size;
+        final FileTime modified;
+        final RomEntry entry;
+        final ByteBuffer rom;
+
+        CachedFile(long size, FileTime modified, RomEntry entry, ByteBuffer rom) {
+            this.size = size;
+            this.modified = modified;
+            this.entry = entry;
+            this.rom = rom;
+        }
+    }
+}
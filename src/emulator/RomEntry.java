@@ -0,0 +1,176 @@
+package emulator;
+
+import util.CpuUtil;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Metadata for one ROM: its name, size, SHA-1 content hash and the feature flags found by scanning its opcodes.
+ * The scan reads every aligned word, so data bytes can produce false positives; the flags are hints for
+ * choosing quirks and filtering batches, not proof of behaviour.
+ */
+public final class RomEntry {
+    public static final int USES_RANDOM = 1;
+    public static final int USES_KEYS = 1 << 1;
+    public static final int WAITS_FOR_KEY = 1 << 2;
+    public static final int USES_SOUND = 1 << 3;
+    public static final int WRITES_MEMORY = 1 << 4;
+    public static final int SHIFT_OPCODES = 1 << 5;
+    public static final int LOAD_STORE_OPCODES = 1 << 6;
+    public static final int JUMP_OFFSET_OPCODES = 1 << 7;
+    public static final int SUPER_CHIP_OPCODES = 1 << 8;
+    public static final int XO_CHIP_OPCODES = 1 << 9;
+    public static final int UNSUPPORTED_OPCODES = 1 << 10;
+
+    static final int HASH_LENGTH = 20;
+
+    private final String name;
+    private final int length;
+    private final byte[] hash;
+    private final int features;
+    final long offset;
+
+    RomEntry(String name, int length, byte[] hash, int features, long offset) {
+        this.name = name;
+        this.length = length;
+        this.hash = hash;
+        this.features = features;
+        this.offset = offset;
+    }
+
+    public static RomEntry describe(String name, ByteBuffer rom) {
+        return new RomEntry(name, rom.remaining(), hash(rom), detectFeatures(rom), -1);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte[] getHash() {
+        return hash.clone();
+    }
+
+    public String getHashString() {
+        return toHex(hash);
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public boolean hasFeature(int feature) {
+        return (features & feature) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-24s %6d  %s  %s", name, length, getHashString(), describeFeatures(features));
+    }
+
+    static byte[] hash(ByteBuffer rom) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(rom.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    static int detectFeatures(ByteBuffer rom) {
+        int features = 0;
+        int start = rom.position();
+        for (int i = start; i + 1 < rom.limit(); i += 2) {
+            short opcode = CpuUtil.shortFromBytes(rom.get(i), rom.get(i + 1));
+            switch (Decoder.handler(Decoder.decode(opcode))) {
+                case Decoder.RND:
+                    features |= USES_RANDOM;
+                    break;
+                case Decoder.SKP:
+                case Decoder.SKNP:
+                    features |= USES_KEYS;
+                    break;
+                case Decoder.LDK:
+                    features |= USES_KEYS | WAITS_FOR_KEY;
+                    break;
+                case Decoder.LDST:
+                    features |= USES_SOUND;
+                    break;
+                case Decoder.LDB:
+                    features |= WRITES_MEMORY;
+                    break;
+                case Decoder.LDR:
+                    features |= LOAD_STORE_OPCODES;
+                    break;
+                case Decoder.STR:
+                    features |= LOAD_STORE_OPCODES | WRITES_MEMORY;
+                    break;
+                case Decoder.UNKNOWN:
+                    features |= classifyUnknown(opcode & 0xFFFF);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return features;
+    }
+
+    private static int classifyUnknown(int opcode) {
+        int low = opcode & 0xFF;
+        switch (opcode >> 12) {
+            case 0x0:
+                if ((low & 0xF0) == 0xC0 || low >= 0xFB) {
+                    return SUPER_CHIP_OPCODES | UNSUPPORTED_OPCODES;
+                }
+                return opcode == 0 ? 0 : UNSUPPORTED_OPCODES;
+            case 0x5:
+                if ((opcode & 0xF) == 0x2 || (opcode & 0xF) == 0x3) {
+                    return XO_CHIP_OPCODES | UNSUPPORTED_OPCODES;
+                }
+                return UNSUPPORTED_OPCODES;
+            case 0x8:
+                if ((opcode & 0xF) == 0x6 || (opcode & 0xF) == 0xE) {
+                    return SHIFT_OPCODES | UNSUPPORTED_OPCODES;
+                }
+                return UNSUPPORTED_OPCODES;
+            case 0xB:
+                return JUMP_OFFSET_OPCODES | UNSUPPORTED_OPCODES;
+            case 0xF:
+                if (low == 0x30 || low == 0x75 || low == 0x85) {
+                    return SUPER_CHIP_OPCODES | UNSUPPORTED_OPCODES;
+                }
+                if (opcode == 0xF000 || low == 0x01 || low == 0x02 || low == 0x3A) {
+                    return XO_CHIP_OPCODES | UNSUPPORTED_OPCODES;
+                }
+                return UNSUPPORTED_OPCODES;
+            default:
+                return UNSUPPORTED_OPCODES;
+        }
+    }
+
+    static String describeFeatures(int features) {
+        String[] names = {"random", "keys", "wait-key", "sound", "writes-memory", "shift", "load-store",
+                "jump-offset", "schip", "xo-chip", "unsupported"};
+        StringBuilder description = new StringBuilder();
+        for (int bit = 0; bit < names.length; bit++) {
+            if ((features & 1 << bit) != 0) {
+                description.append(description.length() == 0 ? "" : ",").append(names[bit]);
+            }
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package emulator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Many ROMs concatenated into one file behind a header index of names, sizes, hashes and feature flags.
+ * The file is memory-mapped once and each ROM is handed out as a read-only slice of the mapping.
+ */
+public final class RomPack {
+    static final int MAGIC = 0x4338504B;
+    static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4;
+    private static final int FIXED_ENTRY_SIZE = 8 + 4 + RomEntry.HASH_LENGTH + 4 + 2;
+
+    private final Path path;
+    private final MappedByteBuffer mapping;
+    private final List<RomEntry> entries;
+    private final Map<String, RomEntry> byName = new HashMap<>();
+
+    private RomPack(Path path, MappedByteBuffer mapping, List<RomEntry> entries) {
+        this.path = path;
+        this.mapping = mapping;
+        this.entries = Collections.unmodifiableList(entries);
+        for (RomEntry entry : entries) {
+            byName.putIfAbsent(entry.getName(), entry);
+        }
+    }
+
+    public static RomPack open(Path path) throws IOException {
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapping.capacity() < HEADER_SIZE || mapping.getInt(0) != MAGIC) {
+            throw new IOException("Not a ROM pack: " + path);
+        }
+        short version = mapping.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported ROM pack version " + version);
+        }
+        int count = mapping.getInt(6);
+        List<RomEntry> entries = new ArrayList<>(count);
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (position + FIXED_ENTRY_SIZE > mapping.capacity()) {
+                throw new IOException("Truncated ROM pack index");
+            }
+            long offset = mapping.getLong(position);
+            int length = mapping.getInt(position + 8);
+            byte[] hash = new byte[RomEntry.HASH_LENGTH];
+            mapping.get(position + 12, hash);
+            int features = mapping.getInt(position + 12 + RomEntry.HASH_LENGTH);
+            int nameLength = mapping.getShort(position + 16 + RomEntry.HASH_LENGTH) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            mapping.get(position + FIXED_ENTRY_SIZE, name);
+            position += FIXED_ENTRY_SIZE + nameLength;
+            if (offset < 0 || length < 0 || offset + length > mapping.capacity()) {
+                throw new IOException("ROM pack entry " + i + " lies outside the file");
+            }
+            entries.add(new RomEntry(new String(name, StandardCharsets.UTF_8), length, hash, features, offset));
+        }
+        return new RomPack(path, mapping, entries);
+    }
+
+    public static void write(Path pack, List<Path> roms) throws IOException {
+        List<String> names = new ArrayList<>(roms.size());
+        List<ByteBuffer> data = new ArrayList<>(roms.size());
+        for (Path rom : roms) {
+            names.add(rom.getFileName().toString());
+            data.add(ByteBuffer.wrap(Files.readAllBytes(rom)));
+        }
+        write(pack, names, data);
+    }
+
+    public static void write(Path pack, List<String> names, List<ByteBuffer> roms) throws IOException {
+        List<byte[]> encodedNames = new ArrayList<>(names.size());
+        long offset = HEADER_SIZE;
+        for (String name : names) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            encodedNames.add(encoded);
+            offset += FIXED_ENTRY_SIZE + encoded.length;
+        }
+        try (OutputStream file = Files.newOutputStream(pack)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(roms.size());
+            for (int i = 0; i < roms.size(); i++) {
+                ByteBuffer rom = roms.get(i);
+                out.writeLong(offset);
+                out.writeInt(rom.remaining());
+                out.write(RomEntry.hash(rom));
+                out.writeInt(RomEntry.detectFeatures(rom));
+                out.writeShort(encodedNames.get(i).length);
+                out.write(encodedNames.get(i));
+                offset += rom.remaining();
+            }
+            for (ByteBuffer rom : roms) {
+                byte[] bytes = new byte[rom.remaining()];
+                rom.duplicate().get(bytes);
+                out.write(bytes);
+            }
+            out.flush();
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public List<RomEntry> getEntries() {
+        return entries;
+    }
+
+    public RomEntry find(String name) {
+        return byName.get(name);
+    }
+
+    public ByteBuffer data(RomEntry entry) {
+        return mapping.slice((int) entry.offset, entry.getLength()).asReadOnlyBuffer();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("create") || args[0].equals("list"))) {
+            System.out.println("Usage: RomPack create <pack> <rom>... | RomPack list <pack>");
+            System.exit(2);
+        }
+        Path pack = Paths.get(args[1]);
+        if (args[0].equals("create")) {
+            List<Path> roms = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                roms.add(Paths.get(args[i]));
+            }
+            write(pack, roms);
+        }
+        for (RomEntry entry : open(pack).getEntries()) {
+            System.out.println(entry);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package emulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the CPU in batches of one 60 Hz frame. The CPU's timers tick from its own cycle count, so timing
+ * is identical with or without pacing; when throttled, wall-clock pacing is applied only between frames.
+ */
+public class Scheduler {
+    public static final int FRAME_RATE = CPU.TIMER_FREQUENCY;
+    private static final long FRAME_NANOS = 1_000_000_000L / FRAME_RATE;
+    private static final int MAX_FRAMES_BEHIND = 5;
+
+    private final CPU cpu;
+    private final int instructionsPerSecond;
+    private int frameRemainder;
+    private long frameNumber;
+    private boolean throttled = true;
+    private long nextFrameTime;
+    private long overruns;
+    private RewindBuffer rewindBuffer;
+    private Beeper beeper;
+    private FrameSink frameSink;
+    private InputScript input;
+    private LiveInput liveInput;
+
+    public Scheduler(CPU cpu, int instructionsPerSecond) {
+        this.cpu = cpu;
+        this.instructionsPerSecond = instructionsPerSecond;
+        cpu.setInstructionsPerSecond(instructionsPerSecond);
+    }
+
+    public static Scheduler withCyclesPerFrame(CPU cpu, int cyclesPerFrame) {
+        return new Scheduler(cpu, cyclesPerFrame * FRAME_RATE);
+    }
+
+    public long runFrame() throws RuntimeException {
+        long cycles = instructionsPerSecond / FRAME_RATE;
+        frameRemainder += instructionsPerSecond % FRAME_RATE;
+        if (frameRemainder >= FRAME_RATE) {
+            frameRemainder -= FRAME_RATE;
+            cycles++;
+        }
+        Metrics metrics = cpu.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (input != null) {
+            input.run(cpu, cpu.getCycleNumber() + cycles);
+        } else if (liveInput != null) {
+            liveInput.run(cpu, cpu.getCycleNumber() + cycles);
+        } else {
+            cpu.runCycles(cycles);
+        }
+        frameNumber++;
+        if (metrics != null) {
+            metrics.frameCompleted(frameNumber, cycles, start, System.nanoTime());
+        }
+        if (frameSink != null) {
+            try {
+                frameSink.frameCompleted(frameNumber, cpu.getFrameBuffer());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't write frame", e);
+            }
+        }
+        if (beeper != null) {
+            beeper.renderFrame(cpu);
+        }
+        if (rewindBuffer != null) {
+            rewindBuffer.capture(cpu);
+        }
+        return cycles;
+    }
+
+    public void runFrames(long frames) throws RuntimeException {
+        for (long i = 0; i < frames; i++) {
+            runFrame();
+            awaitNextFrame();
+        }
+    }
+
+    public void awaitNextFrame() {
+        if (!throttled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextFrameTime == 0 || now - nextFrameTime > MAX_FRAMES_BEHIND * FRAME_NANOS) {
+            if (nextFrameTime != 0) {
+                overruns++;
+                if (cpu.getMetrics() != null) {
+                    cpu.getMetrics().overrun(now - nextFrameTime);
+                }
+            }
+            nextFrameTime = now + FRAME_NANOS;
+            return;
+        }
+        while (now < nextFrameTime) {
+            LockSupport.parkNanos(nextFrameTime - now);
+            now = System.nanoTime();
+        }
+        nextFrameTime += FRAME_NANOS;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    public int getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public RewindBuffer getRewindBuffer() {
+        return rewindBuffer;
+    }
+
+    public void setRewindBuffer(RewindBuffer rewindBuffer) {
+        this.rewindBuffer = rewindBuffer;
+    }
+
+    public Beeper getBeeper() {
+        return beeper;
+    }
+
+    public void setBeeper(Beeper beeper) {
+        this.beeper = beeper;
+    }
+
+    public FrameSink getFrameSink() {
+        return frameSink;
+    }
+
+    public void setFrameSink(FrameSink frameSink) {
+        this.frameSink = frameSink;
+    }
+
+    public InputScript getInput() {
+        return input;
+    }
+
+    /**
+     * Feeds the given script's key events to the CPU at their stamped cycles while frames run.
+     */
+    public void setInput(InputScript input) {
+        this.input = input;
+    }
+
+    public LiveInput getLiveInput() {
+        return liveInput;
+    }
+
+    /**
+     * Feeds queued key events to the CPU at the cycles matching when they arrived while frames run. A script
+     * set through {@link #setInput} takes precedence.
+     */
+    public void setLiveInput(LiveInput liveInput) {
+        this.liveInput = liveInput;
+    }
+
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    public void setThrottled(boolean throttled) {
+        this.throttled = throttled;
+        nextFrameTime = 0;
+    }
+}
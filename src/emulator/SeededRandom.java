@@ -0,0 +1,34 @@
+package emulator;
+
+/**
+ * SplitMix64 generator whose whole state is one long, so it can be seeded, saved and restored exactly.
+ */
+final class SeededRandom {
+    private long state;
+
+    SeededRandom(long seed) {
+        this.state = seed;
+    }
+
+    int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    long nextLong() {
+        long z = state += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    long getState() {
+        return state;
+    }
+
+    void setState(long state) {
+        this.state = state;
+    }
+}
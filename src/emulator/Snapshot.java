@@ -0,0 +1,185 @@
+package emulator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Immutable machine state captured by {@link CPU#snapshot()}. Memory is held as fixed-size pages that are
+ * shared with the CPU and with other snapshots until one side writes to them, so branching many times
+ * from one state costs the registers and a page table, not a copy of memory.
+ */
+public final class Snapshot {
+    static final int MAGIC = 0x43385353;
+    static final short VERSION = 3;
+
+    private static final byte ZERO_PAGE = 0;
+    private static final byte RAW_PAGE = 1;
+
+    final long cycleNumber;
+    final short pc;
+    final short i;
+    final byte dt;
+    final byte st;
+    final int instructionsPerSecond;
+    final int timerPhase;
+    final long randomState;
+    final byte[] reg;
+    final short[] stack;
+    final boolean waitingForKey;
+    final byte waitingForKeyReg;
+    final boolean[] buttonStatus;
+    final long[] rows;
+    final byte[] flags;
+    final byte[] audioPattern;
+    final byte pitch;
+    final byte[][] pages;
+
+    Snapshot(long cycleNumber, short pc, short i, byte dt, byte st, int instructionsPerSecond, int timerPhase,
+             long randomState, byte[] reg, short[] stack, boolean waitingForKey, byte waitingForKeyReg,
+             boolean[] buttonStatus, long[] rows, byte[] flags, byte[] audioPattern, byte pitch, byte[][] pages) {
+        this.cycleNumber = cycleNumber;
+        this.pc = pc;
+        this.i = i;
+        this.dt = dt;
+        this.st = st;
+        this.instructionsPerSecond = instructionsPerSecond;
+        this.timerPhase = timerPhase;
+        this.randomState = randomState;
+        this.reg = reg;
+        this.stack = stack;
+        this.waitingForKey = waitingForKey;
+        this.waitingForKeyReg = waitingForKeyReg;
+        this.buttonStatus = buttonStatus;
+        this.rows = rows;
+        this.flags = flags;
+        this.audioPattern = audioPattern;
+        this.pitch = pitch;
+        this.pages = pages;
+    }
+
+    public long getCycleNumber() {
+        return cycleNumber;
+    }
+
+    public short getPC() {
+        return pc;
+    }
+
+    public void write(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(cycleNumber);
+        out.writeShort(pc);
+        out.writeShort(i);
+        out.writeByte(dt);
+        out.writeByte(st);
+        out.writeInt(instructionsPerSecond);
+        out.writeInt(timerPhase);
+        out.writeLong(randomState);
+        out.write(reg);
+        out.writeShort(stack.length);
+        for (short address : stack) {
+            out.writeShort(address);
+        }
+        out.writeBoolean(waitingForKey);
+        out.writeByte(waitingForKeyReg);
+        int buttons = 0;
+        for (int key = 0; key < buttonStatus.length; key++) {
+            if (buttonStatus[key]) {
+                buttons |= 1 << key;
+            }
+        }
+        out.writeShort(buttons);
+        for (long row : rows) {
+            out.writeLong(row);
+        }
+        out.write(flags);
+        out.write(audioPattern);
+        out.writeByte(pitch);
+        out.writeShort(pages.length);
+        out.writeShort(pages[0].length);
+        for (byte[] page : pages) {
+            if (isZero(page)) {
+                out.writeByte(ZERO_PAGE);
+            } else {
+                out.writeByte(RAW_PAGE);
+                out.write(page);
+            }
+        }
+        out.flush();
+    }
+
+    public static Snapshot read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        short version = in.readShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        long cycleNumber = in.readLong();
+        short pc = in.readShort();
+        short i = in.readShort();
+        byte dt = in.readByte();
+        byte st = in.readByte();
+        int instructionsPerSecond = in.readInt();
+        int timerPhase = in.readInt();
+        long randomState = version >= 2 ? in.readLong() : 0;
+        byte[] reg = new byte[16];
+        in.readFully(reg);
+        short[] stack = new short[in.readUnsignedShort()];
+        for (int entry = 0; entry < stack.length; entry++) {
+            stack[entry] = in.readShort();
+        }
+        boolean waitingForKey = in.readBoolean();
+        byte waitingForKeyReg = in.readByte();
+        int buttons = in.readUnsignedShort();
+        boolean[] buttonStatus = new boolean[Keypad.KEY_COUNT];
+        for (int key = 0; key < buttonStatus.length; key++) {
+            buttonStatus[key] = (buttons & 1 << key) != 0;
+        }
+        long[] rows = new long[FrameBuffer.STATE_WORDS];
+        rows[FrameBuffer.MODE_WORD] = FrameBuffer.DEFAULT_MODE;
+        for (int row = 0; row < (version >= 3 ? rows.length : FrameBuffer.HEIGHT); row++) {
+            rows[row] = in.readLong();
+        }
+        byte[] flags = new byte[16];
+        byte[] audioPattern = new byte[16];
+        byte pitch = 64;
+        if (version >= 3) {
+            in.readFully(flags);
+            in.readFully(audioPattern);
+            pitch = in.readByte();
+        }
+        byte[][] pages = new byte[in.readUnsignedShort()][];
+        int pageSize = in.readUnsignedShort();
+        byte[] zeroPage = new byte[pageSize];
+        for (int page = 0; page < pages.length; page++) {
+            byte kind = in.readByte();
+            if (kind == ZERO_PAGE) {
+                pages[page] = zeroPage;
+            } else if (kind == RAW_PAGE) {
+                pages[page] = new byte[pageSize];
+                in.readFully(pages[page]);
+            } else {
+                throw new IOException("Corrupt snapshot page " + page);
+            }
+        }
+        return new Snapshot(cycleNumber, pc, i, dt, st, instructionsPerSecond, timerPhase, randomState, reg,
+                stack, waitingForKey, waitingForKeyReg, buttonStatus, rows, flags, audioPattern, pitch, pages);
+    }
+
+    private static boolean isZero(byte[] page) {
+        for (byte b : page) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
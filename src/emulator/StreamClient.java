@@ -0,0 +1,156 @@
+package emulator;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Viewer side of a {@link StreamServer} connection. Rebuilds the display state of every frame it receives,
+ * starting from the first keyframe, in the layout of {@link FrameBuffer#copyRows(long[])}.
+ */
+public class StreamClient implements Closeable {
+    private static final int MAX_MESSAGE_SIZE = 1 << 20;
+
+    private final SocketChannel channel;
+    private final long[] rows = new long[FrameBuffer.STATE_WORDS];
+    private final ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+    private ByteBuffer body = ByteBuffer.allocate(4096).order(ByteOrder.BIG_ENDIAN);
+    private boolean synced;
+    private boolean keyframe;
+    private long frameNumber = -1;
+    private long frames;
+    private long keyframes;
+    private long bytesReceived;
+
+    public StreamClient(String host, int port) throws IOException {
+        this(host, port, 0);
+    }
+
+    /**
+     * Connects with the given socket receive buffer size, or the system default when it is 0. A small buffer
+     * makes a viewer that reads slowly fall behind sooner instead of hiding its lag in the kernel.
+     */
+    public StreamClient(String host, int port, int receiveBufferSize) throws IOException {
+        channel = SocketChannel.open();
+        if (receiveBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        }
+        channel.connect(new InetSocketAddress(host, port));
+        ByteBuffer header = ByteBuffer.allocate(StreamEncoder.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        if (!readFully(header)) {
+            throw new EOFException("Stream closed before its header");
+        }
+        if (header.getInt() != StreamEncoder.MAGIC) {
+            throw new IOException("Not a frame stream");
+        }
+        short version = header.getShort();
+        if (version != StreamEncoder.VERSION) {
+            throw new IOException("Unsupported frame stream version " + version);
+        }
+        int words = header.getShort();
+        if (words != rows.length) {
+            throw new IOException("Stream has " + words + " display words per frame, expected " + rows.length);
+        }
+    }
+
+    /**
+     * Blocks until the next frame has been applied. Returns false when the server closed the connection.
+     */
+    public boolean next() throws IOException {
+        if (!readFully(length.clear())) {
+            return false;
+        }
+        int size = length.getInt(0);
+        if (size < StreamEncoder.FRAME_HEADER_SIZE - 4 || size > MAX_MESSAGE_SIZE) {
+            throw new IOException("Corrupt frame stream: message of " + size + " bytes");
+        }
+        if (body.capacity() < size) {
+            body = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+        }
+        body.clear().limit(size);
+        if (!readFully(body)) {
+            throw new EOFException("Stream closed in the middle of a frame");
+        }
+        keyframe = body.get() == StreamEncoder.KEYFRAME;
+        frameNumber = body.getLong();
+        if (!synced && !keyframe) {
+            throw new IOException("Frame stream did not start with a keyframe");
+        }
+        if (!StreamEncoder.apply(body, rows, keyframe)) {
+            throw new IOException("Corrupt frame stream at frame " + frameNumber);
+        }
+        synced = true;
+        frames++;
+        if (keyframe) {
+            keyframes++;
+        }
+        return true;
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                if (buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Stream closed in the middle of a message");
+            }
+            bytesReceived += read;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * Display of the current frame. Updated in place by {@link #next()}.
+     */
+    public long[] getRows() {
+        return rows;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getKeyframeCount() {
+        return keyframes;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: StreamClient <host> <port>");
+            System.exit(2);
+        }
+        try (StreamClient client = new StreamClient(args[0], Integer.parseInt(args[1]))) {
+            while (client.next()) {
+                System.out.printf("%d %s %016X%n", client.getFrameNumber(), client.isKeyframe() ? "K" : "D",
+                        FrameHasher.hash(client.getRows()));
+            }
+            System.out.println(client.getFrameCount() + " frames (" + client.getKeyframeCount() + " keyframes), "
+                    + client.getBytesReceived() + " bytes");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package emulator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Encodes display states into the messages of a frame stream. A message is the frame's display state words
+ * XORed with the previous message's, or with zero for a keyframe, run-length coded as alternating varint
+ * counts of unchanged and changed words followed by the changed words themselves. Each message is encoded
+ * once into a direct buffer that any number of connections can write from; buffers come from a small pool
+ * and go back to it through {@link #recycle} once every connection is done with them, so a running stream
+ * doesn't allocate native memory per frame.
+ */
+final class StreamEncoder {
+    static final int MAGIC = 0x43385354;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int FRAME_HEADER_SIZE = 4 + 1 + 8;
+    static final byte KEYFRAME = 0x01;
+
+    private static final int MAX_FRAME_SIZE = FRAME_HEADER_SIZE + FrameBuffer.STATE_WORDS * (8 + 2 * 2);
+    private static final int POOL_SIZE = 64;
+
+    private final long[] previous = new long[FrameBuffer.STATE_WORDS];
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_FRAME_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private final ArrayBlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * Stream header: magic, version and the number of display state words per frame.
+     */
+    static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) FrameBuffer.STATE_WORDS).flip();
+        return header.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the message for a frame, or null when it is not a keyframe and nothing changed since the last one.
+     * The message starts with its length excluding the length field, the keyframe flag and the frame number.
+     * Pass it to {@link #recycle} once it is no longer written anywhere.
+     */
+    ByteBuffer encode(long frameNumber, long[] rows, boolean keyframe) {
+        scratch.clear().position(FRAME_HEADER_SIZE);
+        int index = 0;
+        while (index < rows.length) {
+            int start = index;
+            while (index < rows.length && rows[index] == base(index, keyframe)) {
+                index++;
+            }
+            int literal = index;
+            while (index < rows.length && rows[index] != base(index, keyframe)) {
+                index++;
+            }
+            if (literal == index) {
+                break;
+            }
+            putVarint(literal - start);
+            putVarint(index - literal);
+            for (int i = literal; i < index; i++) {
+                scratch.putLong(rows[i] ^ base(i, keyframe));
+            }
+        }
+        if (!keyframe && scratch.position() == FRAME_HEADER_SIZE) {
+            return null;
+        }
+        System.arraycopy(rows, 0, previous, 0, previous.length);
+        scratch.putInt(0, scratch.position() - 4).put(4, keyframe ? KEYFRAME : 0).putLong(5, frameNumber).flip();
+        ByteBuffer message = pool.poll();
+        if (message == null) {
+            message = ByteBuffer.allocateDirect(MAX_FRAME_SIZE);
+        }
+        message.clear();
+        message.put(scratch).flip();
+        return message;
+    }
+
+    /**
+     * Returns a message from {@link #encode} to the pool, or leaves it to the collector when the pool is
+     * full. May be called from any thread.
+     */
+    void recycle(ByteBuffer message) {
+        pool.offer(message);
+    }
+
+    private long base(int index, boolean keyframe) {
+        return keyframe ? 0 : previous[index];
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            scratch.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        scratch.put((byte) value);
+    }
+
+    /**
+     * Applies the runs of a message body to a display state, which must hold the previous frame unless the
+     * message is a keyframe. Returns false if the body does not fit the state.
+     */
+    static boolean apply(ByteBuffer body, long[] rows, boolean keyframe) {
+        if (keyframe) {
+            Arrays.fill(rows, 0);
+        }
+        int index = 0;
+        while (body.hasRemaining()) {
+            int skip = getVarint(body);
+            int count = getVarint(body);
+            if (skip < 0 || count < 0 || count > rows.length - index - skip || body.remaining() < count * 8) {
+                return false;
+            }
+            index += skip;
+            for (int i = 0; i < count; i++) {
+                rows[index++] ^= body.getLong();
+            }
+        }
+        return true;
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!in.hasRemaining()) {
+                return -1;
+            }
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,370 @@
+package emulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Frame sink that broadcasts the display to any number of viewers over TCP. Every frame that changed is encoded
+ * once by a {@link StreamEncoder} on the emulation thread; a selector thread then writes that same buffer to
+ * every connection with non-blocking gathering writes. A viewer that falls more than a byte budget behind has
+ * its queue dropped and receives nothing until the next keyframe, so one slow connection never holds back the
+ * emulator or the other viewers. The budget also caps each socket's send buffer, so lag shows up in the queue
+ * rather than in the kernel. Keyframes are sent periodically and, rate limited, soon after a viewer joins or
+ * falls behind. Read the stream with {@link StreamClient}.
+ */
+public class StreamServer implements FrameSink {
+    public static final int DEFAULT_KEYFRAME_INTERVAL = Scheduler.FRAME_RATE * 2;
+    public static final int DEFAULT_MAX_QUEUED_BYTES = 256 * 1024;
+
+    private static final int MIN_KEYFRAME_SPACING = Scheduler.FRAME_RATE / 10;
+    private static final int MAX_GATHER = 64;
+    private static final long CLOSE_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Thread thread;
+    private final int keyframeInterval;
+    private final int maxQueuedBytes;
+    private final StreamEncoder encoder = new StreamEncoder();
+    private final long[] rows = new long[FrameBuffer.STATE_WORDS];
+    private final ConcurrentLinkedQueue<ByteBuffer> published = new ConcurrentLinkedQueue<>();
+    private final List<Viewer> viewers = new ArrayList<>();
+    private final Map<ByteBuffer, Integer> references = new IdentityHashMap<>();
+    private final ByteBuffer header = StreamEncoder.header();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private final ByteBuffer input = ByteBuffer.allocate(256);
+    private long lastKeyframe = Long.MIN_VALUE / 2;
+    private volatile boolean keyframeRequested;
+    private volatile boolean running = true;
+    private volatile int viewerCount;
+    private volatile long framesSent;
+    private volatile long bytesSent;
+    private volatile long resyncs;
+
+    public StreamServer(int port) throws IOException {
+        this(new InetSocketAddress(port), DEFAULT_KEYFRAME_INTERVAL, DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    public StreamServer(InetSocketAddress address, int keyframeInterval, int maxQueuedBytes) throws IOException {
+        if (keyframeInterval < 1 || maxQueuedBytes < 1) {
+            throw new IllegalArgumentException("Keyframe interval and queue budget must be positive");
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.maxQueuedBytes = maxQueuedBytes;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::serve, "chip8-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    @Override
+    public void frameCompleted(long frameNumber, FrameBuffer frameBuffer) {
+        boolean keyframe = frameNumber - lastKeyframe >= keyframeInterval
+                || keyframeRequested && frameNumber - lastKeyframe >= MIN_KEYFRAME_SPACING;
+        frameBuffer.copyRows(rows);
+        ByteBuffer message = encoder.encode(frameNumber, rows, keyframe);
+        if (message == null) {
+            return;
+        }
+        if (keyframe) {
+            lastKeyframe = frameNumber;
+            keyframeRequested = false;
+        }
+        published.add(message);
+        selector.wakeup();
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Viewer viewer = (Viewer) key.attachment();
+                        if (key.isReadable()) {
+                            viewer.discardInput();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            viewer.flush();
+                        }
+                    }
+                }
+                ByteBuffer message;
+                while ((message = published.poll()) != null) {
+                    broadcast(message);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            disconnect();
+        }
+    }
+
+    /**
+     * Finishes the messages that are partly written, so viewers see the stream end between frames, then closes
+     * every connection.
+     */
+    private void disconnect() {
+        long deadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+        for (Viewer viewer : new ArrayList<>(viewers)) {
+            viewer.dropQueue();
+        }
+        try {
+            while (System.nanoTime() < deadline) {
+                for (Viewer viewer : new ArrayList<>(viewers)) {
+                    viewer.flush();
+                    if (viewer.queue.isEmpty()) {
+                        viewer.close();
+                    }
+                }
+                if (viewers.isEmpty()) {
+                    break;
+                }
+                selector.select(10);
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException ignored) {
+        }
+        for (Viewer viewer : new ArrayList<>(viewers)) {
+            viewer.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setSendBufferSize(maxQueuedBytes);
+            Viewer viewer = new Viewer(channel);
+            viewer.key = channel.register(selector, SelectionKey.OP_READ, viewer);
+            viewers.add(viewer);
+            viewerCount = viewers.size();
+            viewer.queue(header);
+            viewer.flush();
+            keyframeRequested = true;
+        }
+    }
+
+    /**
+     * Queues a message to every synced viewer. The broadcast holds its own reference while it runs so that a
+     * viewer writing the message out at once doesn't recycle it before the rest have queued it.
+     */
+    private void broadcast(ByteBuffer message) {
+        boolean keyframe = message.get(4) == StreamEncoder.KEYFRAME;
+        references.put(message, 1);
+        for (int i = viewers.size() - 1; i >= 0; i--) {
+            Viewer viewer = viewers.get(i);
+            if (!viewer.synced) {
+                if (!keyframe) {
+                    continue;
+                }
+                viewer.synced = true;
+            }
+            if (viewer.queuedBytes + message.limit() > maxQueuedBytes) {
+                viewer.dropQueue();
+                resyncs++;
+                if (!keyframe) {
+                    viewer.synced = false;
+                    keyframeRequested = true;
+                    continue;
+                }
+            }
+            references.merge(message, 1, Integer::sum);
+            viewer.queue(message);
+            framesSent++;
+            viewer.flush();
+        }
+        release(message);
+    }
+
+    /**
+     * Drops one reference to a published message and hands it back to the encoder after the last.
+     */
+    private void release(ByteBuffer message) {
+        if (message == header) {
+            return;
+        }
+        int left = references.get(message) - 1;
+        if (left == 0) {
+            references.remove(message);
+            encoder.recycle(message);
+        } else {
+            references.put(message, left);
+        }
+    }
+
+    public int getViewerCount() {
+        return viewerCount;
+    }
+
+    /**
+     * Messages queued to viewers, counting each viewer separately.
+     */
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Times a viewer fell too far behind and had to wait for a keyframe.
+     */
+    public long getResyncCount() {
+        return resyncs;
+    }
+
+    /**
+     * Stops accepting viewers and disconnects the current ones once the message each is receiving is complete.
+     * Frames still queued behind it are not delivered.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        selector.close();
+    }
+
+    /**
+     * One connection and the messages queued for it. Messages are the shared encoded buffers themselves; only
+     * the selector thread touches them, so each write sets the buffer's position from this viewer's offset.
+     * Every message leaving the queue, written or dropped, is released.
+     */
+    private final class Viewer {
+        private final SocketChannel channel;
+        private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+        private SelectionKey key;
+        private int headOffset;
+        private long queuedBytes;
+        private boolean synced;
+
+        Viewer(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void queue(ByteBuffer message) {
+            queue.add(message);
+            queuedBytes += message.limit();
+        }
+
+        /**
+         * Drops everything except a partly written message, which must complete to keep the stream framed,
+         * and a stream header not yet written.
+         */
+        void dropQueue() {
+            ByteBuffer partial = headOffset > 0 || queue.peekFirst() == header ? queue.peekFirst() : null;
+            for (ByteBuffer message : queue) {
+                if (message != partial) {
+                    release(message);
+                }
+            }
+            queue.clear();
+            queuedBytes = 0;
+            if (partial != null) {
+                queue.add(partial);
+                queuedBytes = partial.limit() - headOffset;
+            }
+        }
+
+        void flush() {
+            try {
+                while (!queue.isEmpty()) {
+                    int count = 0;
+                    for (ByteBuffer message : queue) {
+                        if (count == MAX_GATHER) {
+                            break;
+                        }
+                        message.position(count == 0 ? headOffset : 0);
+                        gather[count++] = message;
+                    }
+                    long written = channel.write(gather, 0, count);
+                    bytesSent += written;
+                    queuedBytes -= written;
+                    int done = 0;
+                    while (done < count && !gather[done].hasRemaining()) {
+                        release(queue.removeFirst());
+                        done++;
+                    }
+                    if (done < count) {
+                        headOffset = gather[done].position();
+                        break;
+                    }
+                    headOffset = 0;
+                }
+                key.interestOps(queue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void discardInput() {
+            try {
+                while (true) {
+                    int read = channel.read(input.clear());
+                    if (read < 0) {
+                        close();
+                        return;
+                    }
+                    if (read == 0) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (!viewers.remove(this)) {
+                return;
+            }
+            viewerCount = viewers.size();
+            for (ByteBuffer message : queue) {
+                release(message);
+            }
+            queue.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
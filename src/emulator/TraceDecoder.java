@@ -0,0 +1,64 @@
+package emulator;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class TraceDecoder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TraceDecoder <trace file>");
+            System.exit(2);
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(args[0])))) {
+            decode(in, System.out);
+        }
+    }
+
+    public static void decode(InputStream input, PrintStream output) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != TraceRecorder.MAGIC) {
+            throw new IOException("Not a trace file");
+        }
+        short version = in.readShort();
+        if (version < 1 || version > TraceRecorder.VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+        int recordSize = in.readShort();
+        Profile profile = Profile.CHIP8;
+        if (version >= 2) {
+            int ordinal = in.readShort();
+            if (ordinal < 0 || ordinal >= Profile.values().length) {
+                throw new IOException("Unknown profile " + ordinal + " in trace");
+            }
+            profile = Profile.values()[ordinal];
+        }
+        byte[] padding = new byte[recordSize - TraceRecorder.RECORD_SIZE];
+
+        while (true) {
+            long cycle;
+            try {
+                cycle = in.readLong();
+            } catch (EOFException e) {
+                return;
+            }
+            short pc = in.readShort();
+            short opcode = in.readShort();
+            byte register = in.readByte();
+            byte value = in.readByte();
+            byte flag = in.readByte();
+            byte status = in.readByte();
+            in.readFully(padding);
+
+            output.println(String.format("%10d  %04X  %04X  %-16s V%X=%02X VF=%02X%s", cycle, pc, opcode,
+                    Decoder.disassemble(profile, opcode), register, value, flag,
+                    (status & TraceRecorder.FAULT) != 0 ? "  <-- fault" : ""));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package emulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records executed instructions as fixed-size binary records into a preallocated ring of direct buffers.
+ * Full segments are handed to a background thread that appends them to the trace file, so the executing
+ * thread never formats strings or blocks on I/O unless the writer falls a whole ring behind. The header names
+ * the CPU's profile, since the same opcode means different instructions in different profiles.
+ */
+public class TraceRecorder implements Closeable {
+    static final int MAGIC = 0x43385452;
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 10;
+    static final int RECORD_SIZE = 16;
+    static final byte FAULT = 0x01;
+
+    private static final int DEFAULT_SEGMENT_RECORDS = 16384;
+    private static final int SEGMENTS = 4;
+    private static final ByteBuffer END_OF_TRACE = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(SEGMENTS + 1);
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(SEGMENTS);
+    private final Thread writer;
+    private ByteBuffer active;
+    private volatile IOException writeFailure;
+    private boolean closed;
+
+    public TraceRecorder(Path file, Profile profile) throws IOException {
+        this(file, profile, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    public TraceRecorder(Path file, Profile profile, int segmentRecords) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putShort((short) profile.ordinal()).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            free.add(ByteBuffer.allocateDirect(segmentRecords * RECORD_SIZE).order(ByteOrder.BIG_ENDIAN));
+        }
+        active = free.remove();
+        writer = new Thread(this::drain, "chip8-trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void record(long cycle, short pc, short opcode, byte register, byte value, byte flag, byte status) {
+        if (active.remaining() < RECORD_SIZE) {
+            handOff();
+        }
+        active.putLong(cycle).putShort(pc).putShort(opcode).put(register).put(value).put(flag).put(status);
+    }
+
+    private void handOff() {
+        active.flip();
+        try {
+            filled.put(active);
+            active = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while handing off trace records", e);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                ByteBuffer segment = filled.take();
+                if (segment == END_OF_TRACE) {
+                    return;
+                }
+                try {
+                    while (segment.hasRemaining()) {
+                        channel.write(segment);
+                    }
+                } catch (IOException e) {
+                    writeFailure = e;
+                }
+                segment.clear();
+                free.put(segment);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        handOff();
+        try {
+            filled.put(END_OF_TRACE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.force(false);
+        channel.close();
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+}